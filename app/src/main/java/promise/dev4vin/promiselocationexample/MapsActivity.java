@@ -13,7 +13,6 @@
 
 package promise.dev4vin.promiselocationexample;
 
-import android.location.Location;
 import android.os.Bundle;
 import android.widget.Toast;
 
@@ -27,17 +26,24 @@ import com.google.android.gms.maps.model.MarkerOptions;
 
 import java.util.ArrayList;
 import java.util.List;
-import java.util.stream.Collectors;
 
 import promise.dev4vin.promiselocationexample.utils.MapUtils;
+import promise.location.LocationHistory;
 import promise.location.LocationParams;
 import promise.location.PromiseLocation;
+import promise.location.track.TrackSimplifier;
 
 public class MapsActivity extends FragmentActivity implements OnMapReadyCallback {
 
+  private static final int HISTORY_CAPACITY = 500;
+  private static final double SIMPLIFY_TOLERANCE = 5;
+
   private GoogleMap googleMap;
 
-  private List<Location> locations;
+  private LocationHistory.Cursor history;
+  private final double[] latitudes = new double[HISTORY_CAPACITY];
+  private final double[] longitudes = new double[HISTORY_CAPACITY];
+  private final float[] accuracies = new float[HISTORY_CAPACITY];
 
   @Override
   protected void onCreate(Bundle savedInstanceState) {
@@ -48,7 +54,6 @@ public class MapsActivity extends FragmentActivity implements OnMapReadyCallback
         .findFragmentById(R.id.map);
     /*assert mapFragment != null;*/
     mapFragment.getMapAsync(this);
-    locations = new ArrayList<>();
   }
 
   /**
@@ -63,13 +68,24 @@ public class MapsActivity extends FragmentActivity implements OnMapReadyCallback
   @Override
   public void onMapReady(final GoogleMap googleMap) {
     this.googleMap = googleMap;
-    PromiseLocation.with(this).location()
-        .config(LocationParams.BEST_EFFORT).continuous().start(location -> runOnUiThread(() -> {
-      locations.add(location);
+    PromiseLocation.LocationControl locationControl = PromiseLocation.with(this).location();
+    history = locationControl.history(HISTORY_CAPACITY).cursor();
+    locationControl.config(LocationParams.BEST_EFFORT).continuous().start(location -> runOnUiThread(() -> {
       googleMap.clear();
-      MapUtils.addMarkers(this, this.googleMap, locations.stream().map(loc -> new MarkerOptions()
-          .position(new LatLng(loc.getLatitude(), loc.getLongitude()))
-          .title("Accuracy: " + loc.getAccuracy() + " Provider: " + loc.getProvider())).collect(Collectors.toList()));
+      int count = 0;
+      history.reset();
+      while (history.moveToNext() && count < HISTORY_CAPACITY) {
+        latitudes[count] = history.getLatitude();
+        longitudes[count] = history.getLongitude();
+        accuracies[count++] = history.getAccuracy();
+      }
+      // only draw the points needed to show the track within a few meters
+      List<MarkerOptions> markers = new ArrayList<>();
+      for (int i : TrackSimplifier.douglasPeucker(latitudes, longitudes, count, SIMPLIFY_TOLERANCE))
+        markers.add(new MarkerOptions()
+            .position(new LatLng(latitudes[i], longitudes[i]))
+            .title("Accuracy: " + accuracies[i]));
+      MapUtils.addMarkers(this, this.googleMap, markers);
       /*LatLng latLng = new LatLng(location.getLatitude(), location.getLongitude());
       CameraUpdate update = CameraUpdateFactory.newLatLngZoom(latLng, 15);
       googleMap.addMarker(new MarkerOptions().position(latLng).title("Current location"));
@@ -0,0 +1,78 @@
+/*
+ * Copyright 2017, Peter Vincent
+ * Licensed under the Apache License, Version 2.0, Android Promise.
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package promise.location;
+
+import android.util.Log;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of a log call with logging disabled and enabled, the enabled one including the stack walk
+ * used to tag the message, against the {@link LevelLogger} below and above its level, writing in
+ * place or through the {@link LogRingBuffer}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class LoggerBenchmark {
+
+  private final Logger disabled = LoggerFactory.buildLogger(false);
+  private final Logger enabled = LoggerFactory.buildLogger(true);
+  private final Logger gated = LoggerFactory.buildLogger(Log.WARN, false);
+  private final Logger level = LoggerFactory.buildLogger(Log.DEBUG, false);
+  private final Logger async = LoggerFactory.buildLogger(Log.DEBUG, true);
+  private double latitude = -1.2833;
+
+  @Benchmark
+  public void disabled_with_arguments() {
+    disabled.d("Location updated %f", latitude);
+  }
+
+  @Benchmark
+  public void enabled_without_arguments() {
+    enabled.d("Location updated");
+  }
+
+  @Benchmark
+  public void enabled_with_arguments() {
+    enabled.d("Location updated %f", latitude);
+  }
+
+  @Benchmark
+  public void level_below_minimum() {
+    gated.d("Location updated %f", latitude);
+  }
+
+  @Benchmark
+  public void level_without_arguments() {
+    level.d("Location updated");
+  }
+
+  @Benchmark
+  public void level_with_arguments() {
+    level.d("Location updated %f", latitude);
+  }
+
+  @Benchmark
+  public void level_async_with_arguments() {
+    async.d("Location updated %f", latitude);
+  }
+}
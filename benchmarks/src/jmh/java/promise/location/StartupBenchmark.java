@@ -0,0 +1,78 @@
+/*
+ * Copyright 2017, Peter Vincent
+ * Licensed under the Apache License, Version 2.0, Android Promise.
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package promise.location;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cold start cost paid by the thread that creates a control, with the provider initialized in
+ * place as by default and handed to the {@link ProviderInitializer} as with {@code
+ * lazyInitialize(true)}. The init opens a {@link LocationStore} like the built in providers, plus
+ * <code>initCost</code> tokens of CPU work standing in for the platform calls a device makes, which
+ * the JVM cannot reproduce. Each shot uses a new provider, so every init is a first one.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 20)
+@Measurement(iterations = 200)
+public class StartupBenchmark {
+
+  @Param({"0", "100000", "1000000"})
+  public long initCost;
+
+  private FutureTask<Void> pending;
+
+  @Benchmark
+  public void eager_init() {
+    newInit().run();
+  }
+
+  @Benchmark
+  public void lazy_init() {
+    pending = ProviderInitializer.submit(new Object(), newInit());
+  }
+
+  @TearDown(Level.Iteration)
+  public void awaitInit() {
+    // the next shot starts with the init thread idle
+    if (pending != null) ProviderInitializer.await(pending);
+    pending = null;
+  }
+
+  private Runnable newInit() {
+    return new Runnable() {
+      @Override
+      public void run() {
+        new LocationStore(LocationStore.DEFAULT_FLUSH_INTERVAL).get("provider");
+        Blackhole.consumeCPU(initCost);
+      }
+    };
+  }
+}
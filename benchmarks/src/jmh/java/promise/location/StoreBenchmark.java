@@ -0,0 +1,104 @@
+/*
+ * Copyright 2017, Peter Vincent
+ * Licensed under the Apache License, Version 2.0, Android Promise.
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package promise.location;
+
+import android.location.Location;
+
+import com.google.android.gms.location.DetectedActivity;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+import promise.location.activity.ActivityStore;
+import promise.location.geofencing.GeoFenceModel;
+import promise.location.geofencing.GeoFenceStore;
+
+/**
+ * Key building and field serialization of the preference backed stores, against an in-memory
+ * Preferences so only the stores' own work is measured.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class StoreBenchmark {
+
+  private LocationStore locationStore;
+  private GeoFenceStore geoFenceStore;
+  private ActivityStore activityStore;
+  private Location location;
+  private GeoFenceModel geoFence;
+  private DetectedActivity activity;
+
+  @Setup
+  public void setup() {
+    locationStore = new LocationStore();
+    geoFenceStore = new GeoFenceStore();
+    activityStore = new ActivityStore();
+    location = new Location("gps");
+    location.setTime(1500000000000L);
+    location.setLatitude(-1.2833);
+    location.setLongitude(36.8167);
+    location.setAccuracy(4.5f);
+    geoFence =
+        new GeoFenceModel.Builder("office")
+            .setLatitude(-1.2833)
+            .setLongitude(36.8167)
+            .setRadius(100)
+            .setTransition(1)
+            .setExpiration(-1)
+            .build();
+    activity = new DetectedActivity(DetectedActivity.WALKING, 80);
+    locationStore.put("provider", location);
+    geoFenceStore.put("office", geoFence);
+    activityStore.put("activity", activity);
+  }
+
+  @Benchmark
+  public void location_store_put() {
+    locationStore.put("provider", location);
+  }
+
+  @Benchmark
+  public Location location_store_get() {
+    // write-through store, so this reads every field back from the preferences
+    return locationStore.get("provider");
+  }
+
+  @Benchmark
+  public void geofence_store_put() {
+    geoFenceStore.put("office", geoFence);
+  }
+
+  @Benchmark
+  public GeoFenceModel geofence_store_get() {
+    return geoFenceStore.get("office");
+  }
+
+  @Benchmark
+  public void activity_store_put() {
+    activityStore.put("activity", activity);
+  }
+
+  @Benchmark
+  public DetectedActivity activity_store_get() {
+    return activityStore.get("activity");
+  }
+}
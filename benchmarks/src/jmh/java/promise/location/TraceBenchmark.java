@@ -0,0 +1,64 @@
+/*
+ * Copyright 2017, Peter Vincent
+ * Licensed under the Apache License, Version 2.0, Android Promise.
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package promise.location;
+
+import android.location.Location;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of recording into the {@link LocationTrace}, alone and with several threads writing at once.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class TraceBenchmark {
+
+  private Location location;
+
+  @Setup
+  public void setup() {
+    location = new Location("gps");
+    location.setLatitude(-1.2833);
+    location.setLongitude(36.8167);
+    location.setAccuracy(8);
+    location.setTime(1500000000000L);
+  }
+
+  @Benchmark
+  public void record_event() {
+    LocationTrace.record(LocationTrace.START, LocationTrace.GMS_LOCATION);
+  }
+
+  @Benchmark
+  public void record_fix() {
+    LocationTrace.fix(LocationTrace.GMS_LOCATION, location);
+  }
+
+  @Benchmark
+  @Threads(4)
+  public void record_event_contended() {
+    LocationTrace.record(LocationTrace.START, LocationTrace.GMS_LOCATION);
+  }
+}
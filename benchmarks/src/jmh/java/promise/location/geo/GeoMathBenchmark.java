@@ -0,0 +1,69 @@
+/*
+ * Copyright 2017, Peter Vincent
+ * Licensed under the Apache License, Version 2.0, Android Promise.
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package promise.location.geo;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of each distance tier and of the spherical helpers, between two points about 50 km apart.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class GeoMathBenchmark {
+
+  private double latitude1 = -37.95103342;
+  private double longitude1 = 144.42486789;
+  private double latitude2 = -37.65282114;
+  private double longitude2 = 143.92649554;
+  private final double[] out = new double[2];
+
+  @Benchmark
+  public double equirectangular() {
+    return GeoMath.equirectangular(latitude1, longitude1, latitude2, longitude2);
+  }
+
+  @Benchmark
+  public double haversine() {
+    return GeoMath.haversine(latitude1, longitude1, latitude2, longitude2);
+  }
+
+  @Benchmark
+  public double vincenty() {
+    return GeoMath.vincenty(latitude1, longitude1, latitude2, longitude2);
+  }
+
+  @Benchmark
+  public double initial_bearing() {
+    return GeoMath.initialBearing(latitude1, longitude1, latitude2, longitude2);
+  }
+
+  @Benchmark
+  public double[] destination() {
+    GeoMath.destination(latitude1, longitude1, 306.86, 54972, out);
+    return out;
+  }
+
+  @Benchmark
+  public double cross_track_distance() {
+    return GeoMath.crossTrackDistance(latitude1, longitude1, latitude2, longitude2, -37.8, 144.2);
+  }
+}
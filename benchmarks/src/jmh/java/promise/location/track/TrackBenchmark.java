@@ -0,0 +1,89 @@
+/*
+ * Copyright 2017, Peter Vincent
+ * Licensed under the Apache License, Version 2.0, Android Promise.
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package promise.location.track;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Encoding, decoding and simplifying an hour of 1 Hz fixes.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class TrackBenchmark {
+
+  private static final int FIXES = 3600;
+
+  private final long[] times = new long[FIXES];
+  private final double[] latitudes = new double[FIXES];
+  private final double[] longitudes = new double[FIXES];
+  private final ByteBuffer buffer = ByteBuffer.allocate(FIXES * 16);
+  private ByteBuffer encoded;
+
+  @Setup
+  public void setup() throws IOException {
+    Random random = new Random(42L);
+    double heading = 0;
+    latitudes[0] = -1.2833;
+    longitudes[0] = 36.8167;
+    times[0] = 1500000000000L;
+    for (int i = 1; i < FIXES; i++) {
+      heading += random.nextGaussian() * 0.2;
+      times[i] = times[i - 1] + 1000;
+      latitudes[i] = latitudes[i - 1] + Math.cos(heading) * 1e-4;
+      longitudes[i] = longitudes[i - 1] + Math.sin(heading) * 1e-4;
+    }
+    encode();
+    encoded = ByteBuffer.allocate(buffer.position());
+    buffer.flip();
+    encoded.put(buffer).flip();
+  }
+
+  @Benchmark
+  public int encode() throws IOException {
+    buffer.clear();
+    TrackEncoder encoder = new TrackEncoder(buffer);
+    for (int i = 0; i < FIXES; i++) encoder.encode(times[i], latitudes[i], longitudes[i], 5);
+    return buffer.position();
+  }
+
+  @Benchmark
+  public double decode() throws IOException {
+    TrackDecoder decoder = new TrackDecoder(encoded.duplicate());
+    double sum = 0;
+    while (decoder.next()) sum += decoder.getLatitude();
+    return sum;
+  }
+
+  @Benchmark
+  public int[] douglas_peucker() {
+    return TrackSimplifier.douglasPeucker(latitudes, longitudes, FIXES, 5);
+  }
+
+  @Benchmark
+  public int[] visvalingam() {
+    return TrackSimplifier.visvalingam(latitudes, longitudes, FIXES, 5);
+  }
+}
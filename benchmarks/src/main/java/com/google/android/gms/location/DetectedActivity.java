@@ -0,0 +1,45 @@
+/*
+ * Copyright 2017, Peter Vincent
+ * Licensed under the Apache License, Version 2.0, Android Promise.
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.gms.location;
+
+/**
+ * The part of the Play services activity API that ActivityStore compiles against.
+ */
+public class DetectedActivity {
+
+  public static final int IN_VEHICLE = 0;
+  public static final int ON_BICYCLE = 1;
+  public static final int ON_FOOT = 2;
+  public static final int STILL = 3;
+  public static final int UNKNOWN = 4;
+  public static final int TILTING = 5;
+  public static final int WALKING = 7;
+  public static final int RUNNING = 8;
+
+  private final int type;
+  private final int confidence;
+
+  public DetectedActivity(int type, int confidence) {
+    this.type = type;
+    this.confidence = confidence;
+  }
+
+  public int getType() {
+    return type;
+  }
+
+  public int getConfidence() {
+    return confidence;
+  }
+}
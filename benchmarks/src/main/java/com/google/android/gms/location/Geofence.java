@@ -0,0 +1,63 @@
+/*
+ * Copyright 2017, Peter Vincent
+ * Licensed under the Apache License, Version 2.0, Android Promise.
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.gms.location;
+
+/**
+ * The part of the Play services geofence API that GeoFenceModel compiles against.
+ */
+public interface Geofence {
+
+  int GEOFENCE_TRANSITION_ENTER = 1;
+  int GEOFENCE_TRANSITION_EXIT = 2;
+  int GEOFENCE_TRANSITION_DWELL = 4;
+  long NEVER_EXPIRE = -1;
+
+  String getRequestId();
+
+  final class Builder {
+
+    private String requestId;
+
+    public Builder setRequestId(String requestId) {
+      this.requestId = requestId;
+      return this;
+    }
+
+    public Builder setCircularRegion(double latitude, double longitude, float radius) {
+      return this;
+    }
+
+    public Builder setExpirationDuration(long duration) {
+      return this;
+    }
+
+    public Builder setTransitionTypes(int transitionTypes) {
+      return this;
+    }
+
+    public Builder setLoiteringDelay(int loiteringDelay) {
+      return this;
+    }
+
+    public Geofence build() {
+      final String id = requestId;
+      return new Geofence() {
+        @Override
+        public String getRequestId() {
+          return id;
+        }
+      };
+    }
+  }
+}
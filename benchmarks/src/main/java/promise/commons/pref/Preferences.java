@@ -0,0 +1,63 @@
+/*
+ * Copyright 2017, Peter Vincent
+ * Licensed under the Apache License, Version 2.0, Android Promise.
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package promise.commons.pref;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * In-memory stand-in for the SharedPreferences backed promise commons class, so the stores can be
+ * benchmarked on a plain JVM. Only measures the stores' own key building and boxing.
+ */
+public class Preferences {
+
+  private final Map<String, Object> values = new HashMap<>();
+
+  public Preferences(String name) {
+  }
+
+  public Preferences save(Map<String, Object> map) {
+    values.putAll(map);
+    return this;
+  }
+
+  public Preferences save(String key, Object value) {
+    values.put(key, value);
+    return this;
+  }
+
+  public String getString(String key) {
+    Object value = values.get(key);
+    return value == null ? "" : value.toString();
+  }
+
+  public long getLong(String key) {
+    Object value = values.get(key);
+    return value == null ? 0 : ((Number) value).longValue();
+  }
+
+  public int getInt(String key) {
+    Object value = values.get(key);
+    return value == null ? 0 : ((Number) value).intValue();
+  }
+
+  public double getDouble(String key) {
+    Object value = values.get(key);
+    return value == null ? 0 : ((Number) value).doubleValue();
+  }
+
+  public void clear(String key) {
+    values.remove(key);
+  }
+}
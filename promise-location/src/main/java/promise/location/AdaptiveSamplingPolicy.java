@@ -0,0 +1,316 @@
+/*
+ * Copyright 2017, Peter Vincent
+ * Licensed under the Apache License, Version 2.0, Android Promise.
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package promise.location;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
+
+import com.google.android.gms.location.DetectedActivity;
+
+import promise.location.activity.ActivityUpdatedListener;
+
+/**
+ * Adapts the location request to what the user is doing: the detected activity picks the {@link
+ * LocationParams} from a table, so a device standing still can drop to {@link
+ * LocationParams#LAZY} or stop updates while a device in a vehicle gets {@link
+ * LocationParams#NAVIGATION}. <br>
+ * <br>
+ * A new activity only takes over once it was detected with enough confidence, at least twice and
+ * for a dwell time, a short one for a switch to a more demanding request and a longer one for a
+ * switch to a lighter request, so the request does not flap between two activities. Activities
+ * missing from the table keep the current request. <br>
+ * <br>
+ * The policy counts the fixes it asked for, the request's time divided by its interval, against
+ * the fixes the request the location control was configured with would have asked for over the
+ * same time, see {@link #getSavedPerHour()}.
+ */
+public class AdaptiveSamplingPolicy implements ActivityUpdatedListener {
+
+  public static final long DEFAULT_ESCALATE_DWELL = 10000;
+  public static final long DEFAULT_RELAX_DWELL = 60000;
+  public static final int DEFAULT_MIN_CONFIDENCE = 60;
+
+  private static final long HOUR = 3600000;
+  private static final int MIN_DETECTIONS = 2;
+  // indexed by DetectedActivity type, IN_VEHICLE to RUNNING
+  private static final int ACTIVITIES = 9;
+
+  private final LocationParams[] table;
+  private final boolean[] mapped;
+  private final long escalateDwell;
+  private final long relaxDwell;
+  private final int minConfidence;
+  private final ActivityUpdatedListener activityListener;
+  private Clock clock = Clock.SYSTEM;
+  private PromiseLocation.ActivityRecognitionControl activityControl;
+  private PromiseLocation.LocationControl locationControl;
+  private LocationUpdatedListener listener;
+  private LocationParams baseline;
+  private LocationParams current;
+  private boolean running;
+  private int activity = DetectedActivity.UNKNOWN;
+  private int candidate = -1;
+  private int candidateCount;
+  private long candidateSince;
+  private long accountedAt;
+  private long activeTime;
+  private double requestedFixes;
+  private double baselineFixes;
+  private long switches;
+
+  private AdaptiveSamplingPolicy(Builder builder) {
+    table = builder.table.clone();
+    mapped = builder.mapped.clone();
+    escalateDwell = builder.escalateDwell;
+    relaxDwell = builder.relaxDwell;
+    minConfidence = builder.minConfidence;
+    activityListener = builder.activityListener;
+  }
+
+  @VisibleForTesting
+  void setClock(Clock clock) {
+    this.clock = clock;
+  }
+
+  /**
+   * Starts location updates to the listener with the request the location control is configured
+   * with, and follows the activities the activity control detects from then on. The policy takes
+   * over the location control's request.
+   */
+  public synchronized void start(
+      @NonNull PromiseLocation.ActivityRecognitionControl activityControl,
+      @NonNull PromiseLocation.LocationControl locationControl,
+      @NonNull LocationUpdatedListener listener) {
+    this.activityControl = activityControl;
+    this.locationControl = locationControl;
+    this.listener = listener;
+    baseline = locationControl.params();
+    current = baseline;
+    activity = DetectedActivity.UNKNOWN;
+    candidate = -1;
+    accountedAt = clock.elapsedRealtime();
+    running = true;
+    locationControl.start(listener);
+    activityControl.start(this);
+  }
+
+  /**
+   * Stops the activity recognition and the location updates started by {@link #start}, and gives
+   * the location control back the request it was configured with.
+   */
+  public synchronized void stop() {
+    if (!running) return;
+    account();
+    running = false;
+    activityControl.stop();
+    if (current != null) locationControl.stop(listener);
+    locationControl.config(baseline);
+  }
+
+  @Override
+  public void onActivityUpdated(DetectedActivity detectedActivity) {
+    if (detectedActivity != null)
+      onActivity(detectedActivity.getType(), detectedActivity.getConfidence());
+    if (activityListener != null) activityListener.onActivityUpdated(detectedActivity);
+  }
+
+  @VisibleForTesting
+  synchronized void onActivity(int type, int confidence) {
+    if (!running || confidence < minConfidence) return;
+    if (type < 0 || type >= ACTIVITIES || !mapped[type] || type == activity) {
+      candidate = -1;
+      return;
+    }
+    long now = clock.elapsedRealtime();
+    if (type != candidate) {
+      candidate = type;
+      candidateCount = 1;
+      candidateSince = now;
+    } else candidateCount++;
+    LocationParams next = table[type];
+    long dwell = demands(next, current) ? escalateDwell : relaxDwell;
+    if (candidateCount < MIN_DETECTIONS || now - candidateSince < dwell) return;
+    activity = type;
+    candidate = -1;
+    apply(next);
+  }
+
+  /**
+   * @return the detected activity the current request follows, {@link DetectedActivity#UNKNOWN}
+   * before the first switch
+   */
+  public synchronized int getActivity() {
+    return activity;
+  }
+
+  /**
+   * @return the current request, null while updates are suspended
+   */
+  @Nullable
+  public synchronized LocationParams getCurrentParams() {
+    return current;
+  }
+
+  /**
+   * @return how many times the policy issued a new request
+   */
+  public synchronized long getSwitchCount() {
+    return switches;
+  }
+
+  /**
+   * @return the fixes asked for under the policy so far
+   */
+  public synchronized double getRequestedFixes() {
+    account();
+    return requestedFixes;
+  }
+
+  /**
+   * @return the fixes the configured request would have asked for over the same time
+   */
+  public synchronized double getBaselineFixes() {
+    account();
+    return baselineFixes;
+  }
+
+  /**
+   * @return the fixes per hour the policy saved against the configured request, negative if it
+   * asked for more
+   */
+  public synchronized double getSavedPerHour() {
+    account();
+    if (activeTime == 0) return 0;
+    return (baselineFixes - requestedFixes) * HOUR / activeTime;
+  }
+
+  private void apply(@Nullable LocationParams next) {
+    if (next == current || (next != null && next.equals(current))) return;
+    account();
+    switches++;
+    current = next;
+    if (next == null) locationControl.stop(listener);
+    else {
+      locationControl.config(next);
+      locationControl.start(listener);
+    }
+  }
+
+  private void account() {
+    if (!running) return;
+    long now = clock.elapsedRealtime();
+    long elapsed = now - accountedAt;
+    accountedAt = now;
+    activeTime += elapsed;
+    requestedFixes += fixes(current, elapsed);
+    baselineFixes += fixes(baseline, elapsed);
+  }
+
+  private static double fixes(@Nullable LocationParams params, long elapsed) {
+    if (params == null || params.getInterval() <= 0) return 0;
+    return (double) elapsed / params.getInterval();
+  }
+
+  /**
+   * @return whether the next request asks for more than the current one
+   */
+  private static boolean demands(@Nullable LocationParams next, @Nullable LocationParams current) {
+    if (next == null) return false;
+    if (current == null) return true;
+    if (next.getInterval() != current.getInterval())
+      return next.getInterval() < current.getInterval();
+    LocationAccuracy accuracy = next.getAccuracy();
+    return accuracy != null
+        && (current.getAccuracy() == null || accuracy.compareTo(current.getAccuracy()) > 0);
+  }
+
+  public static class Builder {
+
+    private final LocationParams[] table = new LocationParams[ACTIVITIES];
+    private final boolean[] mapped = new boolean[ACTIVITIES];
+    private long escalateDwell = DEFAULT_ESCALATE_DWELL;
+    private long relaxDwell = DEFAULT_RELAX_DWELL;
+    private int minConfidence = DEFAULT_MIN_CONFIDENCE;
+    private ActivityUpdatedListener activityListener;
+
+    /**
+     * @return a builder with {@link LocationParams#LAZY} when still, {@link
+     * LocationParams#BEST_EFFORT} on foot or on a bicycle and {@link LocationParams#NAVIGATION} in
+     * a vehicle
+     */
+    public static Builder standard() {
+      return new Builder()
+          .setParams(DetectedActivity.STILL, LocationParams.LAZY)
+          .setParams(DetectedActivity.ON_FOOT, LocationParams.BEST_EFFORT)
+          .setParams(DetectedActivity.WALKING, LocationParams.BEST_EFFORT)
+          .setParams(DetectedActivity.RUNNING, LocationParams.BEST_EFFORT)
+          .setParams(DetectedActivity.ON_BICYCLE, LocationParams.BEST_EFFORT)
+          .setParams(DetectedActivity.IN_VEHICLE, LocationParams.NAVIGATION);
+    }
+
+    /**
+     * @param activity a {@link DetectedActivity} type
+     * @param params   the request while the activity is detected, null to stop updates
+     */
+    public Builder setParams(int activity, @Nullable LocationParams params) {
+      if (activity < 0 || activity >= ACTIVITIES)
+        throw new IllegalArgumentException("Unknown activity " + activity);
+      table[activity] = params;
+      mapped[activity] = true;
+      return this;
+    }
+
+    /**
+     * Stops location updates while the activity is detected.
+     */
+    public Builder suspend(int activity) {
+      return setParams(activity, null);
+    }
+
+    /**
+     * @param escalate how long in milliseconds a new activity must last before a more demanding
+     *                 request is issued
+     * @param relax    how long in milliseconds a new activity must last before a lighter request
+     *                 is issued or updates are stopped
+     */
+    public Builder setDwell(long escalate, long relax) {
+      this.escalateDwell = escalate;
+      this.relaxDwell = relax;
+      return this;
+    }
+
+    /**
+     * @param minConfidence the confidence, 0 to 100, below which detected activities are ignored
+     */
+    public Builder setMinConfidence(int minConfidence) {
+      this.minConfidence = minConfidence;
+      return this;
+    }
+
+    /**
+     * @param listener also gets every detected activity, as the policy takes the activity control's
+     *                 listener
+     */
+    public Builder setActivityListener(@Nullable ActivityUpdatedListener listener) {
+      this.activityListener = listener;
+      return this;
+    }
+
+    public AdaptiveSamplingPolicy build() {
+      return new AdaptiveSamplingPolicy(this);
+    }
+  }
+}
@@ -0,0 +1,156 @@
+/*
+ * Copyright 2017, Peter Vincent
+ * Licensed under the Apache License, Version 2.0, Android Promise.
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package promise.location;
+
+import android.content.Context;
+import android.location.Location;
+
+import androidx.annotation.NonNull;
+import androidx.collection.ArrayMap;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Map;
+
+/**
+ * A {@link Store} that keeps one fixed-width {@link LocationRecord} per id in a small memory-mapped
+ * file, instead of the eight string-keyed preference entries written by {@link LocationStore}.
+ * Mappings are opened once per id and cached, so after the first access a read costs nothing but
+ * the returned {@link Location} and a write is a handful of absolute puts. <br>
+ * <br>
+ * Fixes previously saved in the <code>promise_location</code> preferences can be carried over by
+ * setting a legacy store with {@link #migrateFrom(LocationStore)}: a miss then falls back to the
+ * legacy store, and any fix found there is copied into its record and removed from the preferences.
+ */
+public class BinaryLocationStore implements Store<Location> {
+
+  private static final String DIRECTORY = "promise_location";
+  private static final String EXTENSION = ".loc";
+  private static final String PROVIDER = "LocationStore";
+
+  private final File directory;
+  private final Map<String, MappedByteBuffer> records = new ArrayMap<>();
+  private LocationStore legacyStore;
+
+  public BinaryLocationStore(@NonNull Context context) {
+    this(new File(context.getFilesDir(), DIRECTORY));
+  }
+
+  public BinaryLocationStore(@NonNull File directory) {
+    this.directory = directory;
+  }
+
+  /**
+   * Sets the preferences backed store to migrate fixes from on a miss.
+   */
+  public BinaryLocationStore migrateFrom(LocationStore legacyStore) {
+    this.legacyStore = legacyStore;
+    return this;
+  }
+
+  @Override
+  public synchronized Location get(String id) {
+    MappedByteBuffer record = record(id, false);
+    if (record != null && LocationRecord.isValid(record, 0)) {
+      Location location =
+          new Location(LocationRecord.providerName(LocationRecord.provider(record, 0), PROVIDER));
+      location.setLatitude(LocationRecord.latitude(record, 0));
+      location.setLongitude(LocationRecord.longitude(record, 0));
+      location.setAltitude(LocationRecord.altitude(record, 0));
+      location.setAccuracy(LocationRecord.accuracy(record, 0));
+      location.setSpeed(LocationRecord.speed(record, 0));
+      location.setBearing(LocationRecord.bearing(record, 0));
+      location.setTime(LocationRecord.time(record, 0));
+      return location;
+    }
+    return migrate(id);
+  }
+
+  @Override
+  public synchronized void put(String id, Location location) {
+    MappedByteBuffer record = record(id, true);
+    if (record == null) return;
+    LocationRecord.write(
+        record,
+        0,
+        LocationRecord.providerCode(location.getProvider()),
+        location.getLatitude(),
+        location.getLongitude(),
+        location.getAltitude(),
+        location.getAccuracy(),
+        location.getSpeed(),
+        location.getBearing(),
+        location.getTime());
+  }
+
+  @Override
+  public synchronized void remove(String id) {
+    MappedByteBuffer record = records.remove(id);
+    if (record != null) LocationRecord.clear(record, 0);
+    //noinspection ResultOfMethodCallIgnored
+    file(id).delete();
+    if (legacyStore != null) legacyStore.remove(id);
+  }
+
+  /**
+   * Forces every record written so far to the storage device. Records already survive process death
+   * without this, it only matters when the device itself may lose power.
+   */
+  public synchronized void flush() {
+    for (MappedByteBuffer record : records.values()) record.force();
+  }
+
+  private Location migrate(String id) {
+    if (legacyStore == null) return null;
+    Location location = legacyStore.get(id);
+    // the preferences return an all zero fix for ids that were never saved
+    if (location == null || location.getTime() == 0) return null;
+    put(id, location);
+    legacyStore.remove(id);
+    return location;
+  }
+
+  private MappedByteBuffer record(String id, boolean create) {
+    MappedByteBuffer record = records.get(id);
+    if (record != null) return record;
+    File file = file(id);
+    if (!create && !file.exists()) return null;
+    if (create && !directory.exists() && !directory.mkdirs()) return null;
+    RandomAccessFile randomAccessFile = null;
+    try {
+      randomAccessFile = new RandomAccessFile(file, "rw");
+      if (randomAccessFile.length() != LocationRecord.SIZE)
+        randomAccessFile.setLength(LocationRecord.SIZE);
+      record =
+          randomAccessFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, LocationRecord.SIZE);
+      records.put(id, record);
+      return record;
+    } catch (IOException e) {
+      return null;
+    } finally {
+      // the mapping stays valid after the file is closed
+      if (randomAccessFile != null) try {
+        randomAccessFile.close();
+      } catch (IOException ignored) {
+      }
+    }
+  }
+
+  private File file(String id) {
+    return new File(directory, id.replaceAll("[^A-Za-z0-9_.-]", "_") + EXTENSION);
+  }
+}
@@ -0,0 +1,49 @@
+/*
+ * Copyright 2017, Peter Vincent
+ * Licensed under the Apache License, Version 2.0, Android Promise.
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package promise.location;
+
+import android.location.Location;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+/**
+ * Runs a fix through several filters in order, for example an {@link OutlierLocationFilter} before
+ * a {@link KalmanLocationFilter}. A fix dropped by one filter does not reach the next.
+ */
+public class ChainedLocationFilter implements LocationFilter {
+
+  private final LocationFilter[] filters;
+
+  public ChainedLocationFilter(@NonNull LocationFilter... filters) {
+    this.filters = filters.clone();
+  }
+
+  @Nullable
+  @Override
+  public Location filter(@NonNull Location location) {
+    Location filtered = location;
+    for (LocationFilter filter : filters) {
+      filtered = filter.filter(filtered);
+      if (filtered == null) return null;
+    }
+    return filtered;
+  }
+
+  @Override
+  public void reset() {
+    for (LocationFilter filter : filters) filter.reset();
+  }
+}
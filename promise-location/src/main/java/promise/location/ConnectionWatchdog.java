@@ -0,0 +1,156 @@
+/*
+ * Copyright 2017, Peter Vincent
+ * Licensed under the Apache License, Version 2.0, Android Promise.
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package promise.location;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import androidx.annotation.VisibleForTesting;
+
+/**
+ * Deadline for a {@link ServiceLocationProvider} to connect to its service and to deliver its first
+ * fix after being started. A provider calls {@link #start(boolean)} when it is started, {@link
+ * #connected()} and {@link #fixed()} as it progresses and {@link #cancel()} when it is stopped or
+ * already reported a failure. When a deadline passes first, the {@link Listener} is told once, so
+ * the provider can report a failure through its {@link ServiceConnectionListener} and a {@link
+ * MultiFallBackLocationProvider} can fail over instead of waiting for a connection that hangs.
+ * <br>
+ * <br>
+ * Deadlines are checked on the main looper. Without one, as in plain unit tests, nothing is
+ * scheduled and {@link #check()} has to be called instead.
+ */
+public class ConnectionWatchdog implements Runnable {
+
+  private static final int IDLE = 0;
+  private static final int CONNECTING = 1;
+  private static final int AWAITING_FIX = 2;
+
+  private final long connectTimeout;
+  private final long firstFixTimeout;
+  private final Listener listener;
+  private Clock clock = Clock.SYSTEM;
+  private Handler handler;
+  private int stage = IDLE;
+  private long deadline;
+
+  /**
+   * @param connectTimeout  milliseconds allowed to connect, 0 or less for no deadline
+   * @param firstFixTimeout milliseconds allowed from connecting to the first fix, 0 or less for no
+   *                        deadline
+   */
+  public ConnectionWatchdog(long connectTimeout, long firstFixTimeout, Listener listener) {
+    this.connectTimeout = connectTimeout;
+    this.firstFixTimeout = firstFixTimeout;
+    this.listener = listener;
+  }
+
+  @VisibleForTesting
+  void setClock(Clock clock) {
+    this.clock = clock;
+  }
+
+  /**
+   * Starts watching a provider that was just started.
+   *
+   * @param connected whether the service is already connected, in which case only the first fix
+   *                  deadline applies
+   */
+  public synchronized void start(boolean connected) {
+    if (connected) awaitFix();
+    else enter(CONNECTING, connectTimeout);
+  }
+
+  public synchronized void connected() {
+    if (stage == CONNECTING) awaitFix();
+  }
+
+  public synchronized void fixed() {
+    if (stage == AWAITING_FIX) cancel();
+  }
+
+  public synchronized void cancel() {
+    stage = IDLE;
+    if (handler != null) handler.removeCallbacks(this);
+  }
+
+  public synchronized boolean isWatching() {
+    return stage != IDLE;
+  }
+
+  /**
+   * Tells the listener if the current deadline has passed.
+   *
+   * @return true if it had
+   */
+  public boolean check() {
+    boolean connecting;
+    synchronized (this) {
+      if (stage == IDLE || clock.elapsedRealtime() < deadline) return false;
+      connecting = stage == CONNECTING;
+      cancel();
+    }
+    listener.onDeadlinePassed(connecting);
+    return true;
+  }
+
+  @Override
+  public void run() {
+    if (check()) return;
+    synchronized (this) {
+      // woken up early, wait for the rest
+      if (stage != IDLE) schedule(deadline - clock.elapsedRealtime());
+    }
+  }
+
+  private void awaitFix() {
+    if (firstFixTimeout > 0) enter(AWAITING_FIX, firstFixTimeout);
+    else cancel();
+  }
+
+  private void enter(int stage, long timeout) {
+    if (timeout <= 0) {
+      // nothing to watch in this stage, but a later one may still apply
+      if (stage == CONNECTING) {
+        this.stage = CONNECTING;
+        deadline = Long.MAX_VALUE;
+        if (handler != null) handler.removeCallbacks(this);
+      } else cancel();
+      return;
+    }
+    this.stage = stage;
+    deadline = clock.elapsedRealtime() + timeout;
+    schedule(timeout);
+  }
+
+  private void schedule(long delay) {
+    if (handler == null) {
+      Looper looper = Looper.getMainLooper();
+      if (looper == null) return;
+      handler = new Handler(looper);
+    }
+    handler.removeCallbacks(this);
+    handler.postDelayed(this, delay);
+  }
+
+  /**
+   * Told when a deadline passed.
+   */
+  public interface Listener {
+    /**
+     * @param connecting true if the service did not connect in time, false if it connected but no
+     *                   fix arrived in time
+     */
+    void onDeadlinePassed(boolean connecting);
+  }
+}
@@ -35,22 +35,18 @@ class FallbackListenerWrapper implements ServiceConnectionListener {
   @Override
   public void onConnected() {
     if (listener != null) listener.onConnected();
+    fallbackProvider.onProviderConnected(childProvider);
   }
 
   @Override
   public void onConnectionSuspended() {
     if (listener != null) listener.onConnectionSuspended();
-    runFallback();
+    fallbackProvider.onProviderFailed(childProvider);
   }
 
   @Override
   public void onConnectionFailed() {
     if (listener != null) listener.onConnectionFailed();
-    runFallback();
-  }
-
-  private void runFallback() {
-    LocationProvider current = fallbackProvider.getCurrentProvider();
-    if (current != null && current.equals(childProvider)) fallbackProvider.fallbackProvider();
+    fallbackProvider.onProviderFailed(childProvider);
   }
 }
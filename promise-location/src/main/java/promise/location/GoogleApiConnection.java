@@ -0,0 +1,258 @@
+/*
+ * Copyright 2017, Peter Vincent
+ * Licensed under the Apache License, Version 2.0, Android Promise.
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package promise.location;
+
+import android.content.Context;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
+
+import com.google.android.gms.common.ConnectionResult;
+import com.google.android.gms.common.api.GoogleApiClient;
+import com.google.android.gms.location.ActivityRecognition;
+import com.google.android.gms.location.LocationServices;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * One reference counted Play Services connection shared by the location, activity and geofencing
+ * providers of an application, instead of a {@link GoogleApiClient} each. <br>
+ * <br>
+ * Nothing is connected until a provider {@link #acquire acquires} the connection when it is really
+ * started, or an {@link Operation} is {@link #execute executed}. Operations submitted before the
+ * connection is up are queued and replayed once it connects. When the last reference is released
+ * the connection stays up for an idle grace period, so a quick stop and start does not pay for a
+ * new binder connection. <br>
+ * <br>
+ * Only the location API is required. Activity recognition is added if available, so a device
+ * without it still connects for locations and geofences.
+ */
+public class GoogleApiConnection
+    implements GoogleApiClient.ConnectionCallbacks, GoogleApiClient.OnConnectionFailedListener {
+
+  public static final long DEFAULT_IDLE_GRACE = 30000;
+
+  private static final Map<Context, GoogleApiConnection> CONNECTIONS = new WeakHashMap<>();
+
+  private final GoogleApiClient client;
+  private final List<GoogleApiClient.ConnectionCallbacks> callbacks = new ArrayList<>();
+  private final List<GoogleApiClient.OnConnectionFailedListener> failedListeners =
+      new ArrayList<>();
+  private final List<Operation> pending = new ArrayList<>();
+  private final Runnable idleDisconnect =
+      new Runnable() {
+        @Override
+        public void run() {
+          disconnectIfIdle();
+        }
+      };
+  private long idleGrace = DEFAULT_IDLE_GRACE;
+  private Handler handler;
+  private int references;
+
+  @VisibleForTesting
+  GoogleApiConnection(GoogleApiClient client) {
+    this.client = client;
+  }
+
+  private GoogleApiConnection(Context context) {
+    this.client =
+        new GoogleApiClient.Builder(context)
+            .addApi(LocationServices.API)
+            .addApiIfAvailable(ActivityRecognition.API)
+            .addConnectionCallbacks(this)
+            .addOnConnectionFailedListener(this)
+            .build();
+  }
+
+  /**
+   * @return the connection shared by every provider of the context's application
+   */
+  public static GoogleApiConnection get(@NonNull Context context) {
+    Context application = context.getApplicationContext();
+    if (application == null) application = context;
+    synchronized (CONNECTIONS) {
+      GoogleApiConnection connection = CONNECTIONS.get(application);
+      if (connection == null) {
+        connection = new GoogleApiConnection(application);
+        CONNECTIONS.put(application, connection);
+      }
+      return connection;
+    }
+  }
+
+  public GoogleApiClient getClient() {
+    return client;
+  }
+
+  public boolean isConnected() {
+    return client.isConnected();
+  }
+
+  /**
+   * Sets how long the connection stays up after the last reference is released, 0 to disconnect
+   * right away.
+   */
+  public void setIdleGrace(long idleGrace) {
+    this.idleGrace = idleGrace;
+  }
+
+  /**
+   * Takes a reference on the connection, connecting it if needed. The callbacks are told about
+   * connection events until the reference is released.
+   */
+  public void acquire(
+      @Nullable GoogleApiClient.ConnectionCallbacks connectionCallbacks,
+      @Nullable GoogleApiClient.OnConnectionFailedListener failedListener) {
+    synchronized (this) {
+      if (connectionCallbacks != null && !callbacks.contains(connectionCallbacks))
+        callbacks.add(connectionCallbacks);
+      if (failedListener != null && !failedListeners.contains(failedListener))
+        failedListeners.add(failedListener);
+    }
+    retain();
+  }
+
+  /**
+   * Gives back a reference taken with {@link #acquire}.
+   */
+  public void release(
+      @Nullable GoogleApiClient.ConnectionCallbacks connectionCallbacks,
+      @Nullable GoogleApiClient.OnConnectionFailedListener failedListener) {
+    synchronized (this) {
+      callbacks.remove(connectionCallbacks);
+      failedListeners.remove(failedListener);
+    }
+    releaseReference();
+  }
+
+  /**
+   * Runs the operation now if connected, otherwise connects and runs it once connected. The
+   * connection is held until the operation ran.
+   */
+  public void execute(@NonNull Operation operation) {
+    boolean connected;
+    synchronized (this) {
+      connected = client.isConnected();
+      if (!connected) pending.add(operation);
+    }
+    if (connected) operation.run(client);
+    else retain();
+  }
+
+  @Override
+  public void onConnected(@Nullable Bundle bundle) {
+    List<Operation> operations;
+    List<GoogleApiClient.ConnectionCallbacks> listeners;
+    synchronized (this) {
+      operations = new ArrayList<>(pending);
+      pending.clear();
+      listeners = new ArrayList<>(callbacks);
+    }
+    for (Operation operation : operations) {
+      operation.run(client);
+      releaseReference();
+    }
+    for (GoogleApiClient.ConnectionCallbacks listener : listeners) listener.onConnected(bundle);
+  }
+
+  @Override
+  public void onConnectionSuspended(int cause) {
+    List<GoogleApiClient.ConnectionCallbacks> listeners;
+    synchronized (this) {
+      listeners = new ArrayList<>(callbacks);
+    }
+    for (GoogleApiClient.ConnectionCallbacks listener : listeners)
+      listener.onConnectionSuspended(cause);
+  }
+
+  @Override
+  public void onConnectionFailed(@NonNull ConnectionResult connectionResult) {
+    List<GoogleApiClient.OnConnectionFailedListener> listeners;
+    int dropped;
+    synchronized (this) {
+      // queued operations cannot run, give back the references they held
+      dropped = pending.size();
+      pending.clear();
+      references -= dropped;
+      listeners = new ArrayList<>(failedListeners);
+    }
+    for (GoogleApiClient.OnConnectionFailedListener listener : listeners)
+      listener.onConnectionFailed(connectionResult);
+    if (dropped > 0) scheduleIdleDisconnect();
+  }
+
+  @VisibleForTesting
+  synchronized int getReferences() {
+    return references;
+  }
+
+  /**
+   * Disconnects if no reference was taken since the last one was released.
+   */
+  @VisibleForTesting
+  void disconnectIfIdle() {
+    synchronized (this) {
+      if (references > 0) return;
+    }
+    if (client.isConnected() || client.isConnecting()) client.disconnect();
+  }
+
+  private void retain() {
+    synchronized (this) {
+      references++;
+      if (handler != null) handler.removeCallbacks(idleDisconnect);
+    }
+    if (!client.isConnected() && !client.isConnecting()) client.connect();
+  }
+
+  private void releaseReference() {
+    synchronized (this) {
+      if (references == 0) return;
+      references--;
+      if (references > 0) return;
+    }
+    scheduleIdleDisconnect();
+  }
+
+  private void scheduleIdleDisconnect() {
+    synchronized (this) {
+      if (references > 0) return;
+      if (idleGrace > 0) {
+        if (handler == null && Looper.getMainLooper() != null)
+          handler = new Handler(Looper.getMainLooper());
+        if (handler != null) {
+          handler.removeCallbacks(idleDisconnect);
+          handler.postDelayed(idleDisconnect, idleGrace);
+          return;
+        }
+      }
+    }
+    disconnectIfIdle();
+  }
+
+  /**
+   * Work that needs a connected client.
+   */
+  public interface Operation {
+    void run(GoogleApiClient client);
+  }
+}
@@ -23,6 +23,7 @@ import android.location.Location;
 import android.os.Bundle;
 import android.os.Looper;
 
+import androidx.annotation.VisibleForTesting;
 import androidx.core.app.ActivityCompat;
 
 import com.google.android.gms.common.ConnectionResult;
@@ -39,6 +40,7 @@ import com.google.android.gms.location.LocationSettingsStatusCodes;
 
 public class GooglePlayServicesLocationProvider
     implements ServiceLocationProvider,
+    LooperLocationProvider,
     GoogleApiClient.ConnectionCallbacks,
     GoogleApiClient.OnConnectionFailedListener,
     LocationListener,
@@ -46,13 +48,21 @@ public class GooglePlayServicesLocationProvider
 
   public static final int REQUEST_START_LOCATION_FIX = 10001;
   public static final int REQUEST_CHECK_SETTINGS = 20001;
-  private static final String GMS_ID = "GMS";
+  /**
+   * Default time allowed for Play Services to connect before reporting a failure.
+   */
+  public static final long DEFAULT_CONNECT_TIMEOUT = 10000;
+  /**
+   * Id this provider keeps its last fix under in the {@link LocationStore}.
+   */
+  static final String GMS_ID = "GMS";
 
   private GoogleApiClient client;
   private Logger logger;
   private LocationUpdatedListener listener;
   private boolean shouldStart = false;
-  private boolean stopped = false;
+  private boolean started = false;
+  private GoogleApiConnection connection;
   private LocationStore locationStore;
   private LocationRequest locationRequest;
   private Context context;
@@ -61,6 +71,9 @@ public class GooglePlayServicesLocationProvider
   private boolean checkLocationSettings;
   private boolean fulfilledCheckLocationSettings;
   private boolean alwaysShow = true;
+  private ConnectionWatchdog watchdog;
+  private Looper looper;
+  private final ProviderMetrics metrics = LocationMetrics.get().of(getClass());
   private ResultCallback<LocationSettingsResult> settingsResultCallback =
       new ResultCallback<LocationSettingsResult>() {
         @Override
@@ -102,6 +115,7 @@ public class GooglePlayServicesLocationProvider
   public GooglePlayServicesLocationProvider() {
     checkLocationSettings = true;
     fulfilledCheckLocationSettings = false;
+    setConnectionTimeout(DEFAULT_CONNECT_TIMEOUT, 0);
   }
 
   public GooglePlayServicesLocationProvider(GooglePlayServicesListener playServicesListener) {
@@ -119,18 +133,20 @@ public class GooglePlayServicesLocationProvider
     this.logger = logger;
     this.context = context;
 
-    locationStore = new LocationStore();
+    // init runs again for every control on the context, keep the store and its pending fixes
+    if (locationStore == null) {
+      locationStore = new LocationStore(LocationStore.DEFAULT_FLUSH_INTERVAL);
+      locationStore.flushOnBackground(context);
+    }
 
-    if (!shouldStart) {
-      this.client =
-          new GoogleApiClient.Builder(context)
-              .addApi(LocationServices.API)
-              .addConnectionCallbacks(this)
-              .addOnConnectionFailedListener(this)
-              .build();
+    // connects lazily, on the first start
+    if (connection == null) setConnection(GoogleApiConnection.get(context));
+  }
 
-      client.connect();
-    } else logger.d("already started");
+  @VisibleForTesting
+  void setConnection(GoogleApiConnection connection) {
+    this.connection = connection;
+    client = connection.getClient();
   }
 
   private LocationRequest createRequest(LocationParams params, boolean singleUpdate) {
@@ -166,15 +182,17 @@ public class GooglePlayServicesLocationProvider
     this.listener = listener;
     if (listener == null) logger.d("Listener is null, you sure about this?");
     locationRequest = createRequest(params, singleUpdate);
+    LocationTrace.record(LocationTrace.START, LocationTrace.GMS_LOCATION);
+    if (!started) {
+      started = true;
+      metrics.started(!client.isConnected());
+      connection.acquire(this, this);
+    }
+    watchdog.start(client.isConnected());
 
     if (client.isConnected()) startUpdating(locationRequest);
-    else if (stopped) {
-      shouldStart = true;
-      client.connect();
-      stopped = false;
-    } else {
+    else {
       shouldStart = true;
-      client.connect();
       logger.d("still not connected - scheduled start when connection is ok");
     }
   }
@@ -203,7 +221,7 @@ public class GooglePlayServicesLocationProvider
 
 
       LocationServices.FusedLocationApi.requestLocationUpdates(
-          client, request, this, Looper.getMainLooper())
+          client, request, this, looper != null ? looper : Looper.getMainLooper())
           .setResultCallback(this);
     } else logger.w("startUpdating executed without the GoogleApiClient being connected!!");
   }
@@ -221,13 +239,16 @@ public class GooglePlayServicesLocationProvider
   @Override
   public void stop() {
     logger.d("stop");
-    if (client.isConnected()) {
-      LocationServices.FusedLocationApi.removeLocationUpdates(client, this);
-      client.disconnect();
+    LocationTrace.record(LocationTrace.STOP, LocationTrace.GMS_LOCATION);
+    watchdog.cancel();
+    if (locationStore != null) locationStore.flush();
+    if (client.isConnected()) LocationServices.FusedLocationApi.removeLocationUpdates(client, this);
+    if (started) {
+      started = false;
+      connection.release(this, this);
     }
     fulfilledCheckLocationSettings = false;
     shouldStart = false;
-    stopped = true;
   }
 
   @Override
@@ -263,9 +284,17 @@ public class GooglePlayServicesLocationProvider
     serviceListener = listener;
   }
 
+  @Override
+  public void setLooper(Looper looper) {
+    this.looper = looper;
+  }
+
   @Override
   public void onConnected(Bundle bundle) {
     logger.d("onConnected");
+    LocationTrace.record(LocationTrace.CONNECTED, LocationTrace.GMS_LOCATION);
+    watchdog.connected();
+    metrics.connected();
     if (shouldStart) startUpdating(locationRequest);
     if (googlePlayServicesListener != null) googlePlayServicesListener.onConnected(bundle);
     if (serviceListener != null) serviceListener.onConnected();
@@ -274,6 +303,8 @@ public class GooglePlayServicesLocationProvider
   @Override
   public void onConnectionSuspended(int i) {
     logger.d("onConnectionSuspended " + i);
+    LocationTrace.record(LocationTrace.SUSPENDED, LocationTrace.GMS_LOCATION, i, 0, 0);
+    watchdog.cancel();
     if (googlePlayServicesListener != null) googlePlayServicesListener.onConnectionSuspended(i);
     if (serviceListener != null) serviceListener.onConnectionSuspended();
   }
@@ -281,6 +312,14 @@ public class GooglePlayServicesLocationProvider
   @Override
   public void onConnectionFailed(ConnectionResult connectionResult) {
     logger.d("onConnectionFailed " + connectionResult.toString());
+    LocationTrace.record(
+        LocationTrace.CONNECT_FAILED,
+        LocationTrace.GMS_LOCATION,
+        connectionResult.getErrorCode(),
+        0,
+        0);
+    watchdog.cancel();
+    metrics.connectFailed();
     if (googlePlayServicesListener != null)
       googlePlayServicesListener.onConnectionFailed(connectionResult);
     if (serviceListener != null) serviceListener.onConnectionFailed();
@@ -289,12 +328,16 @@ public class GooglePlayServicesLocationProvider
   @Override
   public void onLocationChanged(Location location) {
     logger.d("onLocationChanged", location);
+    LocationTrace.fix(LocationTrace.GMS_LOCATION, location);
+    watchdog.fixed();
 
+    metrics.fix(location);
     if (listener != null) listener.onLocationUpdated(location);
 
     if (locationStore != null) {
       logger.d("Stored in SharedPreferences");
       locationStore.put(GMS_ID, location);
+      LocationTrace.record(LocationTrace.STORE_WRITE, LocationTrace.GMS_LOCATION);
     }
   }
 
@@ -313,6 +356,43 @@ public class GooglePlayServicesLocationProvider
       } else logger.e("Registering failed: " + status.getStatusMessage());
   }
 
+  /**
+   * Sets the deadlines after which a start that hangs is reported to the {@link
+   * ServiceConnectionListener} as a connection failure, so a {@link MultiFallBackLocationProvider}
+   * can fail over. The first fix deadline also runs while the location settings dialog is shown,
+   * so keep it generous when checking the location settings.
+   *
+   * @param connectTimeout  milliseconds allowed to connect, 0 for no deadline, {@link
+   *                        #DEFAULT_CONNECT_TIMEOUT} by default
+   * @param firstFixTimeout milliseconds allowed from connecting to the first fix, 0 for no deadline
+   *                        (default)
+   */
+  public void setConnectionTimeout(long connectTimeout, long firstFixTimeout) {
+    if (watchdog != null) watchdog.cancel();
+    watchdog =
+        new ConnectionWatchdog(
+            connectTimeout,
+            firstFixTimeout,
+            new ConnectionWatchdog.Listener() {
+              @Override
+              public void onDeadlinePassed(boolean connecting) {
+                onConnectionTimedOut(connecting);
+              }
+            });
+  }
+
+  /**
+   * Reports a start that missed its deadline like any other connection failure, with a {@link
+   * ConnectionResult#TIMEOUT} result for the {@link GooglePlayServicesListener}.
+   */
+  @VisibleForTesting
+  void onConnectionTimedOut(boolean connecting) {
+    if (logger != null)
+      logger.w(connecting ? "Play Services did not connect in time"
+          : "Play Services did not deliver a fix in time");
+    onConnectionFailed(new ConnectionResult(ConnectionResult.TIMEOUT));
+  }
+
   /**
    * @return TRUE if active, FALSE if the settings wont be checked before launching the location
    * updates request
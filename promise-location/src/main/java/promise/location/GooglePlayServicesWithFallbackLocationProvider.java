@@ -16,11 +16,14 @@ package promise.location;
 import android.content.Context;
 import android.location.Location;
 import android.os.Bundle;
+import android.os.Looper;
+
+import androidx.annotation.VisibleForTesting;
 
 import com.google.android.gms.common.ConnectionResult;
 
 public class GooglePlayServicesWithFallbackLocationProvider
-    implements LocationProvider, GooglePlayServicesListener {
+    implements LooperLocationProvider, GooglePlayServicesListener {
 
   private Logger logger;
   private LocationUpdatedListener listener;
@@ -28,13 +31,19 @@ public class GooglePlayServicesWithFallbackLocationProvider
   private Context context;
   private LocationParams params;
   private boolean singleUpdate = false;
+  private Looper looper;
 
   private LocationProvider provider;
 
   public GooglePlayServicesWithFallbackLocationProvider(Context context) {
     if (NetworkUtils.getConnectivityStatus(context) == NetworkUtils.TYPE_NOT_CONNECTED)
       provider = new LocationManagerProvider();
-    else provider = new GooglePlayServicesLocationProvider();
+    else provider = new GooglePlayServicesLocationProvider(this);
+  }
+
+  @VisibleForTesting
+  LocationProvider getProvider() {
+    return provider;
   }
 
   @Override
@@ -46,6 +55,13 @@ public class GooglePlayServicesWithFallbackLocationProvider
     provider.init(context, logger);
   }
 
+  @Override
+  public void setLooper(Looper looper) {
+    this.looper = looper;
+    if (provider instanceof LooperLocationProvider)
+      ((LooperLocationProvider) provider).setLooper(looper);
+  }
+
   @Override
   public void start(
       LocationUpdatedListener listener, LocationParams params, boolean singleUpdate) {
@@ -84,7 +100,10 @@ public class GooglePlayServicesWithFallbackLocationProvider
 
   private void fallbackToLocationManager() {
     logger.d("FusedLocationProvider not working, falling back and using LocationManager");
-    provider = new LocationManagerProvider();
+    LocationTrace.record(LocationTrace.FALLBACK, LocationTrace.GMS_WITH_FALLBACK);
+    LocationManagerProvider fallback = new LocationManagerProvider();
+    fallback.setLooper(looper);
+    provider = fallback;
     provider.init(context, logger);
     if (shouldStart) provider.start(listener, params, singleUpdate);
   }
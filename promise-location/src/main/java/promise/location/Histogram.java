@@ -0,0 +1,153 @@
+/*
+ * Copyright 2017, Peter Vincent
+ * Licensed under the Apache License, Version 2.0, Android Promise.
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package promise.location;
+
+import androidx.annotation.NonNull;
+
+import java.util.Arrays;
+
+/**
+ * A histogram with fixed buckets, cheap enough to record into on every fix. <br>
+ * <br>
+ * The buckets are given by ascending upper bounds, inclusive; values above the last bound land in
+ * an overflow bucket. Recording only increments counters, it never allocates. Take a {@link
+ * #snapshot()} to read a consistent copy while recording goes on.
+ */
+public final class Histogram {
+
+  private final long[] bounds;
+  private final long[] counts;
+  private long count;
+  private long sum;
+  private long min = Long.MAX_VALUE;
+  private long max = Long.MIN_VALUE;
+
+  /**
+   * @param bounds ascending inclusive upper bounds of the buckets
+   */
+  public Histogram(@NonNull long... bounds) {
+    for (int i = 1; i < bounds.length; i++)
+      if (bounds[i] <= bounds[i - 1])
+        throw new IllegalArgumentException("Bucket bounds must be ascending");
+    this.bounds = bounds.clone();
+    this.counts = new long[bounds.length + 1];
+  }
+
+  private Histogram(Histogram source) {
+    this.bounds = source.bounds;
+    this.counts = source.counts.clone();
+    this.count = source.count;
+    this.sum = source.sum;
+    this.min = source.min;
+    this.max = source.max;
+  }
+
+  public synchronized void record(long value) {
+    counts[bucket(value)]++;
+    count++;
+    sum += value;
+    if (value < min) min = value;
+    if (value > max) max = value;
+  }
+
+  /**
+   * @return a copy of the current counts
+   */
+  public synchronized Histogram snapshot() {
+    return new Histogram(this);
+  }
+
+  public synchronized void reset() {
+    Arrays.fill(counts, 0);
+    count = 0;
+    sum = 0;
+    min = Long.MAX_VALUE;
+    max = Long.MIN_VALUE;
+  }
+
+  /**
+   * @return the number of buckets, the overflow bucket included
+   */
+  public int getBucketCount() {
+    return counts.length;
+  }
+
+  /**
+   * @return the inclusive upper bound of the bucket, {@link Long#MAX_VALUE} for the overflow bucket
+   */
+  public long getUpperBound(int bucket) {
+    return bucket < bounds.length ? bounds[bucket] : Long.MAX_VALUE;
+  }
+
+  public synchronized long getCount(int bucket) {
+    return counts[bucket];
+  }
+
+  public synchronized long getTotalCount() {
+    return count;
+  }
+
+  public synchronized long getSum() {
+    return sum;
+  }
+
+  /**
+   * @return the smallest value recorded, 0 if none
+   */
+  public synchronized long getMin() {
+    return count == 0 ? 0 : min;
+  }
+
+  /**
+   * @return the largest value recorded, 0 if none
+   */
+  public synchronized long getMax() {
+    return count == 0 ? 0 : max;
+  }
+
+  public synchronized double getMean() {
+    return count == 0 ? 0 : (double) sum / count;
+  }
+
+  /**
+   * Estimates a quantile from the buckets.
+   *
+   * @param quantile between 0 and 1
+   * @return the upper bound of the bucket holding the quantile, capped to the largest value
+   *     recorded, 0 if nothing was recorded
+   */
+  public synchronized long getPercentile(double quantile) {
+    if (count == 0) return 0;
+    long rank = (long) Math.ceil(quantile * count);
+    if (rank < 1) rank = 1;
+    long seen = 0;
+    for (int i = 0; i < counts.length; i++) {
+      seen += counts[i];
+      if (seen >= rank) return Math.min(getUpperBound(i), max);
+    }
+    return max;
+  }
+
+  private int bucket(long value) {
+    int low = 0;
+    int high = bounds.length;
+    while (low < high) {
+      int mid = (low + high) >>> 1;
+      if (bounds[mid] < value) low = mid + 1;
+      else high = mid;
+    }
+    return low;
+  }
+}
@@ -0,0 +1,167 @@
+/*
+ * Copyright 2017, Peter Vincent
+ * Licensed under the Apache License, Version 2.0, Android Promise.
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package promise.location;
+
+import android.location.Location;
+
+import androidx.annotation.NonNull;
+
+import promise.location.geo.GeoMath;
+
+/**
+ * Smooths the jitter out of a fix stream with a constant velocity Kalman filter, weighting each fix
+ * by its reported accuracy. <br>
+ * <br>
+ * Fixes are projected onto a local east/north plane in meters around a moving origin, where both
+ * axes follow the same model and so share one covariance. Time steps come from {@link
+ * Location#getTime()} and may be irregular; a gap longer than {@link #DEFAULT_MAX_GAP} starts
+ * over from the next fix. The state is kept in primitive arrays, so an update allocates nothing
+ * besides the copy of the fix it returns. The returned fix carries the estimated position and its
+ * accuracy.
+ */
+public class KalmanLocationFilter implements LocationFilter {
+
+  /**
+   * Process noise of a walking or driving device in m^2/s^3, how fast its velocity may change.
+   */
+  public static final double DEFAULT_PROCESS_NOISE = 1;
+  public static final long DEFAULT_MAX_GAP = 60000;
+
+  // variance of the first velocity, (10 m/s)^2
+  private static final double INITIAL_VELOCITY_VARIANCE = 100;
+  // used when a fix reports no accuracy
+  private static final double UNKNOWN_ACCURACY = 50;
+  // the projection is recentred before its distortion matters
+  private static final double MAX_OFFSET = 10000;
+
+  private final double processNoise;
+  private final long maxGap;
+  // east, north, east velocity, north velocity
+  private final double[] state = new double[4];
+  // position variance, position/velocity covariance, velocity variance
+  private final double[] covariance = new double[3];
+  // latitude, longitude, meters per degree of longitude
+  private final double[] origin = new double[3];
+  private boolean initialized;
+  private long lastTime;
+  private Location lastInput;
+  private Location lastOutput;
+
+  public KalmanLocationFilter() {
+    this(DEFAULT_PROCESS_NOISE, DEFAULT_MAX_GAP);
+  }
+
+  /**
+   * @param processNoise how fast the velocity may change in m^2/s^3, higher follows turns and stops
+   *                     sooner but smooths less
+   * @param maxGap       the longest time between two fixes in milliseconds before starting over
+   */
+  public KalmanLocationFilter(double processNoise, long maxGap) {
+    if (processNoise <= 0) throw new IllegalArgumentException("Process noise must be positive");
+    this.processNoise = processNoise;
+    this.maxGap = maxGap;
+  }
+
+  @NonNull
+  @Override
+  public Location filter(@NonNull Location location) {
+    // the same fix handed in again by another listener sharing this filter
+    if (location == lastInput) return lastOutput;
+    double accuracy =
+        location.hasAccuracy() && location.getAccuracy() > 0
+            ? location.getAccuracy()
+            : UNKNOWN_ACCURACY;
+    long time = location.getTime();
+    if (!initialized || time - lastTime > maxGap) start(location, accuracy);
+    else {
+      if (time > lastTime) predict((time - lastTime) / 1000d);
+      update(location, accuracy * accuracy);
+    }
+    lastTime = Math.max(lastTime, time);
+
+    Location output = new Location(location);
+    output.setLatitude(origin[0] + state[1] / GeoMath.METERS_PER_DEGREE);
+    output.setLongitude(origin[1] + state[0] / origin[2]);
+    output.setAccuracy((float) Math.sqrt(covariance[0]));
+    if (Math.abs(state[0]) > MAX_OFFSET || Math.abs(state[1]) > MAX_OFFSET)
+      recentre(output.getLatitude(), output.getLongitude());
+    lastInput = location;
+    lastOutput = output;
+    return output;
+  }
+
+  @Override
+  public void reset() {
+    initialized = false;
+    lastTime = 0;
+    lastInput = null;
+    lastOutput = null;
+  }
+
+  private void start(Location location, double accuracy) {
+    initialized = true;
+    lastTime = location.getTime();
+    recentre(location.getLatitude(), location.getLongitude());
+    state[2] = 0;
+    state[3] = 0;
+    covariance[0] = accuracy * accuracy;
+    covariance[1] = 0;
+    covariance[2] = INITIAL_VELOCITY_VARIANCE;
+  }
+
+  /**
+   * Moves the state dt seconds ahead, growing the covariance by the process noise of a random
+   * acceleration over that time.
+   */
+  private void predict(double dt) {
+    state[0] += state[2] * dt;
+    state[1] += state[3] * dt;
+    double p00 = covariance[0];
+    double p01 = covariance[1];
+    double p11 = covariance[2];
+    covariance[0] = p00 + 2 * dt * p01 + dt * dt * p11 + processNoise * dt * dt * dt / 3;
+    covariance[1] = p01 + dt * p11 + processNoise * dt * dt / 2;
+    covariance[2] = p11 + processNoise * dt;
+  }
+
+  /**
+   * Corrects the state with a measured position of the given variance.
+   */
+  private void update(Location location, double variance) {
+    double east = (location.getLongitude() - origin[1]) * origin[2];
+    double north = (location.getLatitude() - origin[0]) * GeoMath.METERS_PER_DEGREE;
+    double p00 = covariance[0];
+    double p01 = covariance[1];
+    double positionGain = p00 / (p00 + variance);
+    double velocityGain = p01 / (p00 + variance);
+    double eastResidual = east - state[0];
+    double northResidual = north - state[1];
+    state[0] += positionGain * eastResidual;
+    state[1] += positionGain * northResidual;
+    state[2] += velocityGain * eastResidual;
+    state[3] += velocityGain * northResidual;
+    covariance[0] = (1 - positionGain) * p00;
+    covariance[1] = (1 - positionGain) * p01;
+    covariance[2] -= velocityGain * p01;
+  }
+
+  private void recentre(double latitude, double longitude) {
+    origin[0] = latitude;
+    origin[1] = longitude;
+    origin[2] = GeoMath.METERS_PER_DEGREE * Math.cos(Math.toRadians(latitude));
+    state[0] = 0;
+    state[1] = 0;
+  }
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright 2017, Peter Vincent
+ * Licensed under the Apache License, Version 2.0, Android Promise.
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package promise.location;
+
+import android.location.Location;
+
+import androidx.annotation.Nullable;
+
+/**
+ * Picks the best recent fix out of candidates gathered from the providers, their stores and the
+ * fixes seen in memory. <br>
+ * <br>
+ * A candidate qualifies when it is at most <code>maxAge</code> old and its accuracy radius is at
+ * most <code>maxAccuracy</code>; a fix without an accuracy never qualifies against an accuracy
+ * limit. Qualifying fixes are scored by <code>age / maxAge + accuracy / maxAccuracy</code> and the
+ * lowest score wins, so a slightly older but much sharper fix beats a fresh coarse one. A limit of
+ * 0 or less is no limit and does not count in the score. <br>
+ * <br>
+ * A fix without a time or at exactly 0, 0 never qualifies, whatever the limits: it is a blank
+ * placeholder, not a place the device has been.
+ */
+final class LastLocationSelector {
+
+  private final long now;
+  private final long maxAge;
+  private final float maxAccuracy;
+  private Location best;
+  private double bestScore;
+
+  /**
+   * @param now         wall clock time in milliseconds the age of a fix is measured against
+   * @param maxAge      maximum age in milliseconds
+   * @param maxAccuracy maximum accuracy radius in meters
+   */
+  LastLocationSelector(long now, long maxAge, float maxAccuracy) {
+    this.now = now;
+    this.maxAge = maxAge;
+    this.maxAccuracy = maxAccuracy;
+  }
+
+  /**
+   * Considers the candidate, keeping it if it qualifies and scores better than the best so far.
+   */
+  void offer(@Nullable Location candidate) {
+    if (candidate == null || candidate == best) return;
+    double score = score(candidate);
+    if (score < 0) return;
+    if (best == null || score < bestScore) {
+      best = candidate;
+      bestScore = score;
+    }
+  }
+
+  /**
+   * @return the best qualifying candidate, null if none qualified
+   */
+  @Nullable
+  Location best() {
+    return best;
+  }
+
+  /**
+   * @return the candidate's score, lower is better, or -1 if it does not qualify
+   */
+  double score(Location candidate) {
+    if (candidate.getTime() <= 0) return -1;
+    if (candidate.getLatitude() == 0 && candidate.getLongitude() == 0) return -1;
+    double score = 0;
+    if (maxAge > 0) {
+      // a fix stamped slightly ahead of this clock is as fresh as it gets
+      long age = Math.max(0, now - candidate.getTime());
+      if (age > maxAge) return -1;
+      score += (double) age / maxAge;
+    }
+    if (maxAccuracy > 0) {
+      if (!candidate.hasAccuracy() || candidate.getAccuracy() > maxAccuracy) return -1;
+      score += candidate.getAccuracy() / maxAccuracy;
+    }
+    return score;
+  }
+}
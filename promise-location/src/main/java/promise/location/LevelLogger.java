@@ -0,0 +1,179 @@
+/*
+ * Copyright 2017, Peter Vincent
+ * Licensed under the Apache License, Version 2.0, Android Promise.
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package promise.location;
+
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import promise.commons.data.log.LogUtil;
+
+/**
+ * A {@link Logger} built for being left on: the level is checked before anything else, tags are
+ * fixed per class instead of found by walking the stack, and messages are only formatted once they
+ * are known to be written. <br>
+ * <br>
+ * Each class gets its own logger, and so its own tag, through {@link #forClass(Class)}; the
+ * loggers are cached so asking again costs a map lookup. With an asynchronous {@link Sink} the
+ * formatting and the write both move off the calling thread. <br>
+ * <br>
+ * A message without format specifiers has its arguments appended after a space, so <code>
+ * d("onLocationChanged", location)</code> writes the location instead of dropping it.
+ */
+final class LevelLogger implements Logger {
+
+  static final String DEFAULT_TAG = "PromiseLocation";
+
+  static final Sink LOGCAT =
+      new Sink() {
+        @Override
+        public void write(
+            int level, String tag, @Nullable Throwable t, String message, Object[] args) {
+          String text = format(message, args);
+          switch (level) {
+            case Log.ERROR:
+              if (t == null) LogUtil.e(tag, text);
+              else LogUtil.e(tag, text, t);
+              break;
+            case Log.WARN:
+              if (t == null) LogUtil.w(tag, text);
+              else LogUtil.w(tag, text, t);
+              break;
+            case Log.INFO:
+              if (t == null) LogUtil.i(tag, text);
+              else LogUtil.i(tag, text, t);
+              break;
+            default:
+              if (t == null) LogUtil.d(tag, text);
+              else LogUtil.d(tag, text, t);
+          }
+        }
+      };
+
+  private final int minLevel;
+  private final String tag;
+  private final Sink sink;
+  private final Map<Class<?>, LevelLogger> children;
+
+  /**
+   * @param minLevel the lowest {@link Log} priority written, for example {@link Log#DEBUG}
+   * @param sink     where the messages that pass go
+   */
+  LevelLogger(int minLevel, @NonNull Sink sink) {
+    this(minLevel, DEFAULT_TAG, sink, new ConcurrentHashMap<Class<?>, LevelLogger>());
+  }
+
+  private LevelLogger(
+      int minLevel, String tag, Sink sink, Map<Class<?>, LevelLogger> children) {
+    this.minLevel = minLevel;
+    this.tag = tag;
+    this.sink = sink;
+    this.children = children;
+  }
+
+  /**
+   * @return a logger tagged with the simple name of the class, sharing this one's level and sink
+   */
+  LevelLogger forClass(@NonNull Class<?> type) {
+    LevelLogger child = children.get(type);
+    if (child == null) {
+      child = new LevelLogger(minLevel, type.getSimpleName(), sink, children);
+      children.put(type, child);
+    }
+    return child;
+  }
+
+  boolean isLoggable(int level) {
+    return level >= minLevel;
+  }
+
+  String getTag() {
+    return tag;
+  }
+
+  @Override
+  public void v(String message, Object... args) {
+    if (Log.VERBOSE >= minLevel) sink.write(Log.VERBOSE, tag, null, message, args);
+  }
+
+  @Override
+  public void v(Throwable t, String message, Object... args) {
+    if (Log.VERBOSE >= minLevel) sink.write(Log.VERBOSE, tag, t, message, args);
+  }
+
+  @Override
+  public void d(String message, Object... args) {
+    if (Log.DEBUG >= minLevel) sink.write(Log.DEBUG, tag, null, message, args);
+  }
+
+  @Override
+  public void d(Throwable t, String message, Object... args) {
+    if (Log.DEBUG >= minLevel) sink.write(Log.DEBUG, tag, t, message, args);
+  }
+
+  @Override
+  public void i(String message, Object... args) {
+    if (Log.INFO >= minLevel) sink.write(Log.INFO, tag, null, message, args);
+  }
+
+  @Override
+  public void i(Throwable t, String message, Object... args) {
+    if (Log.INFO >= minLevel) sink.write(Log.INFO, tag, t, message, args);
+  }
+
+  @Override
+  public void w(String message, Object... args) {
+    if (Log.WARN >= minLevel) sink.write(Log.WARN, tag, null, message, args);
+  }
+
+  @Override
+  public void w(Throwable t, String message, Object... args) {
+    if (Log.WARN >= minLevel) sink.write(Log.WARN, tag, t, message, args);
+  }
+
+  @Override
+  public void e(String message, Object... args) {
+    if (Log.ERROR >= minLevel) sink.write(Log.ERROR, tag, null, message, args);
+  }
+
+  @Override
+  public void e(Throwable t, String message, Object... args) {
+    if (Log.ERROR >= minLevel) sink.write(Log.ERROR, tag, t, message, args);
+  }
+
+  /**
+   * Formats the message with {@link String#format} when it has format specifiers, appends the
+   * arguments otherwise.
+   */
+  static String format(String message, Object[] args) {
+    if (args == null || args.length == 0) return message;
+    if (message.indexOf('%') >= 0) return String.format(message, args);
+    StringBuilder builder = new StringBuilder(message);
+    for (Object arg : args) builder.append(' ').append(arg);
+    return builder.toString();
+  }
+
+  /**
+   * Where a {@link LevelLogger} writes the messages that passed its level. The arguments are handed
+   * over unformatted.
+   */
+  interface Sink {
+    void write(int level, String tag, @Nullable Throwable t, String message, Object[] args);
+  }
+}
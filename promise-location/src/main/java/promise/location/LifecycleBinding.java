@@ -0,0 +1,112 @@
+/*
+ * Copyright 2017, Peter Vincent
+ * Licensed under the Apache License, Version 2.0, Android Promise.
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package promise.location;
+
+import androidx.annotation.NonNull;
+import androidx.lifecycle.Lifecycle;
+import androidx.lifecycle.LifecycleEventObserver;
+import androidx.lifecycle.LifecycleOwner;
+
+/**
+ * Follows the {@link LifecycleOwner} of a bound control. The target is resumed when the owner comes
+ * to the foreground, paused when it goes to the background, and released for good when the owner
+ * is destroyed. <br>
+ * <br>
+ * Events are expected on the main thread, as androidx delivers them.
+ */
+final class LifecycleBinding implements LifecycleEventObserver {
+
+  private final LifecycleOwner owner;
+  private final Target target;
+  private boolean resumed;
+  private boolean released;
+
+  private LifecycleBinding(LifecycleOwner owner, Target target) {
+    this.owner = owner;
+    this.target = target;
+  }
+
+  /**
+   * Starts following the owner, resuming the target right away if the owner is already in the
+   * foreground.
+   *
+   * @return the binding, or null if the owner is already destroyed
+   */
+  static LifecycleBinding bind(@NonNull LifecycleOwner owner, @NonNull Target target) {
+    Lifecycle lifecycle = owner.getLifecycle();
+    if (lifecycle.getCurrentState() == Lifecycle.State.DESTROYED) return null;
+    LifecycleBinding binding = new LifecycleBinding(owner, target);
+    lifecycle.addObserver(binding);
+    // the registry replays the current state to new observers, this covers those that do not
+    if (lifecycle.getCurrentState().isAtLeast(Lifecycle.State.STARTED)) binding.resume();
+    return binding;
+  }
+
+  @Override
+  public void onStateChanged(@NonNull LifecycleOwner source, @NonNull Lifecycle.Event event) {
+    switch (event) {
+      case ON_START:
+        resume();
+        break;
+      case ON_STOP:
+        pause();
+        break;
+      case ON_DESTROY:
+        release();
+        break;
+      default:
+        break;
+    }
+  }
+
+  /**
+   * Stops following the owner without touching the target, for when it was stopped explicitly.
+   */
+  void unbind() {
+    released = true;
+    owner.getLifecycle().removeObserver(this);
+  }
+
+  private void resume() {
+    if (released || resumed) return;
+    resumed = true;
+    target.resume();
+  }
+
+  private void pause() {
+    if (released || !resumed) return;
+    resumed = false;
+    target.pause();
+  }
+
+  private void release() {
+    if (released) return;
+    released = true;
+    resumed = false;
+    owner.getLifecycle().removeObserver(this);
+    target.release();
+  }
+
+  /**
+   * What a control does as its owner moves between foreground and background.
+   */
+  interface Target {
+    void resume();
+
+    void pause();
+
+    void release();
+  }
+}
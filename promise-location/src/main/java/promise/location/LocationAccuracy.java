@@ -14,6 +14,9 @@
 package promise.location;
 
 public enum LocationAccuracy {
+  /**
+   * Passive: no fix is requested, only those the device gets for other apps are reported.
+   */
   LOWEST,
   LOW,
   MEDIUM,
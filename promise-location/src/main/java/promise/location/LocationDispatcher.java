@@ -0,0 +1,393 @@
+/*
+ * Copyright 2017, Peter Vincent
+ * Licensed under the Apache License, Version 2.0, Android Promise.
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package promise.location;
+
+import android.location.Location;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.os.Process;
+
+import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+
+import promise.location.geo.GeoMath;
+
+/**
+ * Shares a single {@link LocationProvider} subscription between every {@link
+ * LocationUpdatedListener} started through a {@link PromiseLocation.LocationControl} on the same
+ * context. Each fix is delivered to all registered listeners, and listeners can be added or removed
+ * without the underlying provider being restarted.
+ * <br>
+ * <br>
+ * When listeners ask for different {@link LocationParams}, the provider is only asked for one
+ * effective request: the smallest interval, the smallest distance and the highest accuracy of all
+ * active subscriptions. Fixes are then down-sampled per listener so each one still observes the rate
+ * it asked for. The effective request is recomputed whenever a listener joins or leaves, so the
+ * hardware rate drops back as soon as the most demanding listener is gone.
+ * <br>
+ * <br>
+ * Fixes arrive on the looper given to {@link #setLooper}, the main looper by default, and the
+ * history is recorded on that thread. Each listener is then called on that same thread, or through
+ * the executor it subscribed with. Subscriptions may be added and removed from any thread.
+ * <br>
+ * <br>
+ * A subscription with a {@link LocationFilter} gets every fix through it first. The filter sees
+ * the whole shared stream, and the down-sampling applies to what it returns.
+ * <br>
+ * <br>
+ * Lifecycle bound subscriptions leave with a {@link #STOP_GRACE}: when the last one goes the
+ * provider keeps running for a moment, so an owner that is recreated right away, as on a rotation,
+ * picks the running provider up again instead of stopping and restarting it.
+ */
+class LocationDispatcher implements LocationUpdatedListener {
+
+  /**
+   * How long the provider outlives the last subscription removed with a grace period.
+   */
+  static final long STOP_GRACE = 2000;
+
+  private final LocationProvider provider;
+  private final ProviderMetrics metrics;
+  private final List<Subscription> subscriptions = new CopyOnWriteArrayList<>();
+  private LocationParams effectiveParams;
+  private volatile LocationHistory history;
+  private volatile Location latest;
+  private boolean running;
+  private boolean singleUpdate;
+  private Looper looper;
+  private boolean looperChanged;
+  private Handler handler;
+  private final Runnable delayedStop =
+      new Runnable() {
+        @Override
+        public void run() {
+          stopIfIdle();
+        }
+      };
+
+  private static HandlerThread backgroundThread;
+
+  LocationDispatcher(LocationProvider provider) {
+    this.provider = provider;
+    metrics = LocationMetrics.get().of(provider.getClass());
+  }
+
+  LocationProvider getProvider() {
+    return provider;
+  }
+
+  void add(LocationUpdatedListener listener, LocationParams params, boolean singleUpdate) {
+    add(listener, params, singleUpdate, null);
+  }
+
+  void add(
+      LocationUpdatedListener listener,
+      LocationParams params,
+      boolean singleUpdate,
+      @Nullable Executor executor) {
+    add(listener, params, singleUpdate, executor, null);
+  }
+
+  synchronized void add(
+      LocationUpdatedListener listener,
+      LocationParams params,
+      boolean singleUpdate,
+      @Nullable Executor executor,
+      @Nullable LocationFilter filter) {
+    Subscription existing = find(listener);
+    if (existing != null) subscriptions.remove(existing);
+    subscriptions.add(new Subscription(listener, params, singleUpdate, executor, filter));
+    updateProvider();
+  }
+
+  /**
+   * Sets the looper the provider reports on, null for the main looper. A running provider is
+   * restarted on the new looper with the next subscription change. Providers that are not a {@link
+   * LooperLocationProvider} keep reporting on their own thread.
+   */
+  synchronized void setLooper(@Nullable Looper looper) {
+    if (looper == this.looper) return;
+    this.looper = looper;
+    if (!(provider instanceof LooperLocationProvider)) return;
+    ((LooperLocationProvider) provider).setLooper(looper);
+    looperChanged = true;
+  }
+
+  /**
+   * @return the looper of the background thread shared by every dispatcher, started on first use
+   */
+  static synchronized Looper backgroundLooper() {
+    if (backgroundThread == null) {
+      backgroundThread =
+          new HandlerThread("PromiseLocation", Process.THREAD_PRIORITY_BACKGROUND);
+      backgroundThread.start();
+    }
+    return backgroundThread.getLooper();
+  }
+
+  void remove(LocationUpdatedListener listener) {
+    remove(listener, false);
+  }
+
+  /**
+   * Removes the listener's subscription. With a grace period the provider is only stopped if no
+   * subscription joined within {@link #STOP_GRACE}.
+   */
+  synchronized void remove(LocationUpdatedListener listener, boolean grace) {
+    Subscription existing = find(listener);
+    if (existing == null) return;
+    subscriptions.remove(existing);
+    if (subscriptions.isEmpty()) {
+      if (!running) return;
+      if (grace && scheduleStop()) return;
+      stopProvider();
+    } else if (running) updateProvider();
+  }
+
+  synchronized void removeAll() {
+    subscriptions.clear();
+    stopProvider();
+  }
+
+  /**
+   * Stops the provider if it is still running without subscriptions.
+   */
+  @VisibleForTesting
+  synchronized void stopIfIdle() {
+    if (subscriptions.isEmpty() && running) stopProvider();
+  }
+
+  LocationParams getEffectiveParams() {
+    return effectiveParams;
+  }
+
+  /**
+   * Returns the history every fix is recorded into, creating it with the given capacity or
+   * resizing it in place when the capacity differs.
+   */
+  synchronized LocationHistory history(int capacity) {
+    if (history == null) history = new LocationHistory(capacity);
+    else history.resize(capacity);
+    return history;
+  }
+
+  synchronized LocationHistory history() {
+    if (history == null) history = new LocationHistory();
+    return history;
+  }
+
+  /**
+   * @return the last fix the provider delivered, null if none yet
+   */
+  @Nullable
+  Location getLatest() {
+    return latest;
+  }
+
+  int size() {
+    return subscriptions.size();
+  }
+
+  boolean isRunning() {
+    return running;
+  }
+
+  @Override
+  public void onLocationUpdated(Location location) {
+    latest = location;
+    LocationHistory history = this.history;
+    if (history != null) history.add(location);
+    boolean rejected = false;
+    boolean spent = false;
+    for (Subscription subscription : subscriptions) {
+      Location filtered =
+          subscription.filter == null ? location : subscription.filter.filter(location);
+      if (filtered == null) {
+        rejected = true;
+        continue;
+      }
+      if (subscription.singleUpdate) spent |= subscriptions.remove(subscription);
+      else if (!accepts(subscription, filtered)) continue;
+      subscription.delivered(filtered);
+      if (subscription.listener != null) subscription.deliver(filtered, metrics);
+    }
+    if (rejected) metrics.rejected();
+    synchronized (this) {
+      if (singleUpdate && running) {
+        // a one-shot provider request is spent after delivering its fix, stop the provider so it
+        // lets go of its resources, or ask again for subscriptions a filter did not serve yet
+        if (subscriptions.isEmpty()) stopProvider();
+        else {
+          running = false;
+          updateProvider();
+        }
+      } else if (spent && running) {
+        // the served one-shot subscriptions left, relax the request to the ones still here
+        if (subscriptions.isEmpty()) stopProvider();
+        else updateProvider();
+      }
+    }
+  }
+
+  /**
+   * Down-samples the shared stream to what the subscription asked for. A fix is accepted once the
+   * subscription's interval has (nearly) elapsed and the device moved at least its distance.
+   */
+  private boolean accepts(Subscription subscription, Location location) {
+    LocationParams effective = effectiveParams;
+    if (!subscription.hasDelivered || effective == null || subscription.params == null)
+      return true;
+    if (subscription.params.equals(effective)) return true;
+    long elapsed = location.getTime() - subscription.lastTime;
+    // accept a fix half an effective interval early rather than waiting a whole extra interval
+    if (elapsed + effective.getInterval() / 2 < subscription.params.getInterval()) return false;
+    if (subscription.params.getDistance() <= 0) return true;
+    // the hop between two accepted fixes is short, the equirectangular path is plenty
+    return GeoMath.equirectangular(
+            subscription.lastLatitude,
+            subscription.lastLongitude,
+            location.getLatitude(),
+            location.getLongitude())
+        >= subscription.params.getDistance();
+  }
+
+  /**
+   * Starts, restarts or leaves the provider alone depending on whether the merged request of all
+   * subscriptions differs from what the provider is currently running with.
+   */
+  private void updateProvider() {
+    cancelStop();
+    LocationParams params = merge();
+    boolean single = true;
+    for (Subscription subscription : subscriptions) single &= subscription.singleUpdate;
+
+    if (running && !looperChanged && single == singleUpdate && params.equals(effectiveParams))
+      return;
+    looperChanged = false;
+    effectiveParams = params;
+    singleUpdate = single;
+    running = true;
+    provider.start(this, params, single);
+  }
+
+  private boolean scheduleStop() {
+    if (handler == null && Looper.getMainLooper() != null)
+      handler = new Handler(Looper.getMainLooper());
+    if (handler == null) return false;
+    handler.removeCallbacks(delayedStop);
+    handler.postDelayed(delayedStop, STOP_GRACE);
+    return true;
+  }
+
+  private void cancelStop() {
+    if (handler != null) handler.removeCallbacks(delayedStop);
+  }
+
+  private void stopProvider() {
+    cancelStop();
+    running = false;
+    effectiveParams = null;
+    provider.stop();
+  }
+
+  private LocationParams merge() {
+    if (subscriptions.size() == 1 && subscriptions.get(0).params != null)
+      return subscriptions.get(0).params;
+    long interval = Long.MAX_VALUE;
+    float distance = Float.MAX_VALUE;
+    LocationAccuracy accuracy = null;
+    for (Subscription subscription : subscriptions) {
+      LocationParams params = subscription.params;
+      if (params == null) continue;
+      interval = Math.min(interval, params.getInterval());
+      distance = Math.min(distance, params.getDistance());
+      if (accuracy == null
+          || (params.getAccuracy() != null && params.getAccuracy().compareTo(accuracy) > 0))
+        accuracy = params.getAccuracy();
+    }
+    if (interval == Long.MAX_VALUE) return LocationParams.BEST_EFFORT;
+    return new LocationParams.Builder()
+        .setAccuracy(accuracy)
+        .setInterval(interval)
+        .setDistance(distance)
+        .build();
+  }
+
+  private Subscription find(LocationUpdatedListener listener) {
+    for (Subscription subscription : subscriptions)
+      if (subscription.listener == listener) return subscription;
+    return null;
+  }
+
+  static class Subscription {
+    final LocationUpdatedListener listener;
+    final LocationParams params;
+    final boolean singleUpdate;
+    final Executor executor;
+    final LocationFilter filter;
+    private boolean hasDelivered;
+    private long lastTime;
+    private double lastLatitude;
+    private double lastLongitude;
+
+    Subscription(
+        LocationUpdatedListener listener,
+        LocationParams params,
+        boolean singleUpdate,
+        Executor executor,
+        LocationFilter filter) {
+      this.listener = listener;
+      this.params = params;
+      this.singleUpdate = singleUpdate;
+      this.executor = executor;
+      this.filter = filter;
+    }
+
+    /**
+     * Hands the fix to the listener, on the executor if there is one, and records how long the
+     * listener took.
+     */
+    void deliver(final Location location, final ProviderMetrics metrics) {
+      if (executor == null) {
+        listen(location, metrics);
+        return;
+      }
+      executor.execute(
+          new Runnable() {
+            @Override
+            public void run() {
+              listen(location, metrics);
+            }
+          });
+    }
+
+    private void listen(Location location, ProviderMetrics metrics) {
+      long start = System.nanoTime();
+      listener.onLocationUpdated(location);
+      metrics.listened((System.nanoTime() - start) / 1000);
+    }
+
+    void delivered(Location location) {
+      hasDelivered = true;
+      lastTime = location.getTime();
+      lastLatitude = location.getLatitude();
+      lastLongitude = location.getLongitude();
+    }
+  }
+}
@@ -0,0 +1,43 @@
+/*
+ * Copyright 2017, Peter Vincent
+ * Licensed under the Apache License, Version 2.0, Android Promise.
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package promise.location;
+
+import android.location.Location;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+/**
+ * A processing stage between the provider and a {@link LocationUpdatedListener}, set with {@link
+ * PromiseLocation.LocationControl#filter(LocationFilter)}. It sees every fix the provider delivers,
+ * before the listener's own interval and distance are applied. <br>
+ * <br>
+ * The fix passed in is shared with other listeners and must not be changed, return a copy instead.
+ * A filter shared by several listeners is called once per listener with the same fix and should
+ * return the same result each time.
+ */
+public interface LocationFilter {
+
+  /**
+   * @return the fix to deliver, or null to drop it
+   */
+  @Nullable
+  Location filter(@NonNull Location location);
+
+  /**
+   * Forgets everything learned from previous fixes.
+   */
+  void reset();
+}
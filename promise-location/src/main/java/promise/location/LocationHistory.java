@@ -0,0 +1,232 @@
+/*
+ * Copyright 2017, Peter Vincent
+ * Licensed under the Apache License, Version 2.0, Android Promise.
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package promise.location;
+
+import android.location.Location;
+
+/**
+ * A fixed-capacity ring buffer of recent fixes. Latitude, longitude, time, accuracy and speed are
+ * kept in parallel primitive arrays, so memory stays bounded however long a tracking session runs
+ * and no {@link Location} objects are retained. Once full, the oldest fix is overwritten. <br>
+ * <br>
+ * Iterate with a {@link Cursor}, which can be reused between passes so walking the history does
+ * not allocate:
+ *
+ * <pre>
+ * LocationHistory.Cursor cursor = history.cursor();
+ * while (cursor.moveToNext()) {
+ *   draw(cursor.getLatitude(), cursor.getLongitude());
+ * }
+ * </pre>
+ * <p>
+ * Writes are synchronized. A cursor reads the arrays live; fixes overwritten while it walks are
+ * skipped. Take a {@link #snapshot(long, long)} to hand a stable copy to another thread. A history
+ * is {@link #resize(int) resized} in place, so references and cursors held elsewhere stay valid.
+ */
+public class LocationHistory {
+
+  public static final int DEFAULT_CAPACITY = 3600;
+
+  private volatile Ring ring;
+  private volatile long written;
+  // fixes before this position were dropped by shrinking
+  private volatile long first;
+
+  public LocationHistory() {
+    this(DEFAULT_CAPACITY);
+  }
+
+  public LocationHistory(int capacity) {
+    ring = new Ring(capacity);
+  }
+
+  public void add(Location location) {
+    add(
+        location.getLatitude(),
+        location.getLongitude(),
+        location.getTime(),
+        location.getAccuracy(),
+        location.getSpeed());
+  }
+
+  public synchronized void add(
+      double latitude, double longitude, long time, float accuracy, float speed) {
+    Ring ring = this.ring;
+    int index = (int) (written % ring.capacity);
+    ring.latitudes[index] = latitude;
+    ring.longitudes[index] = longitude;
+    ring.times[index] = time;
+    ring.accuracies[index] = accuracy;
+    ring.speeds[index] = speed;
+    written++;
+  }
+
+  public int capacity() {
+    return ring.capacity;
+  }
+
+  public int size() {
+    return (int) (written - oldest());
+  }
+
+  public synchronized void clear() {
+    written = 0;
+    first = 0;
+  }
+
+  /**
+   * @return a cursor positioned before the oldest fix
+   */
+  public Cursor cursor() {
+    return new Cursor(this);
+  }
+
+  /**
+   * Copies every fix with a time in <code>[from, to]</code> into a new history sized to fit them.
+   */
+  public synchronized LocationHistory snapshot(long from, long to) {
+    Ring ring = this.ring;
+    long start = written - size();
+    int count = 0;
+    for (long position = start; position < written; position++) {
+      long time = ring.times[(int) (position % ring.capacity)];
+      if (time >= from && time <= to) count++;
+    }
+    LocationHistory snapshot = new LocationHistory(Math.max(count, 1));
+    for (long position = start; position < written; position++) {
+      int index = (int) (position % ring.capacity);
+      if (ring.times[index] >= from && ring.times[index] <= to)
+        snapshot.add(
+            ring.latitudes[index],
+            ring.longitudes[index],
+            ring.times[index],
+            ring.accuracies[index],
+            ring.speeds[index]);
+    }
+    return snapshot;
+  }
+
+  /**
+   * Changes the capacity of this history in place, keeping the most recent fixes that fit. Cursors
+   * of this history stay valid and walk the kept fixes.
+   *
+   * @return this history
+   */
+  public synchronized LocationHistory resize(int capacity) {
+    Ring ring = this.ring;
+    if (capacity == ring.capacity) return this;
+    Ring resized = new Ring(capacity);
+    // fixes keep their positions, so a cursor walking them carries on where it was
+    long start = written - Math.min(size(), capacity);
+    for (long position = start; position < written; position++)
+      resized.copy(ring, (int) (position % ring.capacity), (int) (position % capacity));
+    first = start;
+    this.ring = resized;
+    return this;
+  }
+
+  private long oldest() {
+    return Math.max(first, written - ring.capacity);
+  }
+
+  /**
+   * A reusable, allocation free iterator over a {@link LocationHistory}, from oldest to newest.
+   */
+  public static class Cursor {
+
+    private final LocationHistory history;
+    private Ring ring;
+    private long position;
+    private long end;
+    private int index;
+
+    Cursor(LocationHistory history) {
+      this.history = history;
+      reset();
+    }
+
+    /**
+     * Moves the cursor back before the oldest fix and extends it to the newest one.
+     */
+    public Cursor reset() {
+      ring = history.ring;
+      end = history.written;
+      position = history.oldest() - 1;
+      return this;
+    }
+
+    public boolean moveToNext() {
+      position++;
+      // the history may have been resized since the last move
+      ring = history.ring;
+      long oldest = history.oldest();
+      // fixes overwritten or dropped since the cursor was reset are skipped
+      if (position < oldest) position = oldest;
+      if (position >= end) return false;
+      index = (int) (position % ring.capacity);
+      return true;
+    }
+
+    public double getLatitude() {
+      return ring.latitudes[index];
+    }
+
+    public double getLongitude() {
+      return ring.longitudes[index];
+    }
+
+    public long getTime() {
+      return ring.times[index];
+    }
+
+    public float getAccuracy() {
+      return ring.accuracies[index];
+    }
+
+    public float getSpeed() {
+      return ring.speeds[index];
+    }
+  }
+
+  /**
+   * The parallel arrays of one capacity, swapped as a whole on a resize.
+   */
+  private static class Ring {
+
+    final double[] latitudes;
+    final double[] longitudes;
+    final long[] times;
+    final float[] accuracies;
+    final float[] speeds;
+    final int capacity;
+
+    Ring(int capacity) {
+      if (capacity <= 0) throw new IllegalArgumentException("capacity must be positive");
+      this.capacity = capacity;
+      latitudes = new double[capacity];
+      longitudes = new double[capacity];
+      times = new long[capacity];
+      accuracies = new float[capacity];
+      speeds = new float[capacity];
+    }
+
+    void copy(Ring from, int fromIndex, int toIndex) {
+      latitudes[toIndex] = from.latitudes[fromIndex];
+      longitudes[toIndex] = from.longitudes[fromIndex];
+      times[toIndex] = from.times[fromIndex];
+      accuracies[toIndex] = from.accuracies[fromIndex];
+      speeds[toIndex] = from.speeds[fromIndex];
+    }
+  }
+}
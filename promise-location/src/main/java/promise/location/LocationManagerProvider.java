@@ -23,16 +23,36 @@ import android.location.LocationManager;
 import android.os.Bundle;
 import android.os.Looper;
 
+import androidx.annotation.Nullable;
 import androidx.core.app.ActivityCompat;
 
-public class LocationManagerProvider implements LocationProvider, LocationListener {
-  private static final String LOCATION_MANAGER_PROVIDER_ID = "LMP_ID";
+import promise.location.geo.GeoMath;
+
+/**
+ * A {@link LocationProvider} on top of the platform {@link LocationManager}. <br>
+ * <br>
+ * {@link LocationAccuracy#LOWEST} runs in passive mode: the provider subscribes to {@link
+ * LocationManager#PASSIVE_PROVIDER} and so only sees the fixes the device already gets for other
+ * apps, from every provider including the fused one, at no extra power cost. Those arrive at
+ * whatever rate the other apps asked for, so the interval and distance of the params are applied
+ * here before a fix reaches the listener and the store.
+ */
+public class LocationManagerProvider implements LooperLocationProvider, LocationListener {
+  /**
+   * Id this provider keeps its last fix under in the {@link LocationStore}.
+   */
+  static final String LOCATION_MANAGER_PROVIDER_ID = "LMP_ID";
 
   private LocationManager locationManager;
   private LocationUpdatedListener listener;
   private LocationStore locationStore;
   private Logger logger;
   private Context mContext;
+  private Looper looper;
+  private LocationParams passive;
+  private Location lastPassive;
+  private boolean requested;
+  private final ProviderMetrics metrics = LocationMetrics.get().of(getClass());
 
   @Override
   public void init(Context context, Logger logger) {
@@ -40,7 +60,16 @@ public class LocationManagerProvider implements LocationProvider, LocationListen
 
     this.logger = logger;
     mContext = context;
-    locationStore = new LocationStore();
+    // init runs again for every control on the context, keep the store and its pending fixes
+    if (locationStore == null) {
+      locationStore = new LocationStore(LocationStore.DEFAULT_FLUSH_INTERVAL);
+      locationStore.flushOnBackground(context);
+    }
+  }
+
+  @Override
+  public void setLooper(Looper looper) {
+    this.looper = looper;
   }
 
   @Override
@@ -51,7 +80,13 @@ public class LocationManagerProvider implements LocationProvider, LocationListen
       logger.d("Listener is null, you sure about this?");
     }
 
+    LocationTrace.record(LocationTrace.START, LocationTrace.LOCATION_MANAGER);
     Criteria criteria = getProvider(params);
+    // a mode switch would otherwise leave the previous registration running
+    if (requested) locationManager.removeUpdates(this);
+    else metrics.started(false);
+    passive = params.getAccuracy() == LocationAccuracy.LOWEST ? params : null;
+    lastPassive = null;
 
     if (singleUpdate) {
       if (ActivityCompat.checkSelfPermission(mContext, Manifest.permission.ACCESS_FINE_LOCATION)
@@ -68,15 +103,24 @@ public class LocationManagerProvider implements LocationProvider, LocationListen
 
         return;
       }
-      locationManager.requestSingleUpdate(criteria, this, Looper.getMainLooper());
+      if (passive != null)
+        locationManager.requestSingleUpdate(LocationManager.PASSIVE_PROVIDER, this, looper());
+      else locationManager.requestSingleUpdate(criteria, this, looper());
+    } else if (passive != null) {
+      // take everything, the params are applied in onLocationChanged
+      locationManager.requestLocationUpdates(
+          LocationManager.PASSIVE_PROVIDER, 0, 0, this, looper());
     } else {
       locationManager.requestLocationUpdates(
-          params.getInterval(), params.getDistance(), criteria, this, Looper.getMainLooper());
+          params.getInterval(), params.getDistance(), criteria, this, looper());
     }
+    requested = true;
   }
 
   @Override
   public void stop() {
+    LocationTrace.record(LocationTrace.STOP, LocationTrace.LOCATION_MANAGER);
+    if (locationStore != null) locationStore.flush();
     if (ActivityCompat.checkSelfPermission(mContext, Manifest.permission.ACCESS_FINE_LOCATION)
         != PackageManager.PERMISSION_GRANTED
         && ActivityCompat.checkSelfPermission(mContext, Manifest.permission.ACCESS_COARSE_LOCATION)
@@ -91,6 +135,11 @@ public class LocationManagerProvider implements LocationProvider, LocationListen
       return;
     }
     locationManager.removeUpdates(this);
+    requested = false;
+  }
+
+  private Looper looper() {
+    return looper != null ? looper : Looper.getMainLooper();
   }
 
   @Override
@@ -156,16 +205,41 @@ public class LocationManagerProvider implements LocationProvider, LocationListen
 
   @Override
   public void onLocationChanged(Location location) {
+    if (passive != null) {
+      if (!acceptsPassive(lastPassive, location, passive)) return;
+      lastPassive = location;
+    }
     logger.d("onLocationChanged", location);
+    LocationTrace.fix(LocationTrace.LOCATION_MANAGER, location);
+    metrics.fix(location);
     if (listener != null) {
       listener.onLocationUpdated(location);
     }
     if (locationStore != null) {
       logger.d("Stored in SharedPreferences");
       locationStore.put(LOCATION_MANAGER_PROVIDER_ID, location);
+      LocationTrace.record(LocationTrace.STORE_WRITE, LocationTrace.LOCATION_MANAGER);
     }
   }
 
+  /**
+   * Applies the params to a passive fix. Several providers report the same moment, so fixes that
+   * are not newer than the last accepted one are dropped as well.
+   */
+  static boolean acceptsPassive(
+      @Nullable Location last, Location location, LocationParams params) {
+    if (last == null) return true;
+    long elapsed = location.getTime() - last.getTime();
+    if (elapsed <= 0 || elapsed < params.getInterval()) return false;
+    return params.getDistance() <= 0
+        || GeoMath.equirectangular(
+                last.getLatitude(),
+                last.getLongitude(),
+                location.getLatitude(),
+                location.getLongitude())
+            >= params.getDistance();
+  }
+
   @Override
   public void onStatusChanged(String provider, int status, Bundle extras) {
   }
@@ -0,0 +1,80 @@
+/*
+ * Copyright 2017, Peter Vincent
+ * Licensed under the Apache License, Version 2.0, Android Promise.
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package promise.location;
+
+import androidx.annotation.NonNull;
+import androidx.collection.ArrayMap;
+
+import java.util.Map;
+
+/**
+ * Process wide performance metrics of the location providers, one {@link ProviderMetrics} per
+ * provider class: time to connect, time to first fix, fix inter-arrival times, accuracies, listener
+ * execution times, the fallbacks of a {@link MultiFallBackLocationProvider} and the fixes dropped
+ * by a {@link LocationFilter}. <br>
+ * <br>
+ * The built in providers record into it as they run. Read it through {@link
+ * PromiseLocation#metrics()}, take a {@link #snapshot()} to ship with telemetry and {@link
+ * #reset()} it afterwards.
+ */
+public final class LocationMetrics {
+
+  private static final LocationMetrics INSTANCE = new LocationMetrics();
+
+  private final Map<String, ProviderMetrics> providers = new ArrayMap<>();
+
+  LocationMetrics() {
+  }
+
+  static LocationMetrics get() {
+    return INSTANCE;
+  }
+
+  /**
+   * @return the metrics of the provider class, created on first use
+   */
+  @NonNull
+  public ProviderMetrics of(@NonNull Class<?> provider) {
+    String name = provider.getName();
+    synchronized (providers) {
+      ProviderMetrics metrics = providers.get(name);
+      if (metrics == null) {
+        metrics = new ProviderMetrics(name);
+        providers.put(name, metrics);
+      }
+      return metrics;
+    }
+  }
+
+  /**
+   * @return a copy of the metrics of every provider that ran, keyed by the fully qualified name of
+   * the provider class
+   */
+  @NonNull
+  public Map<String, ProviderMetrics> snapshot() {
+    synchronized (providers) {
+      Map<String, ProviderMetrics> snapshot = new ArrayMap<>();
+      for (Map.Entry<String, ProviderMetrics> entry : providers.entrySet())
+        snapshot.put(entry.getKey(), entry.getValue().snapshot());
+      return snapshot;
+    }
+  }
+
+  public void reset() {
+    synchronized (providers) {
+      for (ProviderMetrics metrics : providers.values()) metrics.reset();
+    }
+  }
+}
@@ -21,6 +21,11 @@ public class LocationParams {
       new Builder().setAccuracy(LocationAccuracy.MEDIUM).setDistance(150).setInterval(2500).build();
   public static final LocationParams LAZY =
       new Builder().setAccuracy(LocationAccuracy.LOW).setDistance(500).setInterval(5000).build();
+  /**
+   * Only fixes some other app already paid for, at most one every 30 seconds or 50 meters.
+   */
+  public static final LocationParams PASSIVE =
+      new Builder().setAccuracy(LocationAccuracy.LOWEST).setDistance(50).setInterval(30000).build();
 
   private long interval;
   private float distance;
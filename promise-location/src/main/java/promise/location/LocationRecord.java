@@ -0,0 +1,167 @@
+/*
+ * Copyright 2017, Peter Vincent
+ * Licensed under the Apache License, Version 2.0, Android Promise.
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package promise.location;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Fixed-width binary layout of a single location fix, as written by {@link BinaryLocationStore}.
+ *
+ * <pre>
+ * offset  size  field
+ *      0     1  version, 0 when the record is empty
+ *      1     1  provider code
+ *      2     2  reserved
+ *      4     4  accuracy (float)
+ *      8     8  latitude (double)
+ *     16     8  longitude (double)
+ *     24     8  altitude (double)
+ *     32     8  time (long)
+ *     40     4  speed (float)
+ *     44     4  bearing (float)
+ * </pre>
+ * <p>
+ * All accessors use absolute positions so a buffer can be shared without touching its position.
+ */
+public final class LocationRecord {
+
+  public static final int SIZE = 48;
+
+  public static final byte VERSION = 1;
+
+  public static final byte PROVIDER_UNKNOWN = 0;
+  public static final byte PROVIDER_GPS = 1;
+  public static final byte PROVIDER_NETWORK = 2;
+  public static final byte PROVIDER_PASSIVE = 3;
+  public static final byte PROVIDER_FUSED = 4;
+
+  private static final int VERSION_OFFSET = 0;
+  private static final int PROVIDER_OFFSET = 1;
+  private static final int ACCURACY_OFFSET = 4;
+  private static final int LATITUDE_OFFSET = 8;
+  private static final int LONGITUDE_OFFSET = 16;
+  private static final int ALTITUDE_OFFSET = 24;
+  private static final int TIME_OFFSET = 32;
+  private static final int SPEED_OFFSET = 40;
+  private static final int BEARING_OFFSET = 44;
+
+  private LocationRecord() {
+  }
+
+  /**
+   * Writes a record at the given offset. The version byte is written last so a reader never sees a
+   * half written record as valid.
+   */
+  public static void write(
+      ByteBuffer buffer,
+      int offset,
+      byte provider,
+      double latitude,
+      double longitude,
+      double altitude,
+      float accuracy,
+      float speed,
+      float bearing,
+      long time) {
+    buffer.put(offset + VERSION_OFFSET, (byte) 0);
+    buffer.put(offset + PROVIDER_OFFSET, provider);
+    buffer.putFloat(offset + ACCURACY_OFFSET, accuracy);
+    buffer.putDouble(offset + LATITUDE_OFFSET, latitude);
+    buffer.putDouble(offset + LONGITUDE_OFFSET, longitude);
+    buffer.putDouble(offset + ALTITUDE_OFFSET, altitude);
+    buffer.putLong(offset + TIME_OFFSET, time);
+    buffer.putFloat(offset + SPEED_OFFSET, speed);
+    buffer.putFloat(offset + BEARING_OFFSET, bearing);
+    buffer.put(offset + VERSION_OFFSET, VERSION);
+  }
+
+  public static void clear(ByteBuffer buffer, int offset) {
+    buffer.put(offset + VERSION_OFFSET, (byte) 0);
+  }
+
+  public static boolean isValid(ByteBuffer buffer, int offset) {
+    return buffer.get(offset + VERSION_OFFSET) == VERSION;
+  }
+
+  public static byte provider(ByteBuffer buffer, int offset) {
+    return buffer.get(offset + PROVIDER_OFFSET);
+  }
+
+  public static float accuracy(ByteBuffer buffer, int offset) {
+    return buffer.getFloat(offset + ACCURACY_OFFSET);
+  }
+
+  public static double latitude(ByteBuffer buffer, int offset) {
+    return buffer.getDouble(offset + LATITUDE_OFFSET);
+  }
+
+  public static double longitude(ByteBuffer buffer, int offset) {
+    return buffer.getDouble(offset + LONGITUDE_OFFSET);
+  }
+
+  public static double altitude(ByteBuffer buffer, int offset) {
+    return buffer.getDouble(offset + ALTITUDE_OFFSET);
+  }
+
+  public static long time(ByteBuffer buffer, int offset) {
+    return buffer.getLong(offset + TIME_OFFSET);
+  }
+
+  public static float speed(ByteBuffer buffer, int offset) {
+    return buffer.getFloat(offset + SPEED_OFFSET);
+  }
+
+  public static float bearing(ByteBuffer buffer, int offset) {
+    return buffer.getFloat(offset + BEARING_OFFSET);
+  }
+
+  /**
+   * Maps an Android provider name to its one byte code.
+   */
+  public static byte providerCode(String provider) {
+    if (provider == null) return PROVIDER_UNKNOWN;
+    switch (provider) {
+      case "gps":
+        return PROVIDER_GPS;
+      case "network":
+        return PROVIDER_NETWORK;
+      case "passive":
+        return PROVIDER_PASSIVE;
+      case "fused":
+        return PROVIDER_FUSED;
+      default:
+        return PROVIDER_UNKNOWN;
+    }
+  }
+
+  /**
+   * Maps a provider code back to its Android provider name.
+   *
+   * @param unknown name returned for {@link #PROVIDER_UNKNOWN}
+   */
+  public static String providerName(byte code, String unknown) {
+    switch (code) {
+      case PROVIDER_GPS:
+        return "gps";
+      case PROVIDER_NETWORK:
+        return "network";
+      case PROVIDER_PASSIVE:
+        return "passive";
+      case PROVIDER_FUSED:
+        return "fused";
+      default:
+        return unknown;
+    }
+  }
+}
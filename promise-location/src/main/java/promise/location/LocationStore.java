@@ -13,15 +13,40 @@
 
 package promise.location;
 
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.content.res.Configuration;
 import android.location.Location;
 
 import androidx.annotation.VisibleForTesting;
 import androidx.collection.ArrayMap;
+import androidx.collection.ArraySet;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
 
 import promise.commons.pref.Preferences;
 
+/**
+ * Persists the last fix of each provider to SharedPreferences. <br>
+ * <br>
+ * A store built with a flush interval runs in write-behind mode: {@link #put(String, Location)}
+ * only keeps the latest fix in memory and the preferences are written at most once per interval,
+ * when {@link #flush()} is called or when the process goes to the background (see {@link
+ * #flushOnBackground(Context)}). {@link #get(String)} is served from memory when a fix is pending,
+ * and returns null for an id that was never stored.
+ */
 public class LocationStore implements Store<Location> {
 
+  /**
+   * Flush interval used by the built in providers.
+   */
+  public static final long DEFAULT_FLUSH_INTERVAL = 5000;
+
   private static final String PROVIDER = "LocationStore";
 
   private static final String PREFERENCES_FILE = "promise_location";
@@ -35,10 +60,49 @@ public class LocationStore implements Store<Location> {
   private static final String TIME_ID = "tm";
   private static final String BEARING_ID = "bearing";
 
+  // write-behind stores still in use, so a reader can flush what they hold
+  private static final Map<LocationStore, Boolean> WRITE_BEHIND = new WeakHashMap<>();
+
+  private final long flushInterval;
+  private final Map<String, Location> latest = new ArrayMap<>();
+  private final Set<String> dirty = new ArraySet<>();
   private Preferences preferences;
+  private Clock clock = Clock.SYSTEM;
+  private long lastFlush;
+  private boolean flushesOnBackground;
 
+  /**
+   * Creates a write-through store, every put is saved immediately.
+   */
   public LocationStore() {
+    this(0);
+  }
+
+  /**
+   * Creates a store that writes behind.
+   *
+   * @param flushInterval minimum time in milliseconds between two writes to the preferences, 0 or
+   *                      less to write through
+   */
+  public LocationStore(long flushInterval) {
+    this.flushInterval = flushInterval;
     preferences = new Preferences(PREFERENCES_FILE);
+    if (flushInterval > 0)
+      synchronized (WRITE_BEHIND) {
+        WRITE_BEHIND.put(this, Boolean.TRUE);
+      }
+  }
+
+  /**
+   * Flushes every write-behind store still in use, such as those of the built in providers, so a
+   * read through another store sees the fixes they hold.
+   */
+  public static void flushAll() {
+    List<LocationStore> stores;
+    synchronized (WRITE_BEHIND) {
+      stores = new ArrayList<>(WRITE_BEHIND.keySet());
+    }
+    for (LocationStore store : stores) store.flush();
   }
 
   @VisibleForTesting
@@ -46,10 +110,58 @@ public class LocationStore implements Store<Location> {
     this.preferences = preferences;
   }
 
+  @VisibleForTesting
+  void setClock(Clock clock) {
+    this.clock = clock;
+  }
+
+  /**
+   * Flushes pending fixes when the app's UI is hidden or the system is low on memory, so a
+   * write-behind store does not lose its last fix when the process is killed in the background.
+   * Registers once, later calls do nothing.
+   */
+  public void flushOnBackground(Context context) {
+    if (flushInterval <= 0) return;
+    synchronized (this) {
+      if (flushesOnBackground) return;
+      flushesOnBackground = true;
+    }
+    context.getApplicationContext().registerComponentCallbacks(new BackgroundFlusher(this));
+  }
+
   @Override
-  public void put(final String id, final Location location) {
+  public void put(String id, Location location) {
+    if (flushInterval <= 0) {
+      write(id, location);
+      return;
+    }
+    boolean due;
+    synchronized (this) {
+      // a copy, the provider may recycle its fix before the flush writes it
+      latest.put(id, new Location(location));
+      dirty.add(id);
+      due = clock.elapsedRealtime() - lastFlush >= flushInterval;
+    }
+    if (due) flush();
+  }
+
+  /**
+   * Writes every pending fix to the preferences.
+   */
+  public void flush() {
+    synchronized (this) {
+      lastFlush = clock.elapsedRealtime();
+      if (dirty.isEmpty()) return;
+      for (String id : dirty) write(id, latest.get(id));
+      dirty.clear();
+    }
+  }
+
+  private void write(final String id, final Location location) {
     preferences.save(new ArrayMap<String, Object>() {{
-      put(getFieldKey(id, PROVIDER_ID), location.getProvider());
+      put(getFieldKey(id, PROVIDER_ID),
+          location.getProvider() == null || location.getProvider().isEmpty()
+              ? PROVIDER : location.getProvider());
       put(getFieldKey(id, LATITUDE_ID), Double.doubleToLongBits(location.getLatitude()));
       put(getFieldKey(id, LONGITUDE_ID), Double.doubleToLongBits(location.getLongitude()));
       put(getFieldKey(id, ACCURACY_ID), location.getAccuracy());
@@ -62,8 +174,15 @@ public class LocationStore implements Store<Location> {
 
   @Override
   public Location get(String id) {
+    synchronized (this) {
+      Location cached = latest.get(id);
+      if (cached != null) return new Location(cached);
+    }
     if (preferences != null) {
-      Location location = new Location(!preferences.getString(PROVIDER_ID).equals(PROVIDER) ? PROVIDER : preferences.getString(PROVIDER_ID));
+      // every write saves the provider, an id without one was never stored
+      String provider = preferences.getString(getFieldKey(id, PROVIDER_ID));
+      if (provider == null || provider.isEmpty()) return null;
+      Location location = new Location(PROVIDER);
       location.setLatitude(
           Double.longBitsToDouble(preferences.getLong(getFieldKey(id, LATITUDE_ID))));
       location.setLongitude(
@@ -82,6 +201,10 @@ public class LocationStore implements Store<Location> {
 
   @Override
   public void remove(String id) {
+    synchronized (this) {
+      latest.remove(id);
+      dirty.remove(id);
+    }
     preferences.clear(getFieldKey(id, PROVIDER_ID));
     preferences.clear(getFieldKey(id, LATITUDE_ID));
     preferences.clear(getFieldKey(id, LONGITUDE_ID));
@@ -95,4 +218,30 @@ public class LocationStore implements Store<Location> {
   private String getFieldKey(String id, String field) {
     return PREFIX_ID + "_" + id + "_" + field;
   }
+
+  private static class BackgroundFlusher implements ComponentCallbacks2 {
+
+    private final WeakReference<LocationStore> store;
+
+    BackgroundFlusher(LocationStore store) {
+      this.store = new WeakReference<>(store);
+    }
+
+    @Override
+    public void onTrimMemory(int level) {
+      if (level < TRIM_MEMORY_UI_HIDDEN) return;
+      LocationStore locationStore = store.get();
+      if (locationStore != null) locationStore.flush();
+    }
+
+    @Override
+    public void onConfigurationChanged(Configuration newConfig) {
+    }
+
+    @Override
+    public void onLowMemory() {
+      LocationStore locationStore = store.get();
+      if (locationStore != null) locationStore.flush();
+    }
+  }
 }
@@ -0,0 +1,315 @@
+/*
+ * Copyright 2017, Peter Vincent
+ * Licensed under the Apache License, Version 2.0, Android Promise.
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package promise.location;
+
+import android.location.Location;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.VisibleForTesting;
+
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Process wide recorder of what the providers did, kept in memory as fixed size binary events so it
+ * can stay on in production: connects, suspensions and failures, fallbacks, starts and stops,
+ * fixes, store writes and received broadcasts. <br>
+ * <br>
+ * Events go into a lock-free ring of {@link #DEFAULT_CAPACITY} slots that overwrites the oldest
+ * ones, a write is a counter increment and five stores. Read them back with {@link #events()},
+ * write them out with {@link #dump(File)}, or ask for a dump when the process crashes with {@link
+ * #dumpOnCrash(File)}. A dump is read back with {@link #read(InputStream)}.
+ */
+public final class LocationTrace {
+
+  public static final int CONNECTED = 1;
+  public static final int SUSPENDED = 2;
+  public static final int CONNECT_FAILED = 3;
+  public static final int FALLBACK = 4;
+  public static final int START = 5;
+  public static final int STOP = 6;
+  /**
+   * A fix, the argument holds the accuracy in centimeters, the first value the latitude and
+   * longitude in 1e-7 degrees packed into the high and low halves and the second the fix time.
+   */
+  public static final int FIX = 7;
+  public static final int STORE_WRITE = 8;
+  public static final int BROADCAST = 9;
+  public static final int CRASH = 10;
+
+  public static final int GMS_LOCATION = 1;
+  public static final int LOCATION_MANAGER = 2;
+  public static final int MULTI_FALLBACK = 3;
+  public static final int GMS_WITH_FALLBACK = 4;
+  public static final int ACTIVITY = 5;
+  public static final int GEOFENCE = 6;
+
+  static final int DEFAULT_CAPACITY = 1024;
+  static final int MAGIC = 0x504c5452;
+  static final int VERSION = 1;
+
+  // sequence, time, header, first, second
+  private static final int SLOT = 5;
+  private static final LocationTrace INSTANCE = new LocationTrace(DEFAULT_CAPACITY);
+
+  private final int capacity;
+  private final int mask;
+  private final AtomicLongArray slots;
+  private final AtomicLong cursor = new AtomicLong();
+  private volatile boolean enabled = true;
+  private volatile File crashFile;
+
+  /**
+   * @param capacity the number of events kept, rounded up to a power of two
+   */
+  @VisibleForTesting
+  LocationTrace(int capacity) {
+    int size = Integer.highestOneBit(Math.max(capacity, 2) - 1) << 1;
+    this.capacity = size;
+    mask = size - 1;
+    slots = new AtomicLongArray(size * SLOT);
+    for (int i = 0; i < size; i++) slots.set(i * SLOT, -1);
+  }
+
+  static LocationTrace get() {
+    return INSTANCE;
+  }
+
+  /**
+   * Records an event without values into the process wide trace.
+   */
+  public static void record(int event, int source) {
+    INSTANCE.write(event, source, 0, 0, 0);
+  }
+
+  /**
+   * Records an event into the process wide trace. What the argument and values mean depends on the
+   * event.
+   */
+  public static void record(int event, int source, int arg, long first, long second) {
+    INSTANCE.write(event, source, arg, first, second);
+  }
+
+  static void fix(int source, Location location) {
+    INSTANCE.write(
+        FIX,
+        source,
+        (int) (location.getAccuracy() * 100),
+        ((long) (location.getLatitude() * 1e7) << 32)
+            | ((long) (location.getLongitude() * 1e7) & 0xffffffffL),
+        location.getTime());
+  }
+
+  void write(int event, int source, int arg, long first, long second) {
+    if (!enabled) return;
+    long index = cursor.getAndIncrement();
+    int base = (int) (index & mask) * SLOT;
+    // readers skip the slot until its sequence is published again
+    slots.set(base, -1);
+    slots.lazySet(base + 1, System.nanoTime());
+    slots.lazySet(
+        base + 2,
+        ((long) (event & 0xffff) << 48) | ((long) (source & 0xffff) << 32) | (arg & 0xffffffffL));
+    slots.lazySet(base + 3, first);
+    slots.lazySet(base + 4, second);
+    slots.lazySet(base, index);
+  }
+
+  public void setEnabled(boolean enabled) {
+    this.enabled = enabled;
+  }
+
+  public boolean isEnabled() {
+    return enabled;
+  }
+
+  public int capacity() {
+    return capacity;
+  }
+
+  /**
+   * @return the recorded events, oldest first. Events being written or overwritten while reading
+   * are left out.
+   */
+  @NonNull
+  public List<Event> events() {
+    long end = cursor.get();
+    long start = Math.max(0, end - capacity);
+    List<Event> events = new ArrayList<>((int) (end - start));
+    for (long index = start; index < end; index++) {
+      int base = (int) (index & mask) * SLOT;
+      if (slots.get(base) != index) continue;
+      long time = slots.get(base + 1);
+      long header = slots.get(base + 2);
+      long first = slots.get(base + 3);
+      long second = slots.get(base + 4);
+      if (slots.get(base) != index) continue;
+      events.add(new Event(time, header, first, second));
+    }
+    return events;
+  }
+
+  /**
+   * Writes the recorded events to the stream, a header followed by 32 bytes per event. The stream
+   * is not closed.
+   */
+  public void dump(@NonNull OutputStream stream) throws IOException {
+    List<Event> events = events();
+    DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream));
+    out.writeInt(MAGIC);
+    out.writeInt(VERSION);
+    // pairs the monotonic event times with the wall clock
+    out.writeLong(System.currentTimeMillis());
+    out.writeLong(System.nanoTime());
+    out.writeInt(events.size());
+    for (Event event : events) {
+      out.writeLong(event.time);
+      out.writeShort(event.event);
+      out.writeShort(event.source);
+      out.writeInt(event.arg);
+      out.writeLong(event.first);
+      out.writeLong(event.second);
+    }
+    out.flush();
+  }
+
+  public void dump(@NonNull File file) throws IOException {
+    OutputStream out = new FileOutputStream(file);
+    try {
+      dump(out);
+    } finally {
+      out.close();
+    }
+  }
+
+  /**
+   * Dumps the trace to the file when a thread dies of an uncaught exception, before handing the
+   * exception to the handler that was installed before. Calling it again only changes the file.
+   */
+  public synchronized void dumpOnCrash(@NonNull File file) {
+    boolean installed = crashFile != null;
+    crashFile = file;
+    if (installed) return;
+    final Thread.UncaughtExceptionHandler previous = Thread.getDefaultUncaughtExceptionHandler();
+    Thread.setDefaultUncaughtExceptionHandler(
+        new Thread.UncaughtExceptionHandler() {
+          @Override
+          public void uncaughtException(Thread thread, Throwable throwable) {
+            write(CRASH, 0, 0, thread.getId(), 0);
+            try {
+              dump(crashFile);
+            } catch (IOException ignored) {
+              // nothing left to report it to
+            }
+            if (previous != null) previous.uncaughtException(thread, throwable);
+            else throwable.printStackTrace();
+          }
+        });
+  }
+
+  /**
+   * Reads the events of a {@link #dump(OutputStream)}.
+   *
+   * @throws IOException if the stream does not hold a trace
+   */
+  @NonNull
+  public static List<Event> read(@NonNull InputStream stream) throws IOException {
+    DataInputStream in = new DataInputStream(stream);
+    if (in.readInt() != MAGIC) throw new IOException("Not a location trace");
+    int version = in.readInt();
+    if (version != VERSION) throw new IOException("Unsupported trace version " + version);
+    in.readLong();
+    in.readLong();
+    int count = in.readInt();
+    if (count < 0) throw new EOFException();
+    List<Event> events = new ArrayList<>(count);
+    for (int i = 0; i < count; i++) {
+      long time = in.readLong();
+      long header = ((long) in.readUnsignedShort() << 48)
+          | ((long) in.readUnsignedShort() << 32)
+          | (in.readInt() & 0xffffffffL);
+      events.add(new Event(time, header, in.readLong(), in.readLong()));
+    }
+    return events;
+  }
+
+  /**
+   * One recorded event. The time is {@link System#nanoTime()} at the moment it was recorded.
+   */
+  public static final class Event {
+    private final long time;
+    private final int event;
+    private final int source;
+    private final int arg;
+    private final long first;
+    private final long second;
+
+    Event(long time, long header, long first, long second) {
+      this.time = time;
+      event = (int) (header >>> 48);
+      source = (int) (header >>> 32) & 0xffff;
+      arg = (int) header;
+      this.first = first;
+      this.second = second;
+    }
+
+    public long getTime() {
+      return time;
+    }
+
+    public int getEvent() {
+      return event;
+    }
+
+    public int getSource() {
+      return source;
+    }
+
+    public int getArg() {
+      return arg;
+    }
+
+    public long getFirst() {
+      return first;
+    }
+
+    public long getSecond() {
+      return second;
+    }
+
+    @Override
+    public String toString() {
+      return "Event{"
+          + "time=" + time
+          + ", event=" + event
+          + ", source=" + source
+          + ", arg=" + arg
+          + ", first=" + first
+          + ", second=" + second
+          + '}';
+    }
+  }
+}
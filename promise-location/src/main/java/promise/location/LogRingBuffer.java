@@ -0,0 +1,146 @@
+/*
+ * Copyright 2017, Peter Vincent
+ * Licensed under the Apache License, Version 2.0, Android Promise.
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package promise.location;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
+
+/**
+ * A {@link LevelLogger.Sink} that hands messages to a background thread through a bounded ring of
+ * preallocated slots, so the calling thread neither formats nor writes. <br>
+ * <br>
+ * Writing a message only fills a slot with references. When the ring is full new messages are
+ * dropped rather than blocking the caller, and the number dropped is reported with the next
+ * message that gets through. Arguments are formatted on the writer thread, so they should not be
+ * mutated after the call.
+ */
+final class LogRingBuffer implements LevelLogger.Sink, Runnable {
+
+  static final int DEFAULT_CAPACITY = 256;
+
+  private final LevelLogger.Sink target;
+  private final int[] levels;
+  private final String[] tags;
+  private final Throwable[] throwables;
+  private final String[] messages;
+  private final Object[][] arguments;
+  private long head;
+  private long tail;
+  private long dropped;
+  private boolean waiting;
+  private final boolean manual;
+  private Thread writer;
+
+  LogRingBuffer(int capacity, @NonNull LevelLogger.Sink target) {
+    this(capacity, target, false);
+  }
+
+  /**
+   * @param manual true to never start the writer thread, messages are then only written by {@link
+   *               #drain()}
+   */
+  @VisibleForTesting
+  LogRingBuffer(int capacity, @NonNull LevelLogger.Sink target, boolean manual) {
+    this.target = target;
+    this.manual = manual;
+    levels = new int[capacity];
+    tags = new String[capacity];
+    throwables = new Throwable[capacity];
+    messages = new String[capacity];
+    arguments = new Object[capacity][];
+  }
+
+  @Override
+  public void write(int level, String tag, @Nullable Throwable t, String message, Object[] args) {
+    synchronized (this) {
+      if (tail - head == levels.length) {
+        dropped++;
+        return;
+      }
+      int slot = (int) (tail % levels.length);
+      levels[slot] = level;
+      tags[slot] = tag;
+      throwables[slot] = t;
+      messages[slot] = message;
+      arguments[slot] = args;
+      tail++;
+      if (writer == null && !manual) start();
+      else if (waiting) notify();
+    }
+  }
+
+  /**
+   * Writes every queued message on the calling thread.
+   */
+  @VisibleForTesting
+  void drain() {
+    while (writeNext(false)) {
+    }
+  }
+
+  synchronized long getDropped() {
+    return dropped;
+  }
+
+  @Override
+  public void run() {
+    while (true) writeNext(true);
+  }
+
+  private boolean writeNext(boolean block) {
+    int level;
+    String tag;
+    Throwable t;
+    String message;
+    Object[] args;
+    long lost;
+    synchronized (this) {
+      while (head == tail) {
+        if (!block) return false;
+        waiting = true;
+        try {
+          wait();
+        } catch (InterruptedException e) {
+          // the writer lives as long as the process
+        }
+        waiting = false;
+      }
+      int slot = (int) (head % levels.length);
+      level = levels[slot];
+      tag = tags[slot];
+      t = throwables[slot];
+      message = messages[slot];
+      args = arguments[slot];
+      // let the slot's references go
+      tags[slot] = null;
+      throwables[slot] = null;
+      messages[slot] = null;
+      arguments[slot] = null;
+      head++;
+      lost = dropped;
+      dropped = 0;
+    }
+    if (lost > 0) target.write(level, tag, null, "dropped %d messages", new Object[] {lost});
+    target.write(level, tag, t, message, args);
+    return true;
+  }
+
+  private void start() {
+    writer = new Thread(this, "PromiseLocation-log");
+    writer.setDaemon(true);
+    writer.start();
+  }
+}
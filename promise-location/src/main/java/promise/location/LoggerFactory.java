@@ -21,6 +21,26 @@ class LoggerFactory {
     return loggingEnabled ? new Blabber() : new Sssht();
   }
 
+  /**
+   * Builds a {@link LevelLogger} writing messages of at least the given {@link android.util.Log}
+   * priority, on a background thread when asynchronous.
+   */
+  static Logger buildLogger(int minLevel, boolean async) {
+    LevelLogger.Sink sink =
+        async
+            ? new LogRingBuffer(LogRingBuffer.DEFAULT_CAPACITY, LevelLogger.LOGCAT)
+            : LevelLogger.LOGCAT;
+    return new LevelLogger(minLevel, sink);
+  }
+
+  /**
+   * @return the logger to hand to an instance of the class, tagged with its name if the logger
+   *     supports tags
+   */
+  static Logger forClass(Logger logger, Class<?> type) {
+    return logger instanceof LevelLogger ? ((LevelLogger) logger).forClass(type) : logger;
+  }
+
   private static class Sssht implements Logger {
 
     @Override
@@ -0,0 +1,35 @@
+/*
+ * Copyright 2017, Peter Vincent
+ * Licensed under the Apache License, Version 2.0, Android Promise.
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package promise.location;
+
+import android.os.Looper;
+
+import androidx.annotation.Nullable;
+
+/**
+ * An extension of the {@link LocationProvider} interface for location providers that can report on
+ * a {@link Looper} other than the main one. Fix processing, persistence in the {@link LocationStore}
+ * and the {@link LocationUpdatedListener} call then all run on that looper's thread.
+ */
+public interface LooperLocationProvider extends LocationProvider {
+
+  /**
+   * Sets the looper location callbacks are delivered on.
+   *
+   * @param looper the looper to report on, or <code>null</code> for the main looper. Takes effect
+   *               on the next call to {@link #start}.
+   */
+  void setLooper(@Nullable Looper looper);
+}
@@ -15,10 +15,14 @@ package promise.location;
 
 import android.content.Context;
 import android.location.Location;
+import android.os.Handler;
+import android.os.Looper;
 
+import androidx.annotation.VisibleForTesting;
+
+import java.util.ArrayList;
 import java.util.Collection;
-import java.util.LinkedList;
-import java.util.Queue;
+import java.util.List;
 
 /**
  * A {@link LocationProvider} that allows multiple location services to be used. <br>
@@ -36,56 +40,147 @@ import java.util.Queue;
  * were added to the builder. If the provider fails to connect to the underlying service, the next
  * provider in the list is used. <br>
  * <br>
+ * Failed providers are not dropped: each provider keeps a rolling health score, and while updates
+ * are running a failed provider that is preferred over the current one is probed in the
+ * background after a backoff. As soon as the probe delivers a fix it becomes the current provider
+ * again and the fallback is stopped, so no update is lost on the way back. Probes are checked on a
+ * timer as well as on every fix, so a fallback that stopped delivering does not stall them. <br>
+ * <br>
+ * Service callbacks and fixes may arrive on different threads, so the provider state is guarded by
+ * this instance. The providers are only started and stopped once that lock is released, as they
+ * call back from their own threads. <br>
+ * <br>
  * If no providers are added to the builder, the {@link LocationManagerProvider} is used by default.
+ * <br>
+ * <br>
+ * With {@link Builder#race(float, long, RaceListener)}, single update requests start every provider
+ * at once instead and deliver the first fix that is accurate enough, so a slow Play Services
+ * connection no longer delays the first fix:
+ *
+ * <pre>
+ * LocationProvider provider = new MultiFallBackLocationProvider.Builder()
+ *         .withGooglePlayServicesProvider()
+ *         .withDefaultProvider()
+ *         .race(50, 10000, listener)
+ *         .build();
+ * </pre>
  */
-public class MultiFallBackLocationProvider implements LocationProvider {
+public class MultiFallBackLocationProvider implements LooperLocationProvider {
+
+  static final long PROBE_TIMEOUT = 30000;
 
-  private Queue<LocationProvider> providers;
-  private LocationProvider currentProvider;
+  private final List<ProviderHealth> providers = new ArrayList<>();
+  private ProviderHealth current;
+  private ProviderHealth probe;
   private Context context;
   private Logger logger;
   private LocationUpdatedListener locationListener;
   private LocationParams locationParams;
   private boolean singleUpdate;
   private boolean shouldStart;
+  private final List<LocationProvider> initialized = new ArrayList<>();
+  private float raceAccuracy = -1;
+  private long raceMaxWait;
+  private RaceListener raceListener;
+  private Clock clock = Clock.SYSTEM;
+  private List<RaceEntrant> race;
+  private long raceStart;
+  private Location raceBest;
+  private LocationProvider raceBestProvider;
+  private Looper looper;
+  private Handler handler;
+  private final Runnable raceTimeout =
+      new Runnable() {
+        @Override
+        public void run() {
+          raceTimedOut();
+        }
+      };
+  private final Runnable probeCheck =
+      new Runnable() {
+        @Override
+        public void run() {
+          onProbeCheck();
+        }
+      };
 
   private MultiFallBackLocationProvider() {
-    this.providers = new LinkedList<>();
+  }
+
+  @VisibleForTesting
+  void setClock(Clock clock) {
+    this.clock = clock;
   }
 
   @Override
   public void init(Context context, Logger logger) {
-    this.context = context;
-    this.logger = logger;
-    LocationProvider current = getCurrentProvider();
-    if (current != null) {
-      current.init(context, logger);
+    Calls calls = new Calls();
+    synchronized (this) {
+      this.context = context;
+      this.logger = logger;
+      LocationProvider current = getCurrentProvider();
+      if (current != null) {
+        initialize(current, calls);
+      }
     }
+    calls.make();
+  }
+
+  /**
+   * Sets the looper on every provider that supports one, so switching providers keeps reporting on
+   * the same thread.
+   */
+  @Override
+  public synchronized void setLooper(Looper looper) {
+    this.looper = looper;
+    for (ProviderHealth health : providers)
+      if (health.provider instanceof LooperLocationProvider)
+        ((LooperLocationProvider) health.provider).setLooper(looper);
   }
 
   @Override
   public void start(
       LocationUpdatedListener listener, LocationParams params, boolean singleUpdate) {
-    this.shouldStart = true;
-    this.locationListener = listener;
-    this.locationParams = params;
-    this.singleUpdate = singleUpdate;
-    LocationProvider current = getCurrentProvider();
-    if (current != null) {
-      current.start(listener, params, singleUpdate);
+    Calls calls = new Calls();
+    synchronized (this) {
+      this.shouldStart = true;
+      this.locationListener = listener;
+      this.locationParams = params;
+      this.singleUpdate = singleUpdate;
+      LocationTrace.record(LocationTrace.START, LocationTrace.MULTI_FALLBACK);
+      if (!singleUpdate || raceAccuracy < 0 || !startRace(calls)) {
+        if (getCurrentProvider() != null) {
+          startCurrent(calls);
+        }
+        scheduleProbeCheck(clock.elapsedRealtime());
+      }
     }
+    calls.make();
   }
 
   @Override
   public void stop() {
-    LocationProvider current = getCurrentProvider();
-    if (current != null) {
-      current.stop();
+    Calls calls = new Calls();
+    synchronized (this) {
+      // so neither a late fix nor the probe timer starts a provider again
+      shouldStart = false;
+      LocationTrace.record(LocationTrace.STOP, LocationTrace.MULTI_FALLBACK);
+      if (race != null) {
+        stopRace(calls);
+      } else {
+        stopProbe(calls);
+        if (handler != null) handler.removeCallbacks(probeCheck);
+        LocationProvider current = getCurrentProvider();
+        if (current != null) {
+          calls.stop(current);
+        }
+      }
     }
+    calls.make();
   }
 
   @Override
-  public Location getLastLocation() {
+  public synchronized Location getLastLocation() {
     LocationProvider current = getCurrentProvider();
     if (current == null) {
       return null;
@@ -94,11 +189,26 @@ public class MultiFallBackLocationProvider implements LocationProvider {
   }
 
   private void addProvider(LocationProvider provider) {
-    providers.add(provider);
+    providers.add(new ProviderHealth(provider));
   }
 
+  /**
+   * @return every provider, in order of preference
+   */
   public Collection<LocationProvider> getProviders() {
-    return providers;
+    List<LocationProvider> all = new ArrayList<>(providers.size());
+    for (ProviderHealth health : providers) all.add(health.provider);
+    return all;
+  }
+
+  /**
+   * @return the rolling health score of the provider between 0 and 1, or -1 if it is not one of
+   * this provider's providers
+   */
+  public synchronized float getHealthScore(LocationProvider provider) {
+    ProviderHealth health = find(provider);
+    if (health == null) return -1;
+    return health.score(locationParams == null ? 0 : locationParams.getInterval());
   }
 
   /**
@@ -106,29 +216,399 @@ public class MultiFallBackLocationProvider implements LocationProvider {
    *
    * @return the underlying <code>LocationProvider</code> used for location services.
    */
-  LocationProvider getCurrentProvider() {
-    if (currentProvider == null && !providers.isEmpty()) {
-      currentProvider = providers.poll();
+  synchronized LocationProvider getCurrentProvider() {
+    if (current == null) current = select();
+    return current == null ? null : current.provider;
+  }
+
+  synchronized void onProviderConnected(LocationProvider provider) {
+    ProviderHealth health = find(provider);
+    if (health != null) health.connected();
+  }
+
+  /**
+   * Records a service failure, stopping a failed probe or falling back when the current provider
+   * failed.
+   */
+  void onProviderFailed(LocationProvider provider) {
+    Calls calls = new Calls();
+    synchronized (this) {
+      ProviderHealth health = find(provider);
+      if (health == null) return;
+      long now = clock.elapsedRealtime();
+      health.failed(now);
+      if (health == probe) stopProbe(calls);
+      else if (health == current) {
+        LocationMetrics.get().of(provider.getClass()).fallback();
+        fallbackProvider(calls);
+      }
+      scheduleProbeCheck(now);
     }
-    return currentProvider;
+    calls.make();
   }
 
   /**
-   * Fetches the next location provider in the fallback list, and initializes it. If location
+   * Moves to the most preferred provider that has not failed, and initializes it. If location
    * updates have already been started, this restarts location updates.<br>
    * <br>
-   * If there are no location providers left, no action occurs.
+   * If every provider failed, the one with the best health score is kept.
    */
   void fallbackProvider() {
-    if (!providers.isEmpty()) {
-      // Stop the current provider if it is running
-      currentProvider.stop();
-      // Fetch the next provider in the list.
-      currentProvider = providers.poll();
-      currentProvider.init(context, logger);
-      if (shouldStart) {
-        currentProvider.start(locationListener, locationParams, singleUpdate);
+    Calls calls = new Calls();
+    synchronized (this) {
+      fallbackProvider(calls);
+    }
+    calls.make();
+  }
+
+  private void fallbackProvider(Calls calls) {
+    // while racing the other entrants are already running
+    if (race != null) return;
+    ProviderHealth next = select();
+    if (next == null || next == current) return;
+    LocationTrace.record(
+        LocationTrace.FALLBACK, LocationTrace.MULTI_FALLBACK, providers.indexOf(next), 0, 0);
+    // Stop the current provider if it is running
+    if (current != null) calls.stop(current.provider);
+    current = next;
+    initialize(current.provider, calls);
+    if (shouldStart) {
+      startCurrent(calls);
+    }
+  }
+
+  private ProviderHealth select() {
+    ProviderHealth best = null;
+    long interval = locationParams == null ? 0 : locationParams.getInterval();
+    for (ProviderHealth health : providers) {
+      if (!health.isFailed()) return health;
+      if (best == null || health.score(interval) > best.score(interval)) best = health;
+    }
+    return best;
+  }
+
+  private ProviderHealth find(LocationProvider provider) {
+    for (ProviderHealth health : providers) if (health.provider == provider) return health;
+    return null;
+  }
+
+  private void startCurrent(Calls calls) {
+    current.started(clock.elapsedRealtime());
+    calls.start(current.provider, new ScoringListener(current), locationParams, singleUpdate);
+  }
+
+  /**
+   * @return whether a provider started with the listener should still be running
+   */
+  private synchronized boolean isWanted(LocationUpdatedListener listener) {
+    if (listener instanceof RaceEntrant) return race != null && race.contains(listener);
+    ProviderHealth health = ((ScoringListener) listener).health;
+    return shouldStart && race == null && (health == current || health == probe);
+  }
+
+  /**
+   * Runs the probe check on its timer, for when the current provider delivers no fixes.
+   */
+  @VisibleForTesting
+  void onProbeCheck() {
+    Calls calls = new Calls();
+    synchronized (this) {
+      long now = clock.elapsedRealtime();
+      checkProbe(now, calls);
+      scheduleProbeCheck(now);
+    }
+    calls.make();
+  }
+
+  /**
+   * Starts a probe of the most preferred failed provider once its backoff is over, and gives up on
+   * a probe that did not deliver a fix in time. Called with each fix of the current provider and on
+   * the probe timer.
+   */
+  private void checkProbe(long now, Calls calls) {
+    if (probe != null) {
+      if (!probe.hasFix() && now - probe.getStartedAt() >= PROBE_TIMEOUT) {
+        probe.failed(now);
+        stopProbe(calls);
+        scheduleProbeCheck(now);
       }
+      return;
+    }
+    if (singleUpdate || !shouldStart || race != null) return;
+    for (ProviderHealth health : providers) {
+      if (health == current) return;
+      if (!health.isProbeDue(now)) continue;
+      if (logger != null) logger.d("probing %s", health.provider.getClass().getSimpleName());
+      probe = health;
+      initialize(health.provider, calls);
+      health.started(now);
+      calls.start(health.provider, new ScoringListener(health), locationParams, false);
+      scheduleProbeCheck(now);
+      return;
+    }
+  }
+
+  /**
+   * Makes a probe that delivered a fix the current provider, stopping the fallback only now so
+   * updates keep flowing during the switch.
+   */
+  private void promote(ProviderHealth health, Calls calls) {
+    ProviderHealth previous = current;
+    probe = null;
+    current = health;
+    health.recovered();
+    if (logger != null) logger.d("%s recovered", health.provider.getClass().getSimpleName());
+    if (previous != null) calls.stop(previous.provider);
+    scheduleProbeCheck(clock.elapsedRealtime());
+  }
+
+  private void stopProbe(Calls calls) {
+    ProviderHealth stopped = probe;
+    probe = null;
+    if (stopped != null) calls.stop(stopped.provider);
+  }
+
+  /**
+   * Wakes {@link #onProbeCheck()} up when the running probe times out or the next failed provider
+   * preferred over the current one is due, on the looper the providers report on.
+   */
+  private void scheduleProbeCheck(long now) {
+    long due = -1;
+    if (shouldStart && !singleUpdate && race == null) {
+      if (probe != null) due = probe.getStartedAt() + PROBE_TIMEOUT;
+      else
+        for (ProviderHealth health : providers) {
+          if (health == current) break;
+          if (health.isFailed() && (due < 0 || health.getProbeAt() < due))
+            due = health.getProbeAt();
+        }
+    }
+    if (handler != null) handler.removeCallbacks(probeCheck);
+    if (due < 0 || !ensureHandler()) return;
+    handler.postDelayed(probeCheck, Math.max(0, due - now));
+  }
+
+  private void initialize(LocationProvider provider, Calls calls) {
+    if (initialized.contains(provider)) return;
+    initialized.add(provider);
+    calls.init(provider);
+  }
+
+  /**
+   * Starts every provider for continuous updates, each reporting to its own entrant.
+   *
+   * @return false if there is nothing to race against
+   */
+  private boolean startRace(Calls calls) {
+    Collection<LocationProvider> entrants = getProviders();
+    if (entrants.size() < 2) return false;
+    if (race != null) stopRace(calls);
+    race = new ArrayList<>();
+    raceStart = clock.elapsedRealtime();
+    raceBest = null;
+    raceBestProvider = null;
+    for (LocationProvider provider : entrants) race.add(new RaceEntrant(provider));
+    if (raceMaxWait > 0) scheduleRaceTimeout();
+    for (RaceEntrant entrant : race) {
+      initialize(entrant.provider, calls);
+      // continuous, so an entrant can still improve on a first fix that is not accurate enough
+      calls.start(entrant.provider, entrant, locationParams, false);
+    }
+    return true;
+  }
+
+  private void onRaceFix(RaceEntrant entrant, Location location) {
+    Location winner;
+    LocationProvider winnerProvider;
+    long elapsed;
+    Calls calls = new Calls();
+    synchronized (this) {
+      if (race == null || !race.contains(entrant)) return;
+      if (raceBest == null || accuracyOf(location) < accuracyOf(raceBest)) {
+        raceBest = location;
+        raceBestProvider = entrant.provider;
+      }
+      elapsed = clock.elapsedRealtime() - raceStart;
+      boolean accurate = accuracyOf(location) <= raceAccuracy;
+      if (!accurate && (raceMaxWait <= 0 || elapsed < raceMaxWait)) return;
+      winner = accurate ? location : raceBest;
+      winnerProvider = accurate ? entrant.provider : raceBestProvider;
+      stopRace(calls);
+    }
+    calls.make();
+    finishRace(winnerProvider, winner, elapsed);
+  }
+
+  /**
+   * Ends a race that ran for its maximum wait without an accurate enough fix, delivering the most
+   * accurate fix so far, if any.
+   */
+  @VisibleForTesting
+  void raceTimedOut() {
+    Location winner;
+    LocationProvider winnerProvider;
+    long elapsed;
+    Calls calls = new Calls();
+    synchronized (this) {
+      if (race == null) return;
+      winner = raceBest;
+      winnerProvider = raceBestProvider;
+      elapsed = clock.elapsedRealtime() - raceStart;
+      stopRace(calls);
+    }
+    calls.make();
+    finishRace(winnerProvider, winner, elapsed);
+  }
+
+  private void finishRace(LocationProvider winnerProvider, Location winner, long elapsed) {
+    if (winner == null) {
+      if (logger != null) logger.w("no provider delivered a fix within %d ms", elapsed);
+      if (raceListener != null) raceListener.onRaceFailed(elapsed);
+      return;
+    }
+    if (logger != null)
+      logger.d("%s won the race in %d ms", winnerProvider.getClass().getSimpleName(), elapsed);
+    if (raceListener != null) raceListener.onRaceWon(winnerProvider, winner, elapsed);
+    if (locationListener != null) locationListener.onLocationUpdated(winner);
+  }
+
+  /**
+   * Ends the race at its maximum wait even if no further fix arrives, on the looper the providers
+   * report on.
+   */
+  private void scheduleRaceTimeout() {
+    if (ensureHandler()) handler.postDelayed(raceTimeout, raceMaxWait);
+  }
+
+  /**
+   * @return false if there is no looper to run timers on, as in plain unit tests
+   */
+  private boolean ensureHandler() {
+    Looper target = looper != null ? looper : Looper.getMainLooper();
+    if (target == null) return false;
+    if (handler == null || handler.getLooper() != target) handler = new Handler(target);
+    return true;
+  }
+
+  private static float accuracyOf(Location location) {
+    return location.hasAccuracy() ? location.getAccuracy() : Float.MAX_VALUE;
+  }
+
+  private void stopRace(Calls calls) {
+    List<RaceEntrant> entrants = race;
+    race = null;
+    if (handler != null) handler.removeCallbacks(raceTimeout);
+    if (entrants == null) return;
+    for (RaceEntrant entrant : entrants) calls.stop(entrant.provider);
+  }
+
+  /**
+   * Reports the outcome of a race started for a single update request.
+   */
+  public interface RaceListener {
+    /**
+     * @param winner        the provider whose fix was delivered
+     * @param location      the delivered fix
+     * @param elapsedMillis time from starting the race to delivering the fix
+     */
+    void onRaceWon(LocationProvider winner, Location location, long elapsedMillis);
+
+    /**
+     * Called when the maximum wait passed without any provider delivering a fix.
+     *
+     * @param elapsedMillis time from starting the race to giving up
+     */
+    void onRaceFailed(long elapsedMillis);
+  }
+
+  /**
+   * Feeds a provider's fixes into its health before passing on those of the current provider.
+   */
+  private class ScoringListener implements LocationUpdatedListener {
+    private final ProviderHealth health;
+
+    ScoringListener(ProviderHealth health) {
+      this.health = health;
+    }
+
+    @Override
+    public void onLocationUpdated(Location location) {
+      long now = clock.elapsedRealtime();
+      LocationUpdatedListener listener;
+      Calls calls = new Calls();
+      synchronized (MultiFallBackLocationProvider.this) {
+        health.fix(location, now);
+        if (health == probe) promote(health, calls);
+        else if (health != current) return;
+        listener = locationListener;
+      }
+      calls.make();
+      if (listener != null) listener.onLocationUpdated(location);
+      calls = new Calls();
+      synchronized (MultiFallBackLocationProvider.this) {
+        checkProbe(now, calls);
+      }
+      calls.make();
+    }
+  }
+
+  /**
+   * The child provider calls decided while holding the lock, made once it is released: children
+   * call back into this provider from their own threads, so calling them under the lock could
+   * deadlock.
+   */
+  private class Calls {
+    private final List<LocationProvider> stops = new ArrayList<>();
+    private final List<LocationProvider> inits = new ArrayList<>();
+    private final List<LocationProvider> starts = new ArrayList<>();
+    private final List<LocationUpdatedListener> listeners = new ArrayList<>();
+    private final List<LocationParams> params = new ArrayList<>();
+    private final List<Boolean> singleUpdates = new ArrayList<>();
+    private Context context;
+    private Logger logger;
+
+    void init(LocationProvider provider) {
+      context = MultiFallBackLocationProvider.this.context;
+      logger = MultiFallBackLocationProvider.this.logger;
+      inits.add(provider);
+    }
+
+    void start(LocationProvider provider, LocationUpdatedListener listener,
+        LocationParams params, boolean singleUpdate) {
+      starts.add(provider);
+      listeners.add(listener);
+      this.params.add(params);
+      singleUpdates.add(singleUpdate);
+    }
+
+    void stop(LocationProvider provider) {
+      stops.add(provider);
+    }
+
+    void make() {
+      for (LocationProvider provider : stops) provider.stop();
+      for (LocationProvider provider : inits) provider.init(context, logger);
+      for (int i = 0; i < starts.size(); i++) {
+        LocationProvider provider = starts.get(i);
+        LocationUpdatedListener listener = listeners.get(i);
+        // a cached fix may have ended a race, or the caller stopped, since this was decided
+        if (!isWanted(listener)) continue;
+        provider.start(listener, params.get(i), singleUpdates.get(i));
+        if (!isWanted(listener)) provider.stop();
+      }
+    }
+  }
+
+  private class RaceEntrant implements LocationUpdatedListener {
+    private final LocationProvider provider;
+
+    RaceEntrant(LocationProvider provider) {
+      this.provider = provider;
+    }
+
+    @Override
+    public void onLocationUpdated(Location location) {
+      onRaceFix(this, location);
     }
   }
 
@@ -183,6 +663,22 @@ public class MultiFallBackLocationProvider implements LocationProvider {
       return this;
     }
 
+    /**
+     * Races all providers for single update requests instead of trying them one after another.
+     *
+     * @param accuracy the first fix with an accuracy of at most this many meters wins
+     * @param maxWait  once this many milliseconds have passed the most accurate fix so far wins,
+     *                 or the race fails if there is none, 0 to wait for an accurate fix however
+     *                 long it takes
+     * @param listener notified of the winner, may be null
+     */
+    public Builder race(float accuracy, long maxWait, RaceListener listener) {
+      builtProvider.raceAccuracy = accuracy;
+      builtProvider.raceMaxWait = maxWait;
+      builtProvider.raceListener = listener;
+      return this;
+    }
+
     /**
      * Builds a {@link MultiFallBackLocationProvider} instance. If no providers were added to the builder,
      * the built-in Android Location Manager is used.
@@ -0,0 +1,190 @@
+/*
+ * Copyright 2017, Peter Vincent
+ * Licensed under the Apache License, Version 2.0, Android Promise.
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package promise.location;
+
+import android.location.Location;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.google.android.gms.location.DetectedActivity;
+
+import promise.location.activity.ActivityUpdatedListener;
+import promise.location.geo.GeoMath;
+
+/**
+ * Drops fixes that jump further than the device can move, like a network fix that lands hundreds of
+ * meters away and comes back with the next one. <br>
+ * <br>
+ * A fix is compared with the last accepted one: it is rejected when the implied speed is above the
+ * maximum speed of the current activity, or when that speed rose faster than the activity's maximum
+ * acceleration allows. The smaller accuracy of the two fixes is granted as slack before the speed
+ * is computed, so jitter within the reported accuracy is not mistaken for motion. After {@link
+ * #DEFAULT_MAX_REJECTIONS} rejections in a row, or a gap of {@link #DEFAULT_MAX_GAP}, the next fix
+ * is accepted as a new starting point, so a device that really moved is not cut off. <br>
+ * <br>
+ * The activity defaults to {@link DetectedActivity#UNKNOWN}, which allows highway speeds. Start
+ * the filter as the listener of an {@link PromiseLocation.ActivityRecognitionControl} to follow
+ * the detected activity, or set it with {@link #setActivity(int)}. Each fix takes constant time
+ * and the filter keeps a fixed amount of state. Rejected fixes are counted in {@link
+ * #getRejectedCount()} and in the {@link ProviderMetrics} of the provider the {@link
+ * PromiseLocation.LocationControl} runs, which for a {@link MultiFallBackLocationProvider} is the
+ * wrapper rather than the one of its providers that delivered them.
+ */
+public class OutlierLocationFilter implements LocationFilter, ActivityUpdatedListener {
+
+  public static final int DEFAULT_MAX_REJECTIONS = 5;
+  public static final long DEFAULT_MAX_GAP = 60000;
+
+  // indexed by DetectedActivity type, IN_VEHICLE to RUNNING
+  private static final int ACTIVITIES = 9;
+  private static final float[] MAX_SPEEDS = {70, 20, 10, 3, 70, 70, 70, 4, 10};
+  private static final float[] MAX_ACCELERATIONS = {10, 4, 4, 2, 10, 10, 10, 3, 5};
+
+  private final float[] maxSpeeds = MAX_SPEEDS.clone();
+  private final float[] maxAccelerations = MAX_ACCELERATIONS.clone();
+  private int maxRejections = DEFAULT_MAX_REJECTIONS;
+  private long maxGap = DEFAULT_MAX_GAP;
+  private volatile int activity = DetectedActivity.UNKNOWN;
+  private boolean started;
+  private long lastTime;
+  private double lastLatitude;
+  private double lastLongitude;
+  private float lastAccuracy;
+  private double lastSpeed;
+  private boolean hasSpeed;
+  private int rejections;
+  private long rejected;
+  private Location lastInput;
+  private Location lastOutput;
+
+  /**
+   * Sets the limits of an activity.
+   *
+   * @param activity        a {@link DetectedActivity} type
+   * @param maxSpeed        the highest plausible speed in m/s
+   * @param maxAcceleration the highest plausible speed up in m/s^2
+   */
+  public OutlierLocationFilter setThresholds(int activity, float maxSpeed, float maxAcceleration) {
+    if (activity < 0 || activity >= ACTIVITIES)
+      throw new IllegalArgumentException("Unknown activity " + activity);
+    if (maxSpeed <= 0 || maxAcceleration <= 0)
+      throw new IllegalArgumentException("Thresholds must be positive");
+    maxSpeeds[activity] = maxSpeed;
+    maxAccelerations[activity] = maxAcceleration;
+    return this;
+  }
+
+  /**
+   * @param maxRejections rejections in a row after which the next fix is accepted as is
+   */
+  public OutlierLocationFilter setMaxRejections(int maxRejections) {
+    this.maxRejections = maxRejections;
+    return this;
+  }
+
+  /**
+   * @param maxGap the time in milliseconds after the last accepted fix from which the next fix is
+   *               accepted as is
+   */
+  public OutlierLocationFilter setMaxGap(long maxGap) {
+    this.maxGap = maxGap;
+    return this;
+  }
+
+  /**
+   * @param activity the {@link DetectedActivity} type whose limits apply from now on
+   */
+  public void setActivity(int activity) {
+    this.activity = activity >= 0 && activity < ACTIVITIES ? activity : DetectedActivity.UNKNOWN;
+  }
+
+  public int getActivity() {
+    return activity;
+  }
+
+  @Override
+  public void onActivityUpdated(DetectedActivity detectedActivity) {
+    if (detectedActivity != null) setActivity(detectedActivity.getType());
+  }
+
+  @Nullable
+  @Override
+  public Location filter(@NonNull Location location) {
+    // the same fix handed in again by another listener sharing this filter
+    if (location == lastInput) return lastOutput;
+    lastInput = location;
+    lastOutput = accepts(location) ? location : null;
+    return lastOutput;
+  }
+
+  @Override
+  public void reset() {
+    started = false;
+    hasSpeed = false;
+    rejections = 0;
+    lastInput = null;
+    lastOutput = null;
+  }
+
+  /**
+   * @return how many fixes this filter dropped
+   */
+  public long getRejectedCount() {
+    return rejected;
+  }
+
+  private boolean accepts(Location location) {
+    long elapsed = location.getTime() - lastTime;
+    if (!started || elapsed > maxGap || rejections >= maxRejections) {
+      started = true;
+      hasSpeed = false;
+      accept(location, 0);
+      return true;
+    }
+    if (elapsed <= 0) return reject();
+    double seconds = elapsed / 1000d;
+    double distance =
+        GeoMath.equirectangular(
+            lastLatitude, lastLongitude, location.getLatitude(), location.getLongitude());
+    double slack = Math.min(lastAccuracy, accuracy(location));
+    double speed = Math.max(0, distance - slack) / seconds;
+    int current = activity;
+    if (speed > maxSpeeds[current]) return reject();
+    if (hasSpeed && speed - lastSpeed > maxAccelerations[current] * seconds) return reject();
+    hasSpeed = true;
+    accept(location, speed);
+    return true;
+  }
+
+  private void accept(Location location, double speed) {
+    lastTime = location.getTime();
+    lastLatitude = location.getLatitude();
+    lastLongitude = location.getLongitude();
+    lastAccuracy = accuracy(location);
+    lastSpeed = speed;
+    rejections = 0;
+  }
+
+  private boolean reject() {
+    rejections++;
+    rejected++;
+    return false;
+  }
+
+  private static float accuracy(Location location) {
+    return location.hasAccuracy() ? location.getAccuracy() : 0;
+  }
+}
@@ -15,15 +15,22 @@ package promise.location;
 
 import android.content.Context;
 import android.location.Location;
+import android.os.Looper;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
+import androidx.lifecycle.LifecycleOwner;
 
 import com.google.android.gms.location.DetectedActivity;
 
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.WeakHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
 
 import promise.location.activity.ActivityParams;
 import promise.location.activity.ActivityProvider;
@@ -43,11 +50,14 @@ public class PromiseLocation {
   private Context context;
   private Logger logger;
   private boolean preInitialize;
+  private boolean lazyInitialize;
 
-  private PromiseLocation(Context context, Logger logger, boolean preInitialize) {
+  private PromiseLocation(
+      Context context, Logger logger, boolean preInitialize, boolean lazyInitialize) {
     this.context = context;
     this.logger = logger;
     this.preInitialize = preInitialize;
+    this.lazyInitialize = lazyInitialize;
   }
 
   public static PromiseLocation with(Context context) {
@@ -83,6 +93,20 @@ public class PromiseLocation {
     return new GeofencingControl(this, geoFenceProvider);
   }
 
+  /**
+   * @return the performance metrics the providers record as they run
+   */
+  public LocationMetrics metrics() {
+    return LocationMetrics.get();
+  }
+
+  /**
+   * @return the trace of provider events, to dump when something went wrong in the field
+   */
+  public LocationTrace trace() {
+    return LocationTrace.get();
+  }
+
   public GeocodingControl geocoding() {
     return geocoding(new AndroidGeoCodingProvider());
   }
@@ -91,10 +115,41 @@ public class PromiseLocation {
     return new GeocodingControl(this, geocodingProvider);
   }
 
+  /**
+   * Initializes the provider the way the builder asked for.
+   *
+   * @return the initialization to wait for before the provider is used, null when there is none
+   */
+  @Nullable
+  private FutureTask<Void> initialize(final Object provider, final Initializable init) {
+    if (!preInitialize) return null;
+    Runnable task =
+        new Runnable() {
+          @Override
+          public void run() {
+            init.init(context, LoggerFactory.forClass(logger, provider.getClass()));
+          }
+        };
+    if (lazyInitialize) return ProviderInitializer.submit(provider, task);
+    task.run();
+    return null;
+  }
+
+  private static void await(@Nullable FutureTask<Void> initialization) {
+    if (initialization != null) ProviderInitializer.await(initialization);
+  }
+
+  private interface Initializable {
+    void init(Context context, Logger logger);
+  }
+
   public static class Builder {
     private final Context context;
     private boolean loggingEnabled;
     private boolean preInitialize;
+    private boolean lazyInitialize;
+    private int logLevel = -1;
+    private boolean asyncLogging;
 
     public Builder(@NonNull Context context) {
       this.context = context;
@@ -107,24 +162,70 @@ public class PromiseLocation {
       return this;
     }
 
+    /**
+     * Logs through a leaner logger that only writes messages of at least the given {@link
+     * android.util.Log} priority, checks the level before doing any work, tags messages with the
+     * logging class and formats them only when they are written. Takes precedence over {@link
+     * #logging(boolean)}.
+     */
+    public Builder logLevel(int priority) {
+      this.logLevel = priority;
+      return this;
+    }
+
+    /**
+     * Formats and writes the messages let through by {@link #logLevel(int)} on a background
+     * thread. Messages are dropped, not waited for, when the thread falls behind.
+     */
+    public Builder asyncLogging(boolean enabled) {
+      this.asyncLogging = enabled;
+      return this;
+    }
+
     public Builder preInitialize(boolean enabled) {
       this.preInitialize = enabled;
       return this;
     }
 
+    /**
+     * Moves provider initialization (stores, preferences, the Play Services client) off the calling
+     * thread. Controls are returned right away and their providers are initialized once, on a
+     * background thread; the first call that needs a provider waits for it if it is not ready yet.
+     * Disabled by default. Has no effect when {@link #preInitialize} is disabled.
+     */
+    public Builder lazyInitialize(boolean enabled) {
+      this.lazyInitialize = enabled;
+      return this;
+    }
+
     public PromiseLocation build() {
-      return new PromiseLocation(context, LoggerFactory.buildLogger(loggingEnabled), preInitialize);
+      Logger logger =
+          logLevel >= 0
+              ? LoggerFactory.buildLogger(logLevel, asyncLogging)
+              : LoggerFactory.buildLogger(loggingEnabled);
+      return new PromiseLocation(context, logger, preInitialize, lazyInitialize);
     }
   }
 
   public static class LocationControl {
 
-    private static final Map<Context, LocationProvider> MAPPING = new WeakHashMap<>();
+    // keyed by the application, so the controls of a recreated activity share its provider
+    private static final Map<Context, LocationDispatcher> MAPPING = new WeakHashMap<>();
 
     private final PromiseLocation promiseLocation;
+    private final LocationDispatcher dispatcher;
     private LocationParams params;
     private LocationProvider provider;
+    private FutureTask<Void> initialization;
     private boolean once;
+    private Executor executor;
+    private LocationFilter filter;
+    private Looper looper;
+    private boolean looperSet;
+    private LifecycleOwner owner;
+    private LocationParams backgroundParams;
+    private final Map<LocationUpdatedListener, LifecycleBinding> bindings = new HashMap<>();
+    private Store<Location> store;
 
     public LocationControl(
         @NonNull PromiseLocation promiseLocation, @NonNull LocationProvider locationProvider) {
@@ -132,12 +233,23 @@ public class PromiseLocation {
       params = LocationParams.BEST_EFFORT;
       once = false;
 
-      if (!MAPPING.containsKey(promiseLocation.context))
-        MAPPING.put(promiseLocation.context, locationProvider);
-      provider = MAPPING.get(promiseLocation.context);
-
-      if (promiseLocation.preInitialize)
-        provider.init(promiseLocation.context, promiseLocation.logger);
+      Context application = promiseLocation.context.getApplicationContext();
+      if (application == null) application = promiseLocation.context;
+      if (!MAPPING.containsKey(application))
+        MAPPING.put(application, new LocationDispatcher(locationProvider));
+      dispatcher = MAPPING.get(application);
+      provider = dispatcher.getProvider();
+
+      final LocationProvider initialized = provider;
+      initialization =
+          promiseLocation.initialize(
+              provider,
+              new Initializable() {
+                @Override
+                public void init(Context context, Logger logger) {
+                  initialized.init(context, logger);
+                }
+              });
     }
 
     public LocationControl config(@NonNull LocationParams params) {
@@ -155,26 +267,223 @@ public class PromiseLocation {
       return this;
     }
 
+    /**
+     * Calls the listeners started on this control through the executor instead of on the thread
+     * the provider reports on. The same {@link Location} instance may be handed to several
+     * listeners, so treat it as read only.
+     */
+    public LocationControl executor(@Nullable Executor executor) {
+      this.executor = executor;
+      return this;
+    }
+
+    /**
+     * Runs the fixes of the listeners started on this control through the filter before they are
+     * delivered, for example a {@link KalmanLocationFilter} to smooth out jitter. Null, the
+     * default, delivers the fixes as the provider reports them.
+     */
+    public LocationControl filter(@Nullable LocationFilter filter) {
+      this.filter = filter;
+      return this;
+    }
+
+    /**
+     * Makes the provider report on the looper, null for the main looper. Fix processing, {@link
+     * LocationStore} writes, the history and listeners without an {@link #executor(Executor)} then
+     * run on its thread. The looper is shared by every control in the application and is applied on
+     * {@link #start}; it only has an effect on a {@link LooperLocationProvider}.
+     */
+    public LocationControl looper(@Nullable Looper looper) {
+      this.looper = looper;
+      this.looperSet = true;
+      return this;
+    }
+
+    /**
+     * Makes the provider report on a dedicated background thread shared by the library, see
+     * {@link #looper(Looper)}. Listeners are called on that thread too unless an {@link
+     * #executor(Executor)} is set, and must not touch views from there.
+     */
+    public LocationControl background() {
+      return looper(LocationDispatcher.backgroundLooper());
+    }
+
+    /**
+     * Ties the listeners started from now on to the owner's lifecycle: they get updates while the
+     * owner is started, drop to the {@link #backgroundParams(LocationParams)} or stop while it is in
+     * the background, and are removed when it is destroyed. A {@link #once()} listener asks for a
+     * new fix each time the owner comes back. <br>
+     * <br>
+     * The provider outlives its last bound listener for {@link LocationDispatcher#STOP_GRACE} ms,
+     * so a rotation does not stop and restart it. Needs androidx lifecycle on the classpath.
+     */
+    public LocationControl bind(@NonNull LifecycleOwner owner) {
+      this.owner = owner;
+      return this;
+    }
+
+    /**
+     * Sets the request bound listeners fall back to while their owner is in the background, null,
+     * the default, to stop their updates instead.
+     */
+    public LocationControl backgroundParams(@Nullable LocationParams params) {
+      this.backgroundParams = params;
+      return this;
+    }
+
     public LocationState state() {
       return LocationState.with(promiseLocation.context);
     }
 
     @Nullable
     public Location getLastLocation() {
+      await(initialization);
       return provider.getLastLocation();
     }
 
+    /**
+     * Returns the best fix already known, without starting the provider. The provider's last
+     * location, the fixes persisted by every built in provider and the last fix delivered on this
+     * context are scored by age and accuracy, see {@link LastLocationSelector}.
+     *
+     * @param maxAge      maximum age of the fix in milliseconds, 0 for any age
+     * @param maxAccuracy maximum accuracy radius in meters, 0 for any accuracy
+     * @return the best qualifying fix, null if none qualifies
+     */
+    @Nullable
+    public Location getLastLocation(long maxAge, float maxAccuracy) {
+      await(initialization);
+      LastLocationSelector selector =
+          new LastLocationSelector(System.currentTimeMillis(), maxAge, maxAccuracy);
+      selector.offer(dispatcher.getLatest());
+      selector.offer(provider.getLastLocation());
+      // the providers write behind, fixes they did not save yet would be missed
+      LocationStore.flushAll();
+      Store<Location> store = store();
+      selector.offer(store.get(GooglePlayServicesLocationProvider.GMS_ID));
+      selector.offer(store.get(LocationManagerProvider.LOCATION_MANAGER_PROVIDER_ID));
+      return selector.best();
+    }
+
+    /**
+     * Hands the best known fix to the listener right away when one qualifies, see {@link
+     * #getLastLocation(long, float)}, and only asks the provider for a single new fix, with this
+     * control's params, when none does. Either way the listener is called through this control's
+     * {@link #executor(Executor) executor}, if one is set.
+     */
+    public void getLastLocation(
+        long maxAge, float maxAccuracy, @NonNull LocationUpdatedListener listener) {
+      Location location = getLastLocation(maxAge, maxAccuracy);
+      if (location != null) {
+        new LocationDispatcher.Subscription(listener, params, true, executor, filter)
+            .deliver(location, LocationMetrics.get().of(provider.getClass()));
+        return;
+      }
+      if (looperSet) dispatcher.setLooper(looper);
+      dispatcher.add(listener, params, true, executor, filter);
+    }
+
+    @VisibleForTesting
+    void setStore(Store<Location> store) {
+      this.store = store;
+    }
+
+    private Store<Location> store() {
+      if (store == null) store = new LocationStore();
+      return store;
+    }
+
+    /**
+     * Returns the bounded history of fixes received in the application, recording starts with the
+     * first call. The history holds {@link LocationHistory#DEFAULT_CAPACITY} fixes unless a
+     * capacity was set with {@link #history(int)}.
+     */
+    public LocationHistory history() {
+      return dispatcher.history();
+    }
+
+    /**
+     * Returns the history of fixes received in the application, sized to hold the given number of
+     * fixes. Changing the capacity resizes the same history in place, keeping the most recent
+     * fixes, so histories and cursors obtained earlier stay valid.
+     */
+    public LocationHistory history(int capacity) {
+      return dispatcher.history(capacity);
+    }
+
     public LocationControl get() {
       return this;
     }
 
+    LocationParams params() {
+      return params;
+    }
+
+    /**
+     * Registers the listener for location updates. All listeners started in the same application
+     * share one provider subscription, whichever context their control was created with, so adding
+     * a listener while updates are running does not restart the provider.
+     */
     public void start(LocationUpdatedListener listener) {
       if (provider == null) throw new RuntimeException("A provider must be initialized");
-      provider.start(listener, params, once);
+      await(initialization);
+      if (looperSet) dispatcher.setLooper(looper);
+      if (owner != null) follow(listener);
+      else dispatcher.add(listener, params, once, executor, filter);
+    }
+
+    /**
+     * Unregisters a single listener. The provider is only stopped once the last listener is gone.
+     */
+    public void stop(LocationUpdatedListener listener) {
+      await(initialization);
+      LifecycleBinding binding = bindings.remove(listener);
+      if (binding != null) binding.unbind();
+      dispatcher.remove(listener);
     }
 
+    /**
+     * Unregisters every listener in the application and stops the provider.
+     */
     public void stop() {
-      provider.stop();
+      await(initialization);
+      for (LifecycleBinding binding : new ArrayList<>(bindings.values())) binding.unbind();
+      bindings.clear();
+      dispatcher.removeAll();
+    }
+
+    private void follow(final LocationUpdatedListener listener) {
+      LifecycleBinding previous = bindings.remove(listener);
+      if (previous != null) previous.unbind();
+      final LocationParams foreground = params;
+      final LocationParams background = once ? null : backgroundParams;
+      final boolean single = once;
+      final Executor delivery = executor;
+      final LocationFilter stage = filter;
+      LifecycleBinding binding =
+          LifecycleBinding.bind(
+              owner,
+              new LifecycleBinding.Target() {
+                @Override
+                public void resume() {
+                  dispatcher.add(listener, foreground, single, delivery, stage);
+                }
+
+                @Override
+                public void pause() {
+                  if (background != null)
+                    dispatcher.add(listener, background, single, delivery, stage);
+                  else dispatcher.remove(listener, true);
+                }
+
+                @Override
+                public void release() {
+                  bindings.remove(listener);
+                  // the grace period lets a recreated owner pick the running provider up
+                  dispatcher.remove(listener, true);
+                }
+              });
+      if (binding != null) bindings.put(listener, binding);
     }
   }
 
@@ -184,6 +493,7 @@ public class PromiseLocation {
 
     private final PromiseLocation promiseLocation;
     private GeoCodingProvider provider;
+    private FutureTask<Void> initialization;
     private boolean directAdded = false;
     private boolean reverseAdded = false;
 
@@ -196,9 +506,16 @@ public class PromiseLocation {
       }
       provider = MAPPING.get(promiseLocation.context);
 
-      if (promiseLocation.preInitialize) {
-        provider.init(promiseLocation.context, promiseLocation.logger);
-      }
+      final GeoCodingProvider initialized = provider;
+      initialization =
+          promiseLocation.initialize(
+              provider,
+              new Initializable() {
+                @Override
+                public void init(Context context, Logger logger) {
+                  initialized.init(context, logger);
+                }
+              });
     }
 
     public GeocodingControl get() {
@@ -218,24 +535,28 @@ public class PromiseLocation {
 
     public GeocodingControl add(@NonNull Location location) {
       reverseAdded = true;
+      await(initialization);
       provider.addLocation(location, 1);
       return this;
     }
 
     public GeocodingControl add(@NonNull Location location, int maxResults) {
       reverseAdded = true;
+      await(initialization);
       provider.addLocation(location, maxResults);
       return this;
     }
 
     public GeocodingControl add(@NonNull String name) {
       directAdded = true;
+      await(initialization);
       provider.addName(name, 1);
       return this;
     }
 
     public GeocodingControl add(@NonNull String name, int maxResults) {
       directAdded = true;
+      await(initialization);
       provider.addName(name, maxResults);
       return this;
     }
@@ -263,10 +584,12 @@ public class PromiseLocation {
             "Some places were added for reverse geocoding but the listener was not specified!");
       }
 
+      await(initialization);
       provider.start(geocodingListener, reverseGeocodingListener);
     }
 
     public void stop() {
+      await(initialization);
       provider.stop();
     }
   }
@@ -277,6 +600,9 @@ public class PromiseLocation {
     private final PromiseLocation promiseLocation;
     private ActivityParams params;
     private ActivityProvider provider;
+    private FutureTask<Void> initialization;
+    private LifecycleOwner owner;
+    private LifecycleBinding binding;
 
     public ActivityRecognitionControl(
         @NonNull PromiseLocation promiseLocation, @NonNull ActivityProvider activityProvider) {
@@ -287,8 +613,16 @@ public class PromiseLocation {
         MAPPING.put(promiseLocation.context, activityProvider);
       provider = MAPPING.get(promiseLocation.context);
 
-      if (promiseLocation.preInitialize)
-        provider.init(promiseLocation.context, promiseLocation.logger);
+      final ActivityProvider initialized = provider;
+      initialization =
+          promiseLocation.initialize(
+              provider,
+              new Initializable() {
+                @Override
+                public void init(Context context, Logger logger) {
+                  initialized.init(context, logger);
+                }
+              });
     }
 
     public ActivityRecognitionControl config(@NonNull ActivityParams params) {
@@ -298,6 +632,7 @@ public class PromiseLocation {
 
     @Nullable
     public DetectedActivity getLastActivity() {
+      await(initialization);
       return provider.getLastActivity();
     }
 
@@ -305,14 +640,54 @@ public class PromiseLocation {
       return this;
     }
 
-    public void start(ActivityUpdatedListener listener) {
+    /**
+     * Runs activity recognition only while the owner is started, stopping it in the background and
+     * for good when the owner is destroyed. Needs androidx lifecycle on the classpath.
+     */
+    public ActivityRecognitionControl bind(@NonNull LifecycleOwner owner) {
+      this.owner = owner;
+      return this;
+    }
+
+    public void start(final ActivityUpdatedListener listener) {
       if (provider == null) {
         throw new RuntimeException("A provider must be initialized");
       }
-      provider.start(listener, params);
+      await(initialization);
+      if (binding != null) binding.unbind();
+      binding = null;
+      if (owner == null) {
+        provider.start(listener, params);
+        return;
+      }
+      final ActivityParams foreground = params;
+      final LifecycleOwner bound = owner;
+      binding =
+          LifecycleBinding.bind(
+              owner,
+              new LifecycleBinding.Target() {
+                @Override
+                public void resume() {
+                  provider.start(listener, foreground);
+                }
+
+                @Override
+                public void pause() {
+                  provider.stop();
+                }
+
+                @Override
+                public void release() {
+                  provider.stop();
+                  if (bound == promiseLocation.context) MAPPING.remove(promiseLocation.context);
+                }
+              });
     }
 
     public void stop() {
+      await(initialization);
+      if (binding != null) binding.unbind();
+      binding = null;
       provider.stop();
     }
   }
@@ -322,6 +697,9 @@ public class PromiseLocation {
 
     private final PromiseLocation promiseLocation;
     private GeoFenceProvider provider;
+    private FutureTask<Void> initialization;
+    private LifecycleOwner owner;
+    private LifecycleBinding binding;
 
     public GeofencingControl(
         @NonNull PromiseLocation promiseLocation, @NonNull GeoFenceProvider geoFenceProvider) {
@@ -332,39 +710,90 @@ public class PromiseLocation {
       }
       provider = MAPPING.get(promiseLocation.context);
 
-      if (promiseLocation.preInitialize) {
-        provider.init(promiseLocation.context, promiseLocation.logger);
-      }
+      final GeoFenceProvider initialized = provider;
+      initialization =
+          promiseLocation.initialize(
+              provider,
+              new Initializable() {
+                @Override
+                public void init(Context context, Logger logger) {
+                  initialized.init(context, logger);
+                }
+              });
     }
 
     public GeofencingControl add(@NonNull GeoFenceModel geofenceModel) {
+      await(initialization);
       provider.addGeoFence(geofenceModel);
       return this;
     }
 
     public GeofencingControl remove(@NonNull String geofenceId) {
+      await(initialization);
       provider.removeGeoFence(geofenceId);
       return this;
     }
 
     public GeofencingControl addAll(@NonNull List<GeoFenceModel> geoFenceModelList) {
+      await(initialization);
       provider.addGeoFences(geoFenceModelList);
       return this;
     }
 
     public GeofencingControl removeAll(@NonNull List<String> geofenceIdsList) {
+      await(initialization);
       provider.removeGeoFences(geofenceIdsList);
       return this;
     }
 
-    public void start(GeoFencingTransitionListener listener) {
+    /**
+     * Listens for transitions only while the owner is started. The geofences stay registered in
+     * the background; only the transition listener is paused. Needs androidx lifecycle on the
+     * classpath.
+     */
+    public GeofencingControl bind(@NonNull LifecycleOwner owner) {
+      this.owner = owner;
+      return this;
+    }
+
+    public void start(final GeoFencingTransitionListener listener) {
       if (provider == null) {
         throw new RuntimeException("A provider must be initialized");
       }
-      provider.start(listener);
+      await(initialization);
+      if (binding != null) binding.unbind();
+      binding = null;
+      if (owner == null) {
+        provider.start(listener);
+        return;
+      }
+      final LifecycleOwner bound = owner;
+      binding =
+          LifecycleBinding.bind(
+              owner,
+              new LifecycleBinding.Target() {
+                @Override
+                public void resume() {
+                  provider.start(listener);
+                }
+
+                @Override
+                public void pause() {
+                  provider.stop();
+                }
+
+                @Override
+                public void release() {
+                  provider.stop();
+                  if (bound == promiseLocation.context) MAPPING.remove(promiseLocation.context);
+                }
+              });
     }
 
     public void stop() {
+      await(initialization);
+      if (binding != null) binding.unbind();
+      binding = null;
       provider.stop();
     }
   }
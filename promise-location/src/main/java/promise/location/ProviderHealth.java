@@ -0,0 +1,116 @@
+/*
+ * Copyright 2017, Peter Vincent
+ * Licensed under the Apache License, Version 2.0, Android Promise.
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package promise.location;
+
+import android.location.Location;
+
+/**
+ * Rolling health of one provider in a {@link MultiFallBackLocationProvider}: how reliably it
+ * connects, how regularly and how accurately it delivers fixes and how long its first fix takes.
+ * Every statistic is an exponentially weighted moving average, so a provider that recovers is
+ * trusted again after a few good events. <br>
+ * <br>
+ * A provider that fails is marked failed and becomes due for a background probe after a backoff
+ * that doubles with every consecutive failure.
+ */
+class ProviderHealth {
+
+  static final long PROBE_BACKOFF = 30000;
+  static final long MAX_PROBE_BACKOFF = 10 * 60000;
+
+  private static final float WEIGHT = 0.3f;
+  private static final float GOOD_ACCURACY = 20;
+  private static final float GOOD_LATENCY = 5000;
+
+  final LocationProvider provider;
+  private float connectRate = 1;
+  private float fixInterval = -1;
+  private float accuracy = -1;
+  private float latency = -1;
+  private long startedAt = -1;
+  private long lastFixAt = -1;
+  private boolean failed;
+  private int failures;
+  private long probeAt;
+
+  ProviderHealth(LocationProvider provider) {
+    this.provider = provider;
+  }
+
+  void started(long now) {
+    startedAt = now;
+    lastFixAt = -1;
+  }
+
+  void connected() {
+    connectRate = average(connectRate, 1);
+  }
+
+  void failed(long now) {
+    connectRate = average(connectRate, 0);
+    failed = true;
+    failures++;
+    probeAt = now + Math.min(MAX_PROBE_BACKOFF, PROBE_BACKOFF << Math.min(failures - 1, 8));
+  }
+
+  void recovered() {
+    failed = false;
+    failures = 0;
+  }
+
+  void fix(Location location, long now) {
+    if (lastFixAt >= 0) fixInterval = average(fixInterval, now - lastFixAt);
+    else if (startedAt >= 0) latency = average(latency, now - startedAt);
+    lastFixAt = now;
+    if (location.hasAccuracy()) accuracy = average(accuracy, location.getAccuracy());
+  }
+
+  boolean isFailed() {
+    return failed;
+  }
+
+  boolean isProbeDue(long now) {
+    return failed && now >= probeAt;
+  }
+
+  long getProbeAt() {
+    return probeAt;
+  }
+
+  long getStartedAt() {
+    return startedAt;
+  }
+
+  boolean hasFix() {
+    return lastFixAt >= 0;
+  }
+
+  /**
+   * Scores the provider between 0 and 1, connection reliability weighing as much as fix rate,
+   * accuracy and latency together. Statistics without samples yet count as perfect.
+   *
+   * @param expectedInterval the interval the provider was asked for
+   */
+  float score(long expectedInterval) {
+    float rate =
+        fixInterval <= 0 || expectedInterval <= 0 ? 1 : Math.min(1, expectedInterval / fixInterval);
+    float precision = accuracy < 0 ? 1 : GOOD_ACCURACY / Math.max(GOOD_ACCURACY, accuracy);
+    float speed = latency < 0 ? 1 : GOOD_LATENCY / Math.max(GOOD_LATENCY, latency);
+    return connectRate * 0.5f + (rate + precision + speed) / 6;
+  }
+
+  private static float average(float average, float sample) {
+    return average < 0 ? sample : average + WEIGHT * (sample - average);
+  }
+}
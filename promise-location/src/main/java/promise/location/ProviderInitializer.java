@@ -0,0 +1,131 @@
+/*
+ * Copyright 2017, Peter Vincent
+ * Licensed under the Apache License, Version 2.0, Android Promise.
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package promise.location;
+
+import androidx.annotation.NonNull;
+
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Initializes providers on a background thread when {@link PromiseLocation.Builder#lazyInitialize}
+ * is enabled, so creating a control costs the caller nothing. <br>
+ * <br>
+ * Every provider is initialized at most once, however many controls share it. A control used
+ * before its provider finished initializing runs the pending initialization itself, or waits for
+ * the one already in progress, so no call reaches a provider that was not initialized.
+ */
+final class ProviderInitializer {
+
+  private static final long KEEP_ALIVE = 10000;
+
+  private static final FutureTask<Void> DONE = new FutureTask<>(new Runnable() {
+    @Override
+    public void run() {
+    }
+  }, null);
+
+  static {
+    DONE.run();
+  }
+
+  private static final Map<Object, FutureTask<Void>> TASKS = new WeakHashMap<>();
+
+  private static ThreadPoolExecutor executor;
+
+  private ProviderInitializer() {
+  }
+
+  /**
+   * Schedules the initialization of the provider unless it was already scheduled.
+   *
+   * @return the task to {@link #await} before the provider is used
+   */
+  static FutureTask<Void> submit(@NonNull final Object provider, @NonNull final Runnable init) {
+    FutureTask<Void> task;
+    synchronized (TASKS) {
+      task = TASKS.get(provider);
+      if (task != null) return task;
+      task = new FutureTask<>(new Runnable() {
+        @Override
+        public void run() {
+          try {
+            init.run();
+          } finally {
+            // drop the init closure so the entry no longer keeps the provider reachable
+            synchronized (TASKS) {
+              TASKS.put(provider, DONE);
+            }
+          }
+        }
+      }, null);
+      TASKS.put(provider, task);
+    }
+    executor().execute(task);
+    return task;
+  }
+
+  /**
+   * Blocks until the task ran, running it on the calling thread if the background thread did not
+   * pick it up yet.
+   */
+  static void await(@NonNull FutureTask<Void> task) {
+    if (!task.isDone()) task.run();
+    boolean interrupted = false;
+    try {
+      while (true) {
+        try {
+          task.get();
+          return;
+        } catch (InterruptedException e) {
+          interrupted = true;
+        } catch (ExecutionException e) {
+          throw new RuntimeException("Provider initialization failed", e.getCause());
+        }
+      }
+    } finally {
+      if (interrupted) Thread.currentThread().interrupt();
+    }
+  }
+
+  private static synchronized ThreadPoolExecutor executor() {
+    if (executor == null) {
+      executor =
+          new ThreadPoolExecutor(
+              1,
+              1,
+              KEEP_ALIVE,
+              TimeUnit.MILLISECONDS,
+              new LinkedBlockingQueue<Runnable>(),
+              new ThreadFactory() {
+                @Override
+                public Thread newThread(@NonNull Runnable runnable) {
+                  Thread thread = new Thread(runnable, "promise-location-init");
+                  thread.setDaemon(true);
+                  return thread;
+                }
+              });
+      // the thread only lives through the startup burst
+      executor.allowCoreThreadTimeOut(true);
+    }
+    return executor;
+  }
+}
@@ -0,0 +1,209 @@
+/*
+ * Copyright 2017, Peter Vincent
+ * Licensed under the Apache License, Version 2.0, Android Promise.
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package promise.location;
+
+import android.location.Location;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.VisibleForTesting;
+
+/**
+ * Performance numbers of one provider class, see {@link LocationMetrics}. <br>
+ * <br>
+ * Times are in milliseconds except {@link #getListenerTime()}, which is in microseconds, and
+ * accuracies are in meters. The connect and first fix times are measured from the moment the
+ * provider is started; a provider that has nothing to connect to only reports first fixes.
+ */
+public final class ProviderMetrics {
+
+  private static final long[] STARTUP_BOUNDS = {
+      100, 250, 500, 1000, 2000, 5000, 10000, 30000, 60000, 120000
+  };
+  private static final long[] INTERVAL_BOUNDS = {
+      250, 500, 1000, 2000, 5000, 10000, 30000, 60000, 300000, 900000
+  };
+  private static final long[] ACCURACY_BOUNDS = {5, 10, 20, 50, 100, 200, 500, 1000, 5000};
+  private static final long[] LISTENER_BOUNDS = {
+      50, 100, 250, 500, 1000, 2500, 5000, 16000, 50000, 250000
+  };
+
+  private final String provider;
+  private final Histogram connectTime;
+  private final Histogram firstFixTime;
+  private final Histogram fixInterval;
+  private final Histogram accuracy;
+  private final Histogram listenerTime;
+  private Clock clock = Clock.SYSTEM;
+  private long fixes;
+  private long fallbacks;
+  private long connectFailures;
+  private long rejected;
+  private long startedAt;
+  private long lastFixAt;
+  private boolean connecting;
+  private boolean waitingFirstFix;
+
+  ProviderMetrics(String provider) {
+    this.provider = provider;
+    connectTime = new Histogram(STARTUP_BOUNDS);
+    firstFixTime = new Histogram(STARTUP_BOUNDS);
+    fixInterval = new Histogram(INTERVAL_BOUNDS);
+    accuracy = new Histogram(ACCURACY_BOUNDS);
+    listenerTime = new Histogram(LISTENER_BOUNDS);
+  }
+
+  private ProviderMetrics(ProviderMetrics source) {
+    provider = source.provider;
+    connectTime = source.connectTime.snapshot();
+    firstFixTime = source.firstFixTime.snapshot();
+    fixInterval = source.fixInterval.snapshot();
+    accuracy = source.accuracy.snapshot();
+    listenerTime = source.listenerTime.snapshot();
+    fixes = source.fixes;
+    fallbacks = source.fallbacks;
+    connectFailures = source.connectFailures;
+    rejected = source.rejected;
+  }
+
+  @VisibleForTesting
+  void setClock(Clock clock) {
+    this.clock = clock;
+  }
+
+  /**
+   * Marks the provider as started.
+   *
+   * @param connecting whether it has to connect to a service before fixes can come
+   */
+  synchronized void started(boolean connecting) {
+    startedAt = clock.elapsedRealtime();
+    this.connecting = connecting;
+    waitingFirstFix = true;
+    lastFixAt = 0;
+  }
+
+  synchronized void connected() {
+    if (!connecting) return;
+    connecting = false;
+    connectTime.record(clock.elapsedRealtime() - startedAt);
+  }
+
+  synchronized void connectFailed() {
+    connecting = false;
+    connectFailures++;
+  }
+
+  synchronized void fix(Location location) {
+    long now = clock.elapsedRealtime();
+    fixes++;
+    if (waitingFirstFix) {
+      waitingFirstFix = false;
+      firstFixTime.record(now - startedAt);
+    } else if (lastFixAt > 0) fixInterval.record(now - lastFixAt);
+    lastFixAt = now;
+    if (location.hasAccuracy()) accuracy.record(Math.round(location.getAccuracy()));
+  }
+
+  synchronized void fallback() {
+    fallbacks++;
+  }
+
+  synchronized void rejected() {
+    rejected++;
+  }
+
+  /**
+   * Records how long a listener subscribed to the provider took to handle a fix.
+   */
+  void listened(long micros) {
+    listenerTime.record(micros);
+  }
+
+  @NonNull
+  public String getProvider() {
+    return provider;
+  }
+
+  public Histogram getConnectTime() {
+    return connectTime;
+  }
+
+  public Histogram getFirstFixTime() {
+    return firstFixTime;
+  }
+
+  public Histogram getFixInterval() {
+    return fixInterval;
+  }
+
+  public Histogram getAccuracy() {
+    return accuracy;
+  }
+
+  /**
+   * Each listener a {@link PromiseLocation.LocationControl} subscribed is timed on its own, counted
+   * against the provider the control runs, like {@link #getRejectedCount()}.
+   *
+   * @return how long the listeners took to handle each fix, in microseconds
+   */
+  public Histogram getListenerTime() {
+    return listenerTime;
+  }
+
+  public synchronized long getFixCount() {
+    return fixes;
+  }
+
+  /**
+   * @return how many times a {@link MultiFallBackLocationProvider} fell back from this provider
+   */
+  public synchronized long getFallbackCount() {
+    return fallbacks;
+  }
+
+  public synchronized long getConnectFailureCount() {
+    return connectFailures;
+  }
+
+  /**
+   * Rejections are counted against the provider a {@link PromiseLocation.LocationControl} runs. For
+   * a provider wrapping others, such as a {@link MultiFallBackLocationProvider}, that is the
+   * wrapper, not the wrapped provider that delivered the fix.
+   *
+   * @return how many fixes of this provider a {@link LocationFilter} dropped, counted once per fix
+   */
+  public synchronized long getRejectedCount() {
+    return rejected;
+  }
+
+  /**
+   * @return a copy of the current numbers
+   */
+  public synchronized ProviderMetrics snapshot() {
+    return new ProviderMetrics(this);
+  }
+
+  public synchronized void reset() {
+    connectTime.reset();
+    firstFixTime.reset();
+    fixInterval.reset();
+    accuracy.reset();
+    listenerTime.reset();
+    fixes = 0;
+    fallbacks = 0;
+    connectFailures = 0;
+    rejected = 0;
+  }
+}
@@ -33,6 +33,8 @@ import com.google.android.gms.location.ActivityRecognition;
 import com.google.android.gms.location.ActivityRecognitionResult;
 import com.google.android.gms.location.DetectedActivity;
 
+import promise.location.GoogleApiConnection;
+import promise.location.LocationTrace;
 import promise.location.GooglePlayServicesListener;
 import promise.location.Logger;
 
@@ -54,7 +56,8 @@ public class GooglePlayServicesActivityProvider
   private ActivityStore activityStore;
   private Context context;
   private boolean shouldStart = false;
-  private boolean stopped = false;
+  private boolean started = false;
+  private GoogleApiConnection connection;
   private PendingIntent pendingIntent;
   private ActivityParams activityParams;
   private BroadcastReceiver activityReceiver =
@@ -64,6 +67,7 @@ public class GooglePlayServicesActivityProvider
           if (BROADCAST_INTENT_ACTION.equals(intent.getAction())
               && intent.hasExtra(DETECTED_ACTIVITY_EXTRA_ID)) {
             logger.d("sending new activity");
+            LocationTrace.record(LocationTrace.BROADCAST, LocationTrace.ACTIVITY);
             DetectedActivity detectedActivity =
                 intent.getParcelableExtra(DETECTED_ACTIVITY_EXTRA_ID);
             notifyActivity(detectedActivity);
@@ -86,38 +90,37 @@ public class GooglePlayServicesActivityProvider
 
     activityStore = new ActivityStore();
 
-    if (!shouldStart) {
-      this.client =
-          new GoogleApiClient.Builder(context)
-              .addApi(ActivityRecognition.API)
-              .addConnectionCallbacks(this)
-              .addOnConnectionFailedListener(this)
-              .build();
-
-      client.connect();
-    } else logger.d("already started");
+    // connects lazily, on the first start
+    connection = GoogleApiConnection.get(context);
+    client = connection.getClient();
   }
 
   @Override
   public void start(ActivityUpdatedListener listener, @NonNull ActivityParams params) {
     this.activityParams = params;
     this.listener = listener;
+    LocationTrace.record(LocationTrace.START, LocationTrace.ACTIVITY);
 
     IntentFilter intentFilter = new IntentFilter(BROADCAST_INTENT_ACTION);
     context.registerReceiver(activityReceiver, intentFilter);
 
+    if (!started) {
+      started = true;
+      connection.acquire(this, this);
+    }
+
     if (client.isConnected()) startUpdating(params);
-    else if (stopped) {
-      shouldStart = true;
-      client.connect();
-      stopped = false;
-    } else {
+    else {
       shouldStart = true;
       logger.d("still not connected - scheduled start when connection is ok");
     }
   }
 
   private void startUpdating(ActivityParams params) {
+    if (client.isConnected() && !client.hasConnectedApi(ActivityRecognition.API)) {
+      logger.w("Activity recognition is not available on this device");
+      return;
+    }
     if (client.isConnected()) {
       pendingIntent =
           PendingIntent.getService(
@@ -134,9 +137,13 @@ public class GooglePlayServicesActivityProvider
   @Override
   public void stop() {
     logger.d("stop");
-    if (client.isConnected()) {
+    LocationTrace.record(LocationTrace.STOP, LocationTrace.ACTIVITY);
+    if (client.isConnected() && client.hasConnectedApi(ActivityRecognition.API)
+        && pendingIntent != null)
       ActivityRecognition.ActivityRecognitionApi.removeActivityUpdates(client, pendingIntent);
-      client.disconnect();
+    if (started) {
+      started = false;
+      connection.release(this, this);
     }
     try {
       context.unregisterReceiver(activityReceiver);
@@ -145,7 +152,6 @@ public class GooglePlayServicesActivityProvider
           "Silenced 'receiver not registered' stuff (calling stop more times than necessary did this)");
     }
     shouldStart = false;
-    stopped = true;
   }
 
   @Override
@@ -157,6 +163,7 @@ public class GooglePlayServicesActivityProvider
   @Override
   public void onConnected(Bundle bundle) {
     logger.d("onConnected");
+    LocationTrace.record(LocationTrace.CONNECTED, LocationTrace.ACTIVITY);
     if (shouldStart) startUpdating(activityParams);
     if (googlePlayServicesListener != null) googlePlayServicesListener.onConnected(bundle);
   }
@@ -164,19 +171,29 @@ public class GooglePlayServicesActivityProvider
   @Override
   public void onConnectionSuspended(int i) {
     logger.d("onConnectionSuspended " + i);
+    LocationTrace.record(LocationTrace.SUSPENDED, LocationTrace.ACTIVITY, i, 0, 0);
     if (googlePlayServicesListener != null) googlePlayServicesListener.onConnectionSuspended(i);
   }
 
   @Override
   public void onConnectionFailed(@NonNull ConnectionResult connectionResult) {
     logger.d("onConnectionFailed");
+    LocationTrace.record(
+        LocationTrace.CONNECT_FAILED,
+        LocationTrace.ACTIVITY,
+        connectionResult.getErrorCode(),
+        0,
+        0);
     if (googlePlayServicesListener != null)
       googlePlayServicesListener.onConnectionFailed(connectionResult);
   }
 
   private void notifyActivity(final DetectedActivity detectedActivity) {
     if (listener != null) listener.onActivityUpdated(detectedActivity);
-    if (activityStore != null) activityStore.put(GMS_ID, detectedActivity);
+    if (activityStore != null) {
+      activityStore.put(GMS_ID, detectedActivity);
+      LocationTrace.record(LocationTrace.STORE_WRITE, LocationTrace.ACTIVITY);
+    }
   }
 
   @Override
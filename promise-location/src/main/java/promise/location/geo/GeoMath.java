@@ -0,0 +1,207 @@
+/*
+ * Copyright 2017, Peter Vincent
+ * Licensed under the Apache License, Version 2.0, Android Promise.
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package promise.location.geo;
+
+/**
+ * Distance, bearing and position math on primitive doubles, with no allocations and no Android
+ * dependencies. Latitudes, longitudes and bearings are in degrees, distances in meters. <br>
+ * <br>
+ * Distances come in three {@link Accuracy tiers}, pick one per call:
+ * <ul>
+ * <li>{@link Accuracy#FAST}: equirectangular projection on a sphere. Within 0.1% of haversine up
+ * to 10 km and 1% up to 100 km below 70 degrees of latitude, degrading towards the poles and across the
+ * antimeridian. Use it for the short hops between consecutive fixes.</li>
+ * <li>{@link Accuracy#STANDARD}: haversine on a sphere of the mean earth radius. Within 0.6% of
+ * the ellipsoidal distance anywhere on earth.</li>
+ * <li>{@link Accuracy#PRECISE}: Vincenty's inverse formula on the WGS84 ellipsoid, within a
+ * millimeter. Costs a few iterations of trigonometry; for nearly antipodal points where it does
+ * not converge it falls back to haversine.</li>
+ * </ul>
+ * Bearing, destination and cross track math is spherical, with the same 0.6% bound as haversine.
+ */
+public final class GeoMath {
+
+  /**
+   * Mean earth radius in meters (IUGG).
+   */
+  public static final double EARTH_RADIUS = 6371008.8;
+
+  /**
+   * Meters per degree of latitude on the mean sphere.
+   */
+  public static final double METERS_PER_DEGREE = EARTH_RADIUS * Math.PI / 180;
+
+  private static final double WGS84_A = 6378137.0;
+  private static final double WGS84_F = 1 / 298.257223563;
+  private static final double WGS84_B = WGS84_A * (1 - WGS84_F);
+  private static final int VINCENTY_ITERATIONS = 100;
+  private static final double VINCENTY_CONVERGENCE = 1e-12;
+
+  private GeoMath() {
+  }
+
+  public static double distance(
+      double latitude1, double longitude1, double latitude2, double longitude2, Accuracy accuracy) {
+    switch (accuracy) {
+      case FAST:
+        return equirectangular(latitude1, longitude1, latitude2, longitude2);
+      case PRECISE:
+        return vincenty(latitude1, longitude1, latitude2, longitude2);
+      default:
+        return haversine(latitude1, longitude1, latitude2, longitude2);
+    }
+  }
+
+  public static double equirectangular(
+      double latitude1, double longitude1, double latitude2, double longitude2) {
+    double x =
+        Math.toRadians(longitude2 - longitude1)
+            * Math.cos(Math.toRadians((latitude1 + latitude2) / 2));
+    double y = Math.toRadians(latitude2 - latitude1);
+    return Math.sqrt(x * x + y * y) * EARTH_RADIUS;
+  }
+
+  public static double haversine(
+      double latitude1, double longitude1, double latitude2, double longitude2) {
+    double phi1 = Math.toRadians(latitude1);
+    double phi2 = Math.toRadians(latitude2);
+    double sinHalfPhi = Math.sin((phi2 - phi1) / 2);
+    double sinHalfLambda = Math.sin(Math.toRadians(longitude2 - longitude1) / 2);
+    double a =
+        sinHalfPhi * sinHalfPhi + Math.cos(phi1) * Math.cos(phi2) * sinHalfLambda * sinHalfLambda;
+    return 2 * EARTH_RADIUS * Math.asin(Math.min(1, Math.sqrt(a)));
+  }
+
+  public static double vincenty(
+      double latitude1, double longitude1, double latitude2, double longitude2) {
+    double l = Math.toRadians(longitude2 - longitude1);
+    double u1 = Math.atan((1 - WGS84_F) * Math.tan(Math.toRadians(latitude1)));
+    double u2 = Math.atan((1 - WGS84_F) * Math.tan(Math.toRadians(latitude2)));
+    double sinU1 = Math.sin(u1), cosU1 = Math.cos(u1);
+    double sinU2 = Math.sin(u2), cosU2 = Math.cos(u2);
+
+    double lambda = l;
+    for (int i = 0; i < VINCENTY_ITERATIONS; i++) {
+      double sinLambda = Math.sin(lambda), cosLambda = Math.cos(lambda);
+      double a = cosU2 * sinLambda;
+      double b = cosU1 * sinU2 - sinU1 * cosU2 * cosLambda;
+      double sinSigma = Math.sqrt(a * a + b * b);
+      if (sinSigma == 0) return 0;
+      double cosSigma = sinU1 * sinU2 + cosU1 * cosU2 * cosLambda;
+      double sigma = Math.atan2(sinSigma, cosSigma);
+      double sinAlpha = cosU1 * cosU2 * sinLambda / sinSigma;
+      double cosSqAlpha = 1 - sinAlpha * sinAlpha;
+      // on the equator cos^2(alpha) is 0 and the term vanishes
+      double cos2SigmaM = cosSqAlpha == 0 ? 0 : cosSigma - 2 * sinU1 * sinU2 / cosSqAlpha;
+      double c = WGS84_F / 16 * cosSqAlpha * (4 + WGS84_F * (4 - 3 * cosSqAlpha));
+      double previous = lambda;
+      lambda =
+          l
+              + (1 - c)
+                  * WGS84_F
+                  * sinAlpha
+                  * (sigma
+                      + c
+                          * sinSigma
+                          * (cos2SigmaM + c * cosSigma * (-1 + 2 * cos2SigmaM * cos2SigmaM)));
+      if (Math.abs(lambda - previous) < VINCENTY_CONVERGENCE) {
+        double uSq = cosSqAlpha * (WGS84_A * WGS84_A - WGS84_B * WGS84_B) / (WGS84_B * WGS84_B);
+        double bigA = 1 + uSq / 16384 * (4096 + uSq * (-768 + uSq * (320 - 175 * uSq)));
+        double bigB = uSq / 1024 * (256 + uSq * (-128 + uSq * (74 - 47 * uSq)));
+        double deltaSigma =
+            bigB
+                * sinSigma
+                * (cos2SigmaM
+                    + bigB
+                        / 4
+                        * (cosSigma * (-1 + 2 * cos2SigmaM * cos2SigmaM)
+                            - bigB
+                                / 6
+                                * cos2SigmaM
+                                * (-3 + 4 * sinSigma * sinSigma)
+                                * (-3 + 4 * cos2SigmaM * cos2SigmaM)));
+        return WGS84_B * bigA * (sigma - deltaSigma);
+      }
+    }
+    return haversine(latitude1, longitude1, latitude2, longitude2);
+  }
+
+  /**
+   * @return the initial great circle bearing from the first point to the second, in [0, 360)
+   */
+  public static double initialBearing(
+      double latitude1, double longitude1, double latitude2, double longitude2) {
+    double phi1 = Math.toRadians(latitude1);
+    double phi2 = Math.toRadians(latitude2);
+    double deltaLambda = Math.toRadians(longitude2 - longitude1);
+    double y = Math.sin(deltaLambda) * Math.cos(phi2);
+    double x =
+        Math.cos(phi1) * Math.sin(phi2) - Math.sin(phi1) * Math.cos(phi2) * Math.cos(deltaLambda);
+    double bearing = Math.toDegrees(Math.atan2(y, x));
+    return bearing < 0 ? bearing + 360 : bearing;
+  }
+
+  /**
+   * Moves along a great circle from a point and writes the destination into out as {latitude,
+   * longitude}, with the longitude normalized to [-180, 180).
+   */
+  public static void destination(
+      double latitude, double longitude, double bearing, double distance, double[] out) {
+    double phi1 = Math.toRadians(latitude);
+    double theta = Math.toRadians(bearing);
+    double delta = distance / EARTH_RADIUS;
+    double sinPhi1 = Math.sin(phi1), cosPhi1 = Math.cos(phi1);
+    double sinDelta = Math.sin(delta), cosDelta = Math.cos(delta);
+    double sinPhi2 = sinPhi1 * cosDelta + cosPhi1 * sinDelta * Math.cos(theta);
+    double phi2 = Math.asin(sinPhi2);
+    double lambda2 =
+        Math.toRadians(longitude)
+            + Math.atan2(Math.sin(theta) * sinDelta * cosPhi1, cosDelta - sinPhi1 * sinPhi2);
+    out[0] = Math.toDegrees(phi2);
+    out[1] = (Math.toDegrees(lambda2) + 540) % 360 - 180;
+  }
+
+  /**
+   * Distance of point p from the great circle through a and b, negative when p is left of the
+   * path from a to b and positive when it is right of it.
+   */
+  public static double crossTrackDistance(
+      double latitudeA,
+      double longitudeA,
+      double latitudeB,
+      double longitudeB,
+      double latitudeP,
+      double longitudeP) {
+    double deltaAP = haversine(latitudeA, longitudeA, latitudeP, longitudeP) / EARTH_RADIUS;
+    double thetaAP = Math.toRadians(initialBearing(latitudeA, longitudeA, latitudeP, longitudeP));
+    double thetaAB = Math.toRadians(initialBearing(latitudeA, longitudeA, latitudeB, longitudeB));
+    return Math.asin(Math.sin(deltaAP) * Math.sin(thetaAP - thetaAB)) * EARTH_RADIUS;
+  }
+
+  /**
+   * Meters per degree of longitude at a latitude, for local equirectangular projections.
+   */
+  public static double metersPerDegreeLongitude(double latitude) {
+    return METERS_PER_DEGREE * Math.cos(Math.toRadians(latitude));
+  }
+
+  /**
+   * Trade-off between speed and accuracy of a distance, see {@link GeoMath}.
+   */
+  public enum Accuracy {
+    FAST,
+    STANDARD,
+    PRECISE
+  }
+}
@@ -37,10 +37,11 @@ import com.google.android.gms.location.GeofencingEvent;
 import com.google.android.gms.location.LocationServices;
 
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.List;
 
+import promise.location.GoogleApiConnection;
 import promise.location.GooglePlayServicesListener;
+import promise.location.LocationTrace;
 import promise.location.Logger;
 
 public class GooglePlayServicesGeoFenceProvider
@@ -57,18 +58,15 @@ public class GooglePlayServicesGeoFenceProvider
   public static final String TRANSITION_EXTRA_ID = "transition";
   public static final String LOCATION_EXTRA_ID = "location";
 
-  private final List<Geofence> geofencesToAdd =
-      Collections.synchronizedList(new ArrayList<Geofence>());
-  private final List<String> geofencesToRemove =
-      Collections.synchronizedList(new ArrayList<String>());
   private final GooglePlayServicesListener googlePlayServicesListener;
+  private GoogleApiConnection connection;
   private GoogleApiClient client;
   private Logger logger;
   private GeoFencingTransitionListener listener;
   private GeoFenceStore geoFenceStore;
   private Context context;
   private PendingIntent pendingIntent;
-  private boolean stopped = false;
+  private boolean started = false;
   private BroadcastReceiver geofencingReceiver =
       new BroadcastReceiver() {
         @Override
@@ -78,6 +76,12 @@ public class GooglePlayServicesGeoFenceProvider
             logger.d("Received geofencing event");
             final int transitionType = intent.getIntExtra(TRANSITION_EXTRA_ID, -1);
             final List<String> geofencingIds = intent.getStringArrayListExtra(GEOFENCES_EXTRA_ID);
+            LocationTrace.record(
+                LocationTrace.BROADCAST,
+                LocationTrace.GEOFENCE,
+                transitionType,
+                geofencingIds.size(),
+                0);
             for (final String geofenceId : geofencingIds) {
               // Get GeofenceModel
               GeoFenceModel geofenceModel = geoFenceStore.get(geofenceId);
@@ -105,14 +109,9 @@ public class GooglePlayServicesGeoFenceProvider
 
     geoFenceStore = new GeoFenceStore();
 
-    this.client =
-        new GoogleApiClient.Builder(context)
-            .addApi(LocationServices.API)
-            .addConnectionCallbacks(this)
-            .addOnConnectionFailedListener(this)
-            .build();
-
-    client.connect();
+    // geofence operations queue on the shared connection until it is up
+    connection = GoogleApiConnection.get(context);
+    client = connection.getClient();
 
     pendingIntent =
         PendingIntent.getService(
@@ -131,32 +130,33 @@ public class GooglePlayServicesGeoFenceProvider
 
   @Override
   public void addGeoFences(List<GeoFenceModel> geofenceList) {
-    List<Geofence> convertedGeofences = new ArrayList<>();
+    final List<Geofence> convertedGeofences = new ArrayList<>();
     for (GeoFenceModel geofenceModel : geofenceList) {
       geoFenceStore.put(geofenceModel.getRequestId(), geofenceModel);
       convertedGeofences.add(geofenceModel.toGeoFence());
     }
-
-    if (client.isConnected()) {
-      if (geofencesToAdd.size() > 0) {
-        convertedGeofences.addAll(geofencesToAdd);
-        geofencesToAdd.clear();
-      }
-      if (ActivityCompat.checkSelfPermission(context, Manifest.permission.ACCESS_FINE_LOCATION)
-          != PackageManager.PERMISSION_GRANTED) {
-        // TODO: Consider calling
-        //    ActivityCompat#requestPermissions
-        // here to request the missing permissions, and then overriding
-        //   public void onRequestPermissionsResult(int requestCode, String[] permissions,
-        //                                          int[] grantResults)
-        // to handle the case where the user grants the permission. See the documentation
-        // for ActivityCompat#requestPermissions for more details.
-        return;
-      }
-      LocationServices.GeofencingApi.addGeofences(client, convertedGeofences, pendingIntent);
-
-    } else for (GeoFenceModel geofenceModel : geofenceList)
-      geofencesToAdd.add(geofenceModel.toGeoFence());
+    LocationTrace.record(
+        LocationTrace.STORE_WRITE, LocationTrace.GEOFENCE, geofenceList.size(), 0, 0);
+
+    connection.execute(
+        new GoogleApiConnection.Operation() {
+          @Override
+          public void run(GoogleApiClient client) {
+            if (ActivityCompat.checkSelfPermission(
+                    context, Manifest.permission.ACCESS_FINE_LOCATION)
+                != PackageManager.PERMISSION_GRANTED) {
+              // TODO: Consider calling
+              //    ActivityCompat#requestPermissions
+              // here to request the missing permissions, and then overriding
+              //   public void onRequestPermissionsResult(int requestCode, String[] permissions,
+              //                                          int[] grantResults)
+              // to handle the case where the user grants the permission. See the documentation
+              // for ActivityCompat#requestPermissions for more details.
+              return;
+            }
+            LocationServices.GeofencingApi.addGeofences(client, convertedGeofences, pendingIntent);
+          }
+        });
   }
 
   @Override
@@ -169,82 +169,71 @@ public class GooglePlayServicesGeoFenceProvider
   @Override
   public void removeGeoFences(List<String> geofenceIds) {
     for (String id : geofenceIds) geoFenceStore.remove(id);
-    if (client.isConnected()) {
-      if (geofencesToRemove.size() > 0) {
-        geofenceIds.addAll(geofencesToRemove);
-        geofencesToRemove.clear();
-      }
-      LocationServices.GeofencingApi.removeGeofences(client, geofenceIds);
-    } else geofencesToRemove.addAll(geofenceIds);
+    final List<String> ids = new ArrayList<>(geofenceIds);
+    connection.execute(
+        new GoogleApiConnection.Operation() {
+          @Override
+          public void run(GoogleApiClient client) {
+            LocationServices.GeofencingApi.removeGeofences(client, ids);
+          }
+        });
   }
 
   @Override
   public void start(GeoFencingTransitionListener listener) {
     this.listener = listener;
+    LocationTrace.record(LocationTrace.START, LocationTrace.GEOFENCE);
 
     IntentFilter intentFilter = new IntentFilter(BROADCAST_INTENT_ACTION);
     context.registerReceiver(geofencingReceiver, intentFilter);
 
+    if (!started) {
+      started = true;
+      connection.acquire(this, this);
+    }
     if (!client.isConnected())
       logger.d("still not connected - scheduled start when connection is ok");
-    else if (stopped) {
-      client.connect();
-      stopped = false;
-    }
   }
 
   @Override
   public void stop() {
     logger.d("stop");
-    if (client.isConnected()) client.disconnect();
+    LocationTrace.record(LocationTrace.STOP, LocationTrace.GEOFENCE);
+    if (started) {
+      started = false;
+      connection.release(this, this);
+    }
     try {
       context.unregisterReceiver(geofencingReceiver);
     } catch (IllegalArgumentException e) {
       logger.d(
           "Silenced 'receiver not registered' stuff (calling stop more times than necessary did this)");
     }
-    stopped = true;
   }
 
   @Override
   public void onConnected(Bundle bundle) {
     logger.d("onConnected");
-
-    // TODO wait until the connection is done and retry
-    if (client.isConnected()) {
-      if (geofencesToAdd.size() > 0) {
-        if (ActivityCompat.checkSelfPermission(context, Manifest.permission.ACCESS_FINE_LOCATION)
-            != PackageManager.PERMISSION_GRANTED) {
-          // TODO: Consider calling
-          //    ActivityCompat#requestPermissions
-          // here to request the missing permissions, and then overriding
-          //   public void onRequestPermissionsResult(int requestCode, String[] permissions,
-          //                                          int[] grantResults)
-          // to handle the case where the user grants the permission. See the documentation
-          // for ActivityCompat#requestPermissions for more details.
-          return;
-        }
-        LocationServices.GeofencingApi.addGeofences(client, geofencesToAdd, pendingIntent);
-        geofencesToAdd.clear();
-      }
-
-      if (geofencesToRemove.size() > 0) {
-        LocationServices.GeofencingApi.removeGeofences(client, geofencesToRemove);
-        geofencesToRemove.clear();
-      }
-    }
+    LocationTrace.record(LocationTrace.CONNECTED, LocationTrace.GEOFENCE);
     if (googlePlayServicesListener != null) googlePlayServicesListener.onConnected(bundle);
   }
 
   @Override
   public void onConnectionSuspended(int i) {
     logger.d("onConnectionSuspended " + i);
+    LocationTrace.record(LocationTrace.SUSPENDED, LocationTrace.GEOFENCE, i, 0, 0);
     if (googlePlayServicesListener != null) googlePlayServicesListener.onConnectionSuspended(i);
   }
 
   @Override
   public void onConnectionFailed(@NonNull ConnectionResult connectionResult) {
     logger.d("onConnectionFailed");
+    LocationTrace.record(
+        LocationTrace.CONNECT_FAILED,
+        LocationTrace.GEOFENCE,
+        connectionResult.getErrorCode(),
+        0,
+        0);
     if (googlePlayServicesListener != null)
       googlePlayServicesListener.onConnectionFailed(connectionResult);
   }
@@ -0,0 +1,126 @@
+/*
+ * Copyright 2017, Peter Vincent
+ * Licensed under the Apache License, Version 2.0, Android Promise.
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package promise.location.track;
+
+import android.location.Location;
+
+import androidx.annotation.NonNull;
+
+import promise.location.LocationUpdatedListener;
+import promise.location.geo.GeoMath;
+
+/**
+ * Simplifies a live fix stream to a tolerance in meters with bounded memory, using an opening
+ * window: points are buffered after the last emitted point until one of them strays further than
+ * the tolerance from the line to the newest fix, at which point the fix before the newest is
+ * emitted and becomes the new anchor. <br>
+ * <br>
+ * At most {@code windowSize} fixes are buffered; when the window fills up the newest fix is
+ * emitted regardless, so each fix costs at most one pass over the window. The first fix is emitted
+ * immediately, the last one only on {@link #flush()}.
+ *
+ * <pre>
+ * StreamingSimplifier simplifier = new StreamingSimplifier(5, new StreamingSimplifier.Sink() {
+ *   public void onPoint(double latitude, double longitude, long time) {
+ *     polyline.add(latitude, longitude);
+ *   }
+ * });
+ * PromiseLocation.with(context).location().start(simplifier);
+ * </pre>
+ */
+public class StreamingSimplifier implements LocationUpdatedListener {
+
+  public static final int DEFAULT_WINDOW_SIZE = 128;
+
+  private final double tolerance;
+  private final Sink sink;
+  private final double[] latitudes;
+  private final double[] longitudes;
+  private final long[] times;
+  private int size;
+
+  public StreamingSimplifier(double toleranceMeters, @NonNull Sink sink) {
+    this(toleranceMeters, DEFAULT_WINDOW_SIZE, sink);
+  }
+
+  public StreamingSimplifier(double toleranceMeters, int windowSize, @NonNull Sink sink) {
+    if (windowSize < 3) throw new IllegalArgumentException("windowSize must be at least 3");
+    this.tolerance = toleranceMeters * toleranceMeters;
+    this.sink = sink;
+    this.latitudes = new double[windowSize];
+    this.longitudes = new double[windowSize];
+    this.times = new long[windowSize];
+  }
+
+  @Override
+  public void onLocationUpdated(Location location) {
+    add(location.getLatitude(), location.getLongitude(), location.getTime());
+  }
+
+  public synchronized void add(double latitude, double longitude, long time) {
+    latitudes[size] = latitude;
+    longitudes[size] = longitude;
+    times[size] = time;
+    size++;
+    if (size == 1) {
+      sink.onPoint(latitude, longitude, time);
+      return;
+    }
+    if (size >= 3 && exceedsTolerance()) {
+      // the previous fix is the last one the line from the anchor still covered
+      emitAndAnchor(size - 2);
+    }
+    if (size == latitudes.length) emitAndAnchor(size - 1);
+  }
+
+  /**
+   * Emits the newest buffered fix, if it has not been emitted yet. Call at the end of a track.
+   */
+  public synchronized void flush() {
+    if (size > 1) emitAndAnchor(size - 1);
+  }
+
+  private boolean exceedsTolerance() {
+    double metersPerDegree = GeoMath.METERS_PER_DEGREE;
+    double scale = GeoMath.metersPerDegreeLongitude(latitudes[0]);
+    int last = size - 1;
+    double bx = (longitudes[last] - longitudes[0]) * scale;
+    double by = (latitudes[last] - latitudes[0]) * metersPerDegree;
+    for (int i = 1; i < last; i++) {
+      double px = (longitudes[i] - longitudes[0]) * scale;
+      double py = (latitudes[i] - latitudes[0]) * metersPerDegree;
+      if (TrackSimplifier.segmentDistanceSquared(px, py, 0, 0, bx, by) > tolerance) return true;
+    }
+    return false;
+  }
+
+  /**
+   * Emits the buffered fix at index and restarts the window from it.
+   */
+  private void emitAndAnchor(int index) {
+    sink.onPoint(latitudes[index], longitudes[index], times[index]);
+    int remaining = size - index;
+    System.arraycopy(latitudes, index, latitudes, 0, remaining);
+    System.arraycopy(longitudes, index, longitudes, 0, remaining);
+    System.arraycopy(times, index, times, 0, remaining);
+    size = remaining;
+  }
+
+  /**
+   * Receives the simplified points in order.
+   */
+  public interface Sink {
+    void onPoint(double latitude, double longitude, long time);
+  }
+}
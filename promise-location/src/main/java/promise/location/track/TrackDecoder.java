@@ -0,0 +1,130 @@
+/*
+ * Copyright 2017, Peter Vincent
+ * Licensed under the Apache License, Version 2.0, Android Promise.
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package promise.location.track;
+
+import android.location.Location;
+
+import androidx.annotation.NonNull;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Streams fixes back out of a track written by a {@link TrackEncoder}:
+ *
+ * <pre>
+ * TrackDecoder decoder = new TrackDecoder(new BufferedInputStream(new FileInputStream(file)));
+ * while (decoder.next()) {
+ *   draw(decoder.getLatitude(), decoder.getLongitude());
+ * }
+ * </pre>
+ * <p>
+ * Bytes are read one at a time, so wrap unbuffered streams in a {@link
+ * java.io.BufferedInputStream}.
+ */
+public class TrackDecoder {
+
+  private final InputStream stream;
+  private final ByteBuffer buffer;
+  private boolean started;
+  private long time;
+  private long latitude;
+  private long longitude;
+  private long accuracy;
+
+  public TrackDecoder(@NonNull InputStream stream) {
+    this.stream = stream;
+    this.buffer = null;
+  }
+
+  /**
+   * Decodes from the buffer's position up to its limit.
+   */
+  public TrackDecoder(@NonNull ByteBuffer buffer) {
+    this.stream = null;
+    this.buffer = buffer;
+  }
+
+  /**
+   * Moves to the next fix.
+   *
+   * @return false at the end of the track
+   * @throws IOException if the track is truncated in the middle of a fix or has an unknown version
+   */
+  public boolean next() throws IOException {
+    int first = read();
+    if (first < 0) return false;
+    if (!started) {
+      if (first != TrackEncoder.VERSION)
+        throw new IOException("Unsupported track encoding version " + first);
+      started = true;
+      first = read();
+      if (first < 0) return false;
+    }
+    time += Varint.unZigZag(readVarint(first));
+    latitude += Varint.unZigZag(readVarint(read()));
+    longitude += Varint.unZigZag(readVarint(read()));
+    accuracy = readVarint(read());
+    return true;
+  }
+
+  public long getTime() {
+    return time;
+  }
+
+  public double getLatitude() {
+    return latitude / TrackEncoder.E7;
+  }
+
+  public double getLongitude() {
+    return longitude / TrackEncoder.E7;
+  }
+
+  public float getAccuracy() {
+    return accuracy / 10f;
+  }
+
+  /**
+   * Copies the current fix into a new {@link Location}.
+   */
+  public Location toLocation(String provider) {
+    Location location = new Location(provider);
+    location.setTime(getTime());
+    location.setLatitude(getLatitude());
+    location.setLongitude(getLongitude());
+    location.setAccuracy(getAccuracy());
+    return location;
+  }
+
+  private long readVarint(int first) throws IOException {
+    long value = 0;
+    int shift = 0;
+    int current = first;
+    while (true) {
+      if (current < 0) throw new EOFException("Track ends in the middle of a fix");
+      value |= (long) (current & 0x7F) << shift;
+      if ((current & 0x80) == 0) return value;
+      shift += 7;
+      if (shift >= 64) throw new IOException("Malformed varint");
+      current = read();
+    }
+  }
+
+  private int read() throws IOException {
+    if (stream != null) return stream.read();
+    return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+  }
+}
@@ -0,0 +1,112 @@
+/*
+ * Copyright 2017, Peter Vincent
+ * Licensed under the Apache License, Version 2.0, Android Promise.
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package promise.location.track;
+
+import android.location.Location;
+
+import androidx.annotation.NonNull;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Streams fixes into a compact track encoding for storage and sync. <br>
+ * <br>
+ * Coordinates are quantized to E7 fixed point (1e-7 degrees, about 1.1 cm at the equator), time
+ * is kept in milliseconds and accuracy in decimeters. Time, latitude and longitude are written as
+ * the difference from the previous fix, ZigZag and varint packed, so a 1 Hz walking or driving
+ * track costs about 7 bytes per fix instead of the ~50 of a raw record. A decoded track matches
+ * the input within half an E7 unit per coordinate and 5 cm of accuracy; times are exact. <br>
+ * <br>
+ * The stream starts with a version byte followed by the records, it can be read back with a
+ * {@link TrackDecoder}. An encoder keeps the previous fix as its only state, so it is cheap to
+ * keep one per recording session:
+ *
+ * <pre>
+ * final TrackEncoder encoder = new TrackEncoder(new FileOutputStream(file));
+ * PromiseLocation.with(context).location().start(new LocationUpdatedListener() {
+ *   public void onLocationUpdated(Location location) {
+ *     encoder.encode(location);
+ *   }
+ * });
+ * </pre>
+ */
+public class TrackEncoder {
+
+  static final int VERSION = 1;
+  static final double E7 = 1e7;
+
+  private static final int MAX_RECORD_LENGTH = 4 * Varint.MAX_LENGTH;
+
+  private final OutputStream stream;
+  private final ByteBuffer buffer;
+  private final byte[] scratch = new byte[1 + MAX_RECORD_LENGTH];
+  private boolean started;
+  private long lastTime;
+  private long lastLatitude;
+  private long lastLongitude;
+  private int count;
+
+  public TrackEncoder(@NonNull OutputStream stream) {
+    this.stream = stream;
+    this.buffer = null;
+  }
+
+  /**
+   * Encodes into the buffer from its current position.
+   *
+   * @throws java.nio.BufferOverflowException from {@link #encode} once the buffer is full
+   */
+  public TrackEncoder(@NonNull ByteBuffer buffer) {
+    this.stream = null;
+    this.buffer = buffer;
+  }
+
+  public void encode(@NonNull Location location) throws IOException {
+    encode(
+        location.getTime(), location.getLatitude(), location.getLongitude(), location.getAccuracy());
+  }
+
+  public void encode(long time, double latitude, double longitude, float accuracy)
+      throws IOException {
+    int length = 0;
+    if (!started) scratch[length++] = VERSION;
+    long e7Latitude = Math.round(latitude * E7);
+    long e7Longitude = Math.round(longitude * E7);
+    length = Varint.write(scratch, length, Varint.zigZag(time - lastTime));
+    length = Varint.write(scratch, length, Varint.zigZag(e7Latitude - lastLatitude));
+    length = Varint.write(scratch, length, Varint.zigZag(e7Longitude - lastLongitude));
+    length = Varint.write(scratch, length, Math.max(0, Math.round(accuracy * 10)));
+    if (stream != null) stream.write(scratch, 0, length);
+    else buffer.put(scratch, 0, length);
+    // only once written, so a fix that did not fit is retried with the version byte
+    started = true;
+    lastTime = time;
+    lastLatitude = e7Latitude;
+    lastLongitude = e7Longitude;
+    count++;
+  }
+
+  /**
+   * @return the number of fixes encoded so far
+   */
+  public int getCount() {
+    return count;
+  }
+
+  public void flush() throws IOException {
+    if (stream != null) stream.flush();
+  }
+}
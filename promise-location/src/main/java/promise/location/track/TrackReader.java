@@ -0,0 +1,123 @@
+/*
+ * Copyright 2017, Peter Vincent
+ * Licensed under the Apache License, Version 2.0, Android Promise.
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package promise.location.track;
+
+import android.location.Location;
+
+import androidx.annotation.NonNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+
+/**
+ * Streams the records of a track written by a {@link TrackRecorder}, oldest first, one segment
+ * mapped at a time:
+ *
+ * <pre>
+ * TrackReader reader = new TrackReader(recorder.getDirectory());
+ * while (reader.next()) {
+ *   upload(reader.getTime(), reader.getLatitude(), reader.getLongitude());
+ * }
+ * </pre>
+ * <p>
+ * Reading stops at the tail of the track, the first record that is empty or was torn by process
+ * death.
+ */
+public class TrackReader {
+
+  private final File directory;
+  private final int[] sequences;
+  private int segmentIndex = -1;
+  private MappedByteBuffer segment;
+  private int capacity;
+  private int position = -1;
+
+  public TrackReader(@NonNull File directory) {
+    this.directory = directory;
+    this.sequences = TrackSegment.sequences(directory);
+  }
+
+  /**
+   * Moves to the next record.
+   *
+   * @return false once the tail of the track is reached
+   */
+  public boolean next() throws IOException {
+    while (true) {
+      if (segment != null && position + 1 < capacity) {
+        if (TrackSegment.isValid(segment, position + 1)) {
+          position++;
+          return true;
+        }
+        // a partially written segment is always the last one
+        segment = null;
+        segmentIndex = sequences.length;
+        return false;
+      }
+      if (segmentIndex + 1 >= sequences.length) return false;
+      segmentIndex++;
+      segment = TrackSegment.map(TrackSegment.file(directory, sequences[segmentIndex]));
+      if (!TrackSegment.isTrackSegment(segment)) {
+        segment = null;
+        continue;
+      }
+      capacity = TrackSegment.capacity(segment);
+      position = -1;
+    }
+  }
+
+  public long getTime() {
+    return TrackSegment.time(segment, position);
+  }
+
+  public double getLatitude() {
+    return TrackSegment.latitude(segment, position);
+  }
+
+  public double getLongitude() {
+    return TrackSegment.longitude(segment, position);
+  }
+
+  public double getAltitude() {
+    return TrackSegment.altitude(segment, position);
+  }
+
+  public float getAccuracy() {
+    return TrackSegment.accuracy(segment, position);
+  }
+
+  public float getSpeed() {
+    return TrackSegment.speed(segment, position);
+  }
+
+  public float getBearing() {
+    return TrackSegment.bearing(segment, position);
+  }
+
+  /**
+   * Copies the current record into a new {@link Location}.
+   */
+  public Location toLocation(String provider) {
+    Location location = new Location(provider);
+    location.setTime(getTime());
+    location.setLatitude(getLatitude());
+    location.setLongitude(getLongitude());
+    location.setAltitude(getAltitude());
+    location.setAccuracy(getAccuracy());
+    location.setSpeed(getSpeed());
+    location.setBearing(getBearing());
+    return location;
+  }
+}
@@ -0,0 +1,147 @@
+/*
+ * Copyright 2017, Peter Vincent
+ * Licensed under the Apache License, Version 2.0, Android Promise.
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package promise.location.track;
+
+import android.content.Context;
+import android.location.Location;
+
+import androidx.annotation.NonNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+
+import promise.location.LocationUpdatedListener;
+
+/**
+ * Appends fixes to a memory-mapped, append-only track log for long recording sessions. Each fix is
+ * a fixed-size record written with a few absolute puts into the current segment, so an append
+ * costs microseconds; when a segment is full the recorder rolls over to the next one. <br>
+ * <br>
+ * The recorder is a {@link LocationUpdatedListener}, so it is fed straight from the provider
+ * callback path:
+ *
+ * <pre>
+ * TrackRecorder recorder = new TrackRecorder(context, "shift-42");
+ * PromiseLocation.with(context).location().config(LocationParams.NAVIGATION).start(recorder);
+ * </pre>
+ * <p>
+ * Records are checksummed, so after the process dies the track ends at the last complete record
+ * and a new recorder on the same directory continues appending right after it. Read a track back
+ * with a {@link TrackReader}.
+ */
+public class TrackRecorder implements LocationUpdatedListener {
+
+  public static final int DEFAULT_SEGMENT_CAPACITY = 16384;
+
+  private static final String DIRECTORY = "promise_location_tracks";
+
+  private final File directory;
+  private final int segmentCapacity;
+  private MappedByteBuffer segment;
+  private int sequence;
+  private int position;
+  private boolean closed;
+
+  public TrackRecorder(@NonNull Context context, @NonNull String name) throws IOException {
+    this(new File(new File(context.getFilesDir(), DIRECTORY), name), DEFAULT_SEGMENT_CAPACITY);
+  }
+
+  /**
+   * @param directory       the directory holding the track's segments, created when missing
+   * @param segmentCapacity number of records per segment file
+   */
+  public TrackRecorder(@NonNull File directory, int segmentCapacity) throws IOException {
+    if (segmentCapacity <= 0) throw new IllegalArgumentException("segmentCapacity must be positive");
+    if (!directory.exists() && !directory.mkdirs())
+      throw new IOException("Unable to create " + directory);
+    this.directory = directory;
+    this.segmentCapacity = segmentCapacity;
+    open();
+  }
+
+  public File getDirectory() {
+    return directory;
+  }
+
+  @Override
+  public void onLocationUpdated(Location location) {
+    append(
+        location.getTime(),
+        location.getLatitude(),
+        location.getLongitude(),
+        location.getAltitude(),
+        location.getAccuracy(),
+        location.getSpeed(),
+        location.getBearing());
+  }
+
+  /**
+   * Appends a fix to the track.
+   *
+   * @return false if the recorder is closed or the next segment could not be created
+   */
+  public synchronized boolean append(
+      long time,
+      double latitude,
+      double longitude,
+      double altitude,
+      float accuracy,
+      float speed,
+      float bearing) {
+    if (closed) return false;
+    if (position == TrackSegment.capacity(segment)) {
+      try {
+        roll();
+      } catch (IOException e) {
+        return false;
+      }
+    }
+    TrackSegment.write(
+        segment, position++, time, latitude, longitude, altitude, accuracy, speed, bearing);
+    return true;
+  }
+
+  /**
+   * Forces the current segment to the storage device. Appended records already survive process
+   * death without this, it only matters when the device itself may lose power.
+   */
+  public synchronized void flush() {
+    if (!closed) segment.force();
+  }
+
+  public synchronized void close() {
+    if (closed) return;
+    segment.force();
+    closed = true;
+    segment = null;
+  }
+
+  private void open() throws IOException {
+    int[] sequences = TrackSegment.sequences(directory);
+    sequence = sequences.length == 0 ? 0 : sequences[sequences.length - 1];
+    segment = TrackSegment.map(TrackSegment.file(directory, sequence), segmentCapacity);
+    // find the tail, the first record that was never completely written
+    int capacity = TrackSegment.capacity(segment);
+    position = 0;
+    while (position < capacity && TrackSegment.isValid(segment, position)) position++;
+  }
+
+  private void roll() throws IOException {
+    segment.force();
+    segment = TrackSegment.map(TrackSegment.file(directory, sequence + 1), segmentCapacity);
+    sequence++;
+    position = 0;
+  }
+}
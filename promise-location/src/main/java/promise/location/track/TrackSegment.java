@@ -0,0 +1,215 @@
+/*
+ * Copyright 2017, Peter Vincent
+ * Licensed under the Apache License, Version 2.0, Android Promise.
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package promise.location.track;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * On-disk layout shared by {@link TrackRecorder} and {@link TrackReader}. A track is a directory of
+ * numbered, pre-sized segment files, each holding a 16 byte header followed by fixed-size records:
+ *
+ * <pre>
+ * offset  size  field
+ *      0     8  time (long)
+ *      8     8  latitude (double)
+ *     16     8  longitude (double)
+ *     24     8  altitude (double)
+ *     32     4  accuracy (float)
+ *     36     4  speed (float)
+ *     40     4  bearing (float)
+ *     44     4  checksum, written last and never 0
+ * </pre>
+ * <p>
+ * A record whose checksum does not match its fields marks the tail of the track, so a record torn
+ * by process death is simply not part of it.
+ */
+final class TrackSegment {
+
+  static final int MAGIC = 0x504c544b; // PLTK
+  static final int VERSION = 1;
+  static final int HEADER_SIZE = 16;
+  static final int RECORD_SIZE = 48;
+
+  private static final String PREFIX = "track-";
+  private static final String EXTENSION = ".seg";
+
+  private static final int TIME = 0;
+  private static final int LATITUDE = 8;
+  private static final int LONGITUDE = 16;
+  private static final int ALTITUDE = 24;
+  private static final int ACCURACY = 32;
+  private static final int SPEED = 36;
+  private static final int BEARING = 40;
+  private static final int CHECKSUM = 44;
+
+  private TrackSegment() {
+  }
+
+  static File file(File directory, int sequence) {
+    return new File(directory, String.format(Locale.US, "%s%08d%s", PREFIX, sequence, EXTENSION));
+  }
+
+  /**
+   * @return the sequence numbers of the segments in the directory, oldest first
+   */
+  static int[] sequences(File directory) {
+    String[] names = directory.list();
+    if (names == null) return new int[0];
+    int[] sequences = new int[names.length];
+    int count = 0;
+    for (String name : names) {
+      if (!name.startsWith(PREFIX) || !name.endsWith(EXTENSION)) continue;
+      try {
+        sequences[count++] =
+            Integer.parseInt(name.substring(PREFIX.length(), name.length() - EXTENSION.length()));
+      } catch (NumberFormatException ignored) {
+      }
+    }
+    sequences = Arrays.copyOf(sequences, count);
+    Arrays.sort(sequences);
+    return sequences;
+  }
+
+  /**
+   * Maps a segment for reading, as large as the file currently is.
+   */
+  static MappedByteBuffer map(File file) throws IOException {
+    RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+    try {
+      return randomAccessFile
+          .getChannel()
+          .map(FileChannel.MapMode.READ_ONLY, 0, randomAccessFile.length());
+    } finally {
+      randomAccessFile.close();
+    }
+  }
+
+  /**
+   * Maps a segment for writing, creating and pre-sizing it to hold capacity records when needed.
+   */
+  static MappedByteBuffer map(File file, int capacity) throws IOException {
+    long size = HEADER_SIZE + (long) capacity * RECORD_SIZE;
+    RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+    try {
+      if (randomAccessFile.length() < size) randomAccessFile.setLength(size);
+      MappedByteBuffer buffer =
+          randomAccessFile
+              .getChannel()
+              .map(FileChannel.MapMode.READ_WRITE, 0, randomAccessFile.length());
+      if (buffer.getInt(0) != MAGIC) {
+        buffer.putInt(4, VERSION);
+        buffer.putInt(8, RECORD_SIZE);
+        buffer.putInt(12, capacity);
+        buffer.putInt(0, MAGIC);
+      }
+      return buffer;
+    } finally {
+      // the mapping stays valid after the file is closed
+      randomAccessFile.close();
+    }
+  }
+
+  static boolean isTrackSegment(MappedByteBuffer buffer) {
+    return buffer.capacity() >= HEADER_SIZE
+        && buffer.getInt(0) == MAGIC
+        && buffer.getInt(8) == RECORD_SIZE;
+  }
+
+  /**
+   * @return the number of records the segment was created with
+   */
+  static int capacity(MappedByteBuffer buffer) {
+    return Math.min(buffer.getInt(12), (buffer.capacity() - HEADER_SIZE) / RECORD_SIZE);
+  }
+
+  static int offset(int index) {
+    return HEADER_SIZE + index * RECORD_SIZE;
+  }
+
+  static void write(
+      MappedByteBuffer buffer,
+      int index,
+      long time,
+      double latitude,
+      double longitude,
+      double altitude,
+      float accuracy,
+      float speed,
+      float bearing) {
+    int offset = offset(index);
+    buffer.putInt(offset + CHECKSUM, 0);
+    buffer.putLong(offset + TIME, time);
+    buffer.putDouble(offset + LATITUDE, latitude);
+    buffer.putDouble(offset + LONGITUDE, longitude);
+    buffer.putDouble(offset + ALTITUDE, altitude);
+    buffer.putFloat(offset + ACCURACY, accuracy);
+    buffer.putFloat(offset + SPEED, speed);
+    buffer.putFloat(offset + BEARING, bearing);
+    buffer.putInt(offset + CHECKSUM, checksum(buffer, offset));
+  }
+
+  static boolean isValid(MappedByteBuffer buffer, int index) {
+    int offset = offset(index);
+    if (offset + RECORD_SIZE > buffer.capacity()) return false;
+    int checksum = buffer.getInt(offset + CHECKSUM);
+    return checksum != 0 && checksum == checksum(buffer, offset);
+  }
+
+  static long time(MappedByteBuffer buffer, int index) {
+    return buffer.getLong(offset(index) + TIME);
+  }
+
+  static double latitude(MappedByteBuffer buffer, int index) {
+    return buffer.getDouble(offset(index) + LATITUDE);
+  }
+
+  static double longitude(MappedByteBuffer buffer, int index) {
+    return buffer.getDouble(offset(index) + LONGITUDE);
+  }
+
+  static double altitude(MappedByteBuffer buffer, int index) {
+    return buffer.getDouble(offset(index) + ALTITUDE);
+  }
+
+  static float accuracy(MappedByteBuffer buffer, int index) {
+    return buffer.getFloat(offset(index) + ACCURACY);
+  }
+
+  static float speed(MappedByteBuffer buffer, int index) {
+    return buffer.getFloat(offset(index) + SPEED);
+  }
+
+  static float bearing(MappedByteBuffer buffer, int index) {
+    return buffer.getFloat(offset(index) + BEARING);
+  }
+
+  /**
+   * FNV-1a over the eleven 32 bit words of the record body, forced to be non zero so an empty
+   * record never validates.
+   */
+  private static int checksum(MappedByteBuffer buffer, int offset) {
+    int hash = 0x811c9dc5;
+    for (int word = 0; word < CHECKSUM; word += 4) {
+      hash ^= buffer.getInt(offset + word);
+      hash *= 0x01000193;
+    }
+    return hash == 0 ? 1 : hash;
+  }
+}
@@ -0,0 +1,250 @@
+/*
+ * Copyright 2017, Peter Vincent
+ * Licensed under the Apache License, Version 2.0, Android Promise.
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package promise.location.track;
+
+import java.util.Arrays;
+
+import promise.location.geo.GeoMath;
+
+/**
+ * Reduces a recorded polyline to the points needed to draw or upload it within a tolerance in
+ * meters. Both algorithms work on parallel latitude and longitude arrays and return the indices of
+ * the points to keep, first and last always included. <br>
+ * <br>
+ * Distances are measured in a local equirectangular projection centered on the first point, which
+ * is accurate to well under a percent over the few tens of kilometers a track spans. For live fix
+ * streams use a {@link StreamingSimplifier}.
+ */
+public final class TrackSimplifier {
+
+  private TrackSimplifier() {
+  }
+
+  /**
+   * Ramer-Douglas-Peucker: keeps every point that is further than the tolerance from the
+   * simplified line. Iterative, so very long tracks do not overflow the stack.
+   *
+   * @param count number of points to read from the arrays
+   * @return the indices of the points to keep, in order
+   */
+  public static int[] douglasPeucker(
+      double[] latitudes, double[] longitudes, int count, double toleranceMeters) {
+    if (count <= 2) return range(count);
+    double[] x = new double[count];
+    double[] y = new double[count];
+    project(latitudes, longitudes, count, x, y);
+    double tolerance = toleranceMeters * toleranceMeters;
+
+    boolean[] keep = new boolean[count];
+    keep[0] = keep[count - 1] = true;
+    int[] stack = new int[64];
+    int top = 0;
+    stack[top++] = 0;
+    stack[top++] = count - 1;
+    while (top > 0) {
+      int last = stack[--top];
+      int first = stack[--top];
+      double farthest = -1;
+      int index = -1;
+      for (int i = first + 1; i < last; i++) {
+        double distance = segmentDistanceSquared(x[i], y[i], x[first], y[first], x[last], y[last]);
+        if (distance > farthest) {
+          farthest = distance;
+          index = i;
+        }
+      }
+      if (index < 0 || farthest <= tolerance) continue;
+      keep[index] = true;
+      if (top + 4 > stack.length) stack = Arrays.copyOf(stack, stack.length * 2);
+      stack[top++] = first;
+      stack[top++] = index;
+      stack[top++] = index;
+      stack[top++] = last;
+    }
+    return indices(keep);
+  }
+
+  /**
+   * Visvalingam-Whyatt: repeatedly drops the point spanning the smallest triangle with its
+   * neighbours until every remaining triangle is at least the tolerance squared, which removes
+   * small wiggles more evenly than Douglas-Peucker.
+   *
+   * @param count number of points to read from the arrays
+   * @return the indices of the points to keep, in order
+   */
+  public static int[] visvalingam(
+      double[] latitudes, double[] longitudes, int count, double toleranceMeters) {
+    if (count <= 2) return range(count);
+    double[] x = new double[count];
+    double[] y = new double[count];
+    project(latitudes, longitudes, count, x, y);
+    double threshold = toleranceMeters * toleranceMeters;
+
+    int[] previous = new int[count];
+    int[] next = new int[count];
+    double[] area = new double[count];
+    for (int i = 0; i < count; i++) {
+      previous[i] = i - 1;
+      next[i] = i + 1;
+    }
+    // interior points only, the end points are never removed
+    AreaHeap heap = new AreaHeap(area, count);
+    for (int i = 1; i < count - 1; i++) {
+      area[i] = triangleArea(x, y, i - 1, i, i + 1);
+      heap.push(i);
+    }
+
+    boolean[] keep = new boolean[count];
+    Arrays.fill(keep, true);
+    while (!heap.isEmpty()) {
+      int point = heap.peek();
+      double removed = area[point];
+      if (removed >= threshold) break;
+      heap.pop();
+      keep[point] = false;
+      int before = previous[point];
+      int after = next[point];
+      next[before] = after;
+      previous[after] = before;
+      // a neighbour never gets a smaller effective area than the point just removed
+      if (before > 0) {
+        area[before] = Math.max(removed, triangleArea(x, y, previous[before], before, after));
+        heap.update(before);
+      }
+      if (after < count - 1) {
+        area[after] = Math.max(removed, triangleArea(x, y, before, after, next[after]));
+        heap.update(after);
+      }
+    }
+    return indices(keep);
+  }
+
+  /**
+   * Projects the points onto a local plane in meters centered on the first point.
+   */
+  static void project(double[] latitudes, double[] longitudes, int count, double[] x, double[] y) {
+    double scale = GeoMath.metersPerDegreeLongitude(latitudes[0]);
+    for (int i = 0; i < count; i++) {
+      x[i] = (longitudes[i] - longitudes[0]) * scale;
+      y[i] = (latitudes[i] - latitudes[0]) * GeoMath.METERS_PER_DEGREE;
+    }
+  }
+
+  /**
+   * Squared distance from point p to the segment a-b.
+   */
+  static double segmentDistanceSquared(
+      double px, double py, double ax, double ay, double bx, double by) {
+    double dx = bx - ax;
+    double dy = by - ay;
+    double length = dx * dx + dy * dy;
+    double t = length == 0 ? 0 : ((px - ax) * dx + (py - ay) * dy) / length;
+    if (t < 0) t = 0;
+    else if (t > 1) t = 1;
+    double ex = ax + t * dx - px;
+    double ey = ay + t * dy - py;
+    return ex * ex + ey * ey;
+  }
+
+  private static double triangleArea(double[] x, double[] y, int a, int b, int c) {
+    return Math.abs((x[b] - x[a]) * (y[c] - y[a]) - (x[c] - x[a]) * (y[b] - y[a])) / 2;
+  }
+
+  private static int[] range(int count) {
+    int[] indices = new int[count];
+    for (int i = 0; i < count; i++) indices[i] = i;
+    return indices;
+  }
+
+  private static int[] indices(boolean[] keep) {
+    int size = 0;
+    for (boolean kept : keep) if (kept) size++;
+    int[] indices = new int[size];
+    int position = 0;
+    for (int i = 0; i < keep.length; i++) if (keep[i]) indices[position++] = i;
+    return indices;
+  }
+
+  /**
+   * Binary min heap of point indices ordered by their area, with the heap position of each point
+   * tracked so areas can be updated in place.
+   */
+  private static class AreaHeap {
+    private final double[] area;
+    private final int[] heap;
+    private final int[] position;
+    private int size;
+
+    AreaHeap(double[] area, int capacity) {
+      this.area = area;
+      this.heap = new int[capacity];
+      this.position = new int[capacity];
+    }
+
+    boolean isEmpty() {
+      return size == 0;
+    }
+
+    int peek() {
+      return heap[0];
+    }
+
+    void push(int point) {
+      heap[size] = point;
+      position[point] = size;
+      up(size++);
+    }
+
+    void pop() {
+      swap(0, --size);
+      down(0);
+    }
+
+    void update(int point) {
+      int index = position[point];
+      up(index);
+      down(position[point]);
+    }
+
+    private void up(int index) {
+      while (index > 0) {
+        int parent = (index - 1) / 2;
+        if (area[heap[parent]] <= area[heap[index]]) return;
+        swap(parent, index);
+        index = parent;
+      }
+    }
+
+    private void down(int index) {
+      while (true) {
+        int smallest = index;
+        int left = 2 * index + 1;
+        int right = left + 1;
+        if (left < size && area[heap[left]] < area[heap[smallest]]) smallest = left;
+        if (right < size && area[heap[right]] < area[heap[smallest]]) smallest = right;
+        if (smallest == index) return;
+        swap(index, smallest);
+        index = smallest;
+      }
+    }
+
+    private void swap(int a, int b) {
+      int point = heap[a];
+      heap[a] = heap[b];
+      heap[b] = point;
+      position[heap[a]] = a;
+      position[heap[b]] = b;
+    }
+  }
+}
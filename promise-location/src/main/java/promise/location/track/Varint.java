@@ -0,0 +1,50 @@
+/*
+ * Copyright 2017, Peter Vincent
+ * Licensed under the Apache License, Version 2.0, Android Promise.
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package promise.location.track;
+
+/**
+ * ZigZag and base 128 varint helpers used by the track codec.
+ */
+final class Varint {
+
+  /**
+   * Longest encoding of a 64 bit value.
+   */
+  static final int MAX_LENGTH = 10;
+
+  private Varint() {
+  }
+
+  static long zigZag(long value) {
+    return (value << 1) ^ (value >> 63);
+  }
+
+  static long unZigZag(long value) {
+    return (value >>> 1) ^ -(value & 1);
+  }
+
+  /**
+   * Writes value as an unsigned varint into buffer at offset.
+   *
+   * @return the offset after the last byte written
+   */
+  static int write(byte[] buffer, int offset, long value) {
+    while ((value & ~0x7FL) != 0) {
+      buffer[offset++] = (byte) ((value & 0x7F) | 0x80);
+      value >>>= 7;
+    }
+    buffer[offset++] = (byte) value;
+    return offset;
+  }
+}
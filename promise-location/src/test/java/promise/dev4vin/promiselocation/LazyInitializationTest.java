@@ -0,0 +1,151 @@
+/*
+ * Copyright 2017, Peter Vincent
+ * Licensed under the Apache License, Version 2.0, Android Promise.
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package promise.dev4vin.promiselocation;
+
+import android.content.Context;
+import android.location.Location;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import promise.location.LocationParams;
+import promise.location.LocationProvider;
+import promise.location.LocationUpdatedListener;
+import promise.location.Logger;
+import promise.location.PromiseLocation;
+
+import static org.mockito.Mockito.mock;
+
+@RunWith(PromiseLocationRobolectricTestRunner.class)
+@Config(manifest = Config.NONE)
+public class LazyInitializationTest {
+
+  @Test
+  public void test_control_returns_before_provider_is_initialized() throws Exception {
+    BlockingProvider provider = new BlockingProvider();
+    PromiseLocation.LocationControl control =
+        lazy().location(provider).config(LocationParams.NAVIGATION);
+
+    Assert.assertTrue(provider.entered.await(5, TimeUnit.SECONDS));
+    Assert.assertNotSame(Thread.currentThread(), provider.initThread);
+    Assert.assertFalse(provider.initialized);
+
+    provider.release.countDown();
+    control.start(mock(LocationUpdatedListener.class));
+    Assert.assertTrue(provider.initialized);
+    Assert.assertTrue(provider.startedAfterInit);
+  }
+
+  @Test
+  public void test_provider_is_initialized_once_per_context() {
+    CountingProvider provider = new CountingProvider();
+    PromiseLocation promiseLocation = lazy();
+    for (int i = 0; i < 3; i++) promiseLocation.location(provider);
+
+    promiseLocation.location(provider).start(mock(LocationUpdatedListener.class));
+    Assert.assertEquals(1, provider.inits);
+  }
+
+  @Test
+  public void test_eager_startup_initializes_on_the_calling_thread() {
+    Context context = RuntimeEnvironment.application.getApplicationContext();
+    CountingProvider provider = new CountingProvider();
+    new PromiseLocation.Builder(context).build().location(provider);
+    Assert.assertEquals(1, provider.inits);
+    Assert.assertSame(Thread.currentThread(), provider.initThread);
+  }
+
+  @Test
+  public void test_lazy_startup_initializes_off_the_calling_thread() throws Exception {
+    CountingProvider provider = new CountingProvider();
+    lazy().location(provider);
+    Assert.assertTrue(provider.initialized.await(5, TimeUnit.SECONDS));
+    Assert.assertEquals(1, provider.inits);
+    Assert.assertNotSame(Thread.currentThread(), provider.initThread);
+  }
+
+  private static PromiseLocation lazy() {
+    Context context = RuntimeEnvironment.application.getApplicationContext();
+    return new PromiseLocation.Builder(context).lazyInitialize(true).build();
+  }
+
+  private static class CountingProvider implements LocationProvider {
+    final CountDownLatch initialized = new CountDownLatch(1);
+    volatile Thread initThread;
+    volatile int inits;
+
+    @Override
+    public void init(Context context, Logger logger) {
+      inits++;
+      initThread = Thread.currentThread();
+      initialized.countDown();
+    }
+
+    @Override
+    public void start(
+        LocationUpdatedListener listener, LocationParams params, boolean singleUpdate) {
+    }
+
+    @Override
+    public void stop() {
+    }
+
+    @Override
+    public Location getLastLocation() {
+      return null;
+    }
+  }
+
+  private static class BlockingProvider implements LocationProvider {
+    final CountDownLatch entered = new CountDownLatch(1);
+    final CountDownLatch release = new CountDownLatch(1);
+    volatile Thread initThread;
+    volatile boolean initialized;
+    volatile boolean startedAfterInit;
+
+    @Override
+    public void init(Context context, Logger logger) {
+      initThread = Thread.currentThread();
+      entered.countDown();
+      try {
+        release.await(5, TimeUnit.SECONDS);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      initialized = true;
+    }
+
+    @Override
+    public void start(
+        LocationUpdatedListener listener, LocationParams params, boolean singleUpdate) {
+      startedAfterInit = initialized;
+    }
+
+    @Override
+    public void stop() {
+    }
+
+    @Override
+    public Location getLastLocation() {
+      return null;
+    }
+  }
+}
@@ -14,10 +14,12 @@
 package promise.dev4vin.promiselocation;
 
 import android.content.Context;
+import android.location.Location;
 
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
 import org.robolectric.RuntimeEnvironment;
 import org.robolectric.annotation.Config;
 
@@ -31,6 +33,8 @@ import static org.mockito.Matchers.anyBoolean;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.any;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyZeroInteractions;
 
@@ -68,7 +72,8 @@ public class LocationControlTest {
     PromiseLocation.LocationControl locationControl = createLocationControl();
 
     locationControl.start(locationUpdatedListener);
-    verify(mockProvider).start(locationUpdatedListener, DEFAULT_PARAMS, DEFAULT_SINGLE_UPDATE);
+    verify(mockProvider).start(
+        any(LocationUpdatedListener.class), eq(DEFAULT_PARAMS), eq(DEFAULT_SINGLE_UPDATE));
   }
 
   @Test
@@ -77,7 +82,7 @@ public class LocationControlTest {
     locationControl.once();
 
     locationControl.start(locationUpdatedListener);
-    verify(mockProvider).start(locationUpdatedListener, DEFAULT_PARAMS, true);
+    verify(mockProvider).start(any(LocationUpdatedListener.class), eq(DEFAULT_PARAMS), eq(true));
   }
 
   @Test
@@ -86,7 +91,7 @@ public class LocationControlTest {
     locationControl.once();
     locationControl.continuous();
     locationControl.start(locationUpdatedListener);
-    verify(mockProvider).start(locationUpdatedListener, DEFAULT_PARAMS, false);
+    verify(mockProvider).start(any(LocationUpdatedListener.class), eq(DEFAULT_PARAMS), eq(false));
   }
 
   @Test
@@ -96,7 +101,7 @@ public class LocationControlTest {
 
     locationControl.start(locationUpdatedListener);
     verify(mockProvider)
-        .start(eq(locationUpdatedListener), eq(LocationParams.NAVIGATION), anyBoolean());
+        .start(any(LocationUpdatedListener.class), eq(LocationParams.NAVIGATION), anyBoolean());
   }
 
   @Test
@@ -115,6 +120,28 @@ public class LocationControlTest {
     verify(mockProvider).stop();
   }
 
+  @Test
+  public void test_location_control_fan_out() {
+    PromiseLocation.LocationControl locationControl = createLocationControl();
+    LocationUpdatedListener otherListener = mock(LocationUpdatedListener.class);
+
+    locationControl.start(locationUpdatedListener);
+    locationControl.start(otherListener);
+    ArgumentCaptor<LocationUpdatedListener> dispatcher =
+        ArgumentCaptor.forClass(LocationUpdatedListener.class);
+    verify(mockProvider, times(1)).start(dispatcher.capture(), eq(DEFAULT_PARAMS), eq(false));
+
+    Location location = new Location("test");
+    dispatcher.getValue().onLocationUpdated(location);
+    verify(locationUpdatedListener).onLocationUpdated(location);
+    verify(otherListener).onLocationUpdated(location);
+
+    locationControl.stop(locationUpdatedListener);
+    verify(mockProvider, never()).stop();
+    locationControl.stop(otherListener);
+    verify(mockProvider).stop();
+  }
+
   private PromiseLocation.LocationControl createLocationControl() {
     Context context = RuntimeEnvironment.application.getApplicationContext();
     PromiseLocation promiseLocation =
@@ -0,0 +1,162 @@
+/*
+ * Copyright 2017, Peter Vincent
+ * Licensed under the Apache License, Version 2.0, Android Promise.
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package promise.location;
+
+import com.google.android.gms.location.DetectedActivity;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.annotation.Config;
+
+import promise.dev4vin.promiselocation.PromiseLocationRobolectricTestRunner;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@RunWith(PromiseLocationRobolectricTestRunner.class)
+@Config(manifest = Config.NONE)
+public class AdaptiveSamplingPolicyTest {
+
+  private FakeClock clock;
+  private PromiseLocation.LocationControl location;
+  private PromiseLocation.ActivityRecognitionControl activity;
+  private LocationUpdatedListener listener;
+
+  @Before
+  public void setup() {
+    clock = new FakeClock(0);
+    location = mock(PromiseLocation.LocationControl.class);
+    activity = mock(PromiseLocation.ActivityRecognitionControl.class);
+    listener = mock(LocationUpdatedListener.class);
+    when(location.params()).thenReturn(LocationParams.BEST_EFFORT);
+  }
+
+  @Test
+  public void test_start_runs_the_configured_request() {
+    AdaptiveSamplingPolicy policy = start(AdaptiveSamplingPolicy.Builder.standard());
+
+    verify(location).start(listener);
+    verify(activity).start(policy);
+    Assert.assertEquals(LocationParams.BEST_EFFORT, policy.getCurrentParams());
+    Assert.assertEquals(DetectedActivity.UNKNOWN, policy.getActivity());
+  }
+
+  @Test
+  public void test_vehicle_escalates_after_the_dwell() {
+    AdaptiveSamplingPolicy policy = start(AdaptiveSamplingPolicy.Builder.standard());
+
+    policy.onActivity(DetectedActivity.IN_VEHICLE, 90);
+    clock.advance(5000);
+    policy.onActivity(DetectedActivity.IN_VEHICLE, 90);
+    verify(location, never()).config(LocationParams.NAVIGATION);
+
+    clock.advance(AdaptiveSamplingPolicy.DEFAULT_ESCALATE_DWELL);
+    policy.onActivity(DetectedActivity.IN_VEHICLE, 90);
+    verify(location).config(LocationParams.NAVIGATION);
+    verify(location, times(2)).start(listener);
+    Assert.assertEquals(DetectedActivity.IN_VEHICLE, policy.getActivity());
+    Assert.assertEquals(1, policy.getSwitchCount());
+  }
+
+  @Test
+  public void test_flapping_activities_do_not_switch() {
+    AdaptiveSamplingPolicy policy = start(AdaptiveSamplingPolicy.Builder.standard());
+
+    for (int i = 0; i < 60; i++) {
+      policy.onActivity(i % 2 == 0 ? DetectedActivity.STILL : DetectedActivity.IN_VEHICLE, 90);
+      clock.advance(5000);
+    }
+    Assert.assertEquals(0, policy.getSwitchCount());
+    Assert.assertEquals(LocationParams.BEST_EFFORT, policy.getCurrentParams());
+  }
+
+  @Test
+  public void test_low_confidence_is_ignored() {
+    AdaptiveSamplingPolicy policy = start(AdaptiveSamplingPolicy.Builder.standard());
+
+    for (int i = 0; i < 10; i++) {
+      policy.onActivity(DetectedActivity.IN_VEHICLE, 30);
+      clock.advance(AdaptiveSamplingPolicy.DEFAULT_ESCALATE_DWELL);
+    }
+    Assert.assertEquals(0, policy.getSwitchCount());
+  }
+
+  @Test
+  public void test_still_suspends_and_moving_resumes() {
+    AdaptiveSamplingPolicy policy =
+        start(AdaptiveSamplingPolicy.Builder.standard().suspend(DetectedActivity.STILL));
+
+    policy.onActivity(DetectedActivity.STILL, 90);
+    clock.advance(AdaptiveSamplingPolicy.DEFAULT_ESCALATE_DWELL);
+    policy.onActivity(DetectedActivity.STILL, 90);
+    // relaxing waits longer than escalating
+    verify(location, never()).stop(listener);
+    clock.advance(AdaptiveSamplingPolicy.DEFAULT_RELAX_DWELL);
+    policy.onActivity(DetectedActivity.STILL, 90);
+    verify(location).stop(listener);
+    Assert.assertNull(policy.getCurrentParams());
+
+    policy.onActivity(DetectedActivity.WALKING, 90);
+    clock.advance(AdaptiveSamplingPolicy.DEFAULT_ESCALATE_DWELL);
+    policy.onActivity(DetectedActivity.WALKING, 90);
+    verify(location).config(LocationParams.BEST_EFFORT);
+    verify(location, times(2)).start(listener);
+  }
+
+  @Test
+  public void test_saved_requests_per_hour() {
+    when(location.params()).thenReturn(LocationParams.NAVIGATION);
+    AdaptiveSamplingPolicy policy = start(AdaptiveSamplingPolicy.Builder.standard());
+
+    policy.onActivity(DetectedActivity.STILL, 90);
+    clock.advance(AdaptiveSamplingPolicy.DEFAULT_RELAX_DWELL);
+    policy.onActivity(DetectedActivity.STILL, 90);
+    clock.advance(3600000 - AdaptiveSamplingPolicy.DEFAULT_RELAX_DWELL);
+
+    // an hour of NAVIGATION against a minute of it followed by LAZY
+    Assert.assertEquals(7200, policy.getBaselineFixes(), 1e-6);
+    Assert.assertEquals(120 + 708, policy.getRequestedFixes(), 1e-6);
+    Assert.assertEquals(7200 - 828, policy.getSavedPerHour(), 1e-6);
+
+    policy.stop();
+    verify(activity).stop();
+    verify(location).stop(listener);
+    // the control gets its own request back
+    verify(location).config(LocationParams.NAVIGATION);
+  }
+
+  @Test
+  public void test_switch_needs_two_detections_without_dwell() {
+    AdaptiveSamplingPolicy policy =
+        start(AdaptiveSamplingPolicy.Builder.standard().setDwell(0, 0));
+
+    policy.onActivity(DetectedActivity.IN_VEHICLE, 90);
+    Assert.assertEquals(0, policy.getSwitchCount());
+    policy.onActivity(DetectedActivity.IN_VEHICLE, 90);
+    Assert.assertEquals(1, policy.getSwitchCount());
+  }
+
+  private AdaptiveSamplingPolicy start(AdaptiveSamplingPolicy.Builder builder) {
+    AdaptiveSamplingPolicy policy = builder.build();
+    policy.setClock(clock);
+    policy.start(activity, location, listener);
+    return policy;
+  }
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright 2017, Peter Vincent
+ * Licensed under the Apache License, Version 2.0, Android Promise.
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package promise.location;
+
+import android.location.Location;
+import android.location.LocationManager;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.annotation.Config;
+
+import java.io.File;
+
+import promise.dev4vin.promiselocation.PromiseLocationRobolectricTestRunner;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@RunWith(PromiseLocationRobolectricTestRunner.class)
+@Config(manifest = Config.NONE)
+public class BinaryLocationStoreTest {
+
+  private static final double DELTA = 1e-7;
+
+  private static final String TEST_LOCATION_ID = "test_location_1";
+  private static final float ACCURACY = 1.234f;
+  private static final double ALTITUDE = 12.34;
+  private static final float BEARING = 123f;
+  private static final float SPEED = 321f;
+  private static final double LATITUDE = -50.123456;
+  private static final double LONGITUDE = 9.8765432;
+  private static final int TIME = 987654321;
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private final Location testLocation = new Location(LocationManager.GPS_PROVIDER);
+
+  @Before
+  public void setup() {
+    testLocation.setAccuracy(ACCURACY);
+    testLocation.setAltitude(ALTITUDE);
+    testLocation.setBearing(BEARING);
+    testLocation.setLatitude(LATITUDE);
+    testLocation.setLongitude(LONGITUDE);
+    testLocation.setSpeed(SPEED);
+    testLocation.setTime(TIME);
+  }
+
+  @Test
+  public void test_binary_location_store_full_cycle() {
+    BinaryLocationStore store = new BinaryLocationStore(folder.getRoot());
+
+    Assert.assertNull(store.get(TEST_LOCATION_ID));
+
+    store.put(TEST_LOCATION_ID, testLocation);
+    assertSameFix(testLocation, store.get(TEST_LOCATION_ID));
+
+    store.remove(TEST_LOCATION_ID);
+    Assert.assertNull(store.get(TEST_LOCATION_ID));
+  }
+
+  @Test
+  public void test_binary_location_store_survives_reopen() {
+    File directory = folder.getRoot();
+    new BinaryLocationStore(directory).put(TEST_LOCATION_ID, testLocation);
+
+    Location storedLocation = new BinaryLocationStore(directory).get(TEST_LOCATION_ID);
+    assertSameFix(testLocation, storedLocation);
+    Assert.assertEquals(LocationManager.GPS_PROVIDER, storedLocation.getProvider());
+  }
+
+  @Test
+  public void test_binary_location_store_migrates_from_preferences() {
+    LocationStore legacyStore = mock(LocationStore.class);
+    when(legacyStore.get(TEST_LOCATION_ID)).thenReturn(testLocation);
+    BinaryLocationStore store =
+        new BinaryLocationStore(folder.getRoot()).migrateFrom(legacyStore);
+
+    assertSameFix(testLocation, store.get(TEST_LOCATION_ID));
+    verify(legacyStore).remove(TEST_LOCATION_ID);
+
+    // served from the binary record from now on
+    assertSameFix(testLocation, new BinaryLocationStore(folder.getRoot()).get(TEST_LOCATION_ID));
+  }
+
+  private static void assertSameFix(Location expected, Location actual) {
+    Assert.assertNotNull(actual);
+    Assert.assertEquals(expected.getAccuracy(), actual.getAccuracy(), DELTA);
+    Assert.assertEquals(expected.getAltitude(), actual.getAltitude(), DELTA);
+    Assert.assertEquals(expected.getBearing(), actual.getBearing(), DELTA);
+    Assert.assertEquals(expected.getLatitude(), actual.getLatitude(), DELTA);
+    Assert.assertEquals(expected.getLongitude(), actual.getLongitude(), DELTA);
+    Assert.assertEquals(expected.getSpeed(), actual.getSpeed(), DELTA);
+    Assert.assertEquals(expected.getTime(), actual.getTime());
+  }
+}
@@ -0,0 +1,181 @@
+/*
+ * Copyright 2017, Peter Vincent
+ * Licensed under the Apache License, Version 2.0, Android Promise.
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package promise.location;
+
+import android.content.Context;
+import android.location.Location;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.annotation.Config;
+
+import promise.dev4vin.promiselocation.PromiseLocationRobolectricTestRunner;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyBoolean;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+@RunWith(PromiseLocationRobolectricTestRunner.class)
+@Config(manifest = Config.NONE)
+public class ConnectionWatchdogTest {
+
+  private FakeClock clock;
+  private ConnectionWatchdog.Listener listener;
+  private ConnectionWatchdog watchdog;
+
+  @Before
+  public void setup() {
+    clock = new FakeClock(0);
+    listener = mock(ConnectionWatchdog.Listener.class);
+    watchdog = new ConnectionWatchdog(10000, 30000, listener);
+    watchdog.setClock(clock);
+  }
+
+  @Test
+  public void test_connect_deadline_is_reported_once() {
+    watchdog.start(false);
+    clock.advance(9999);
+    Assert.assertFalse(watchdog.check());
+
+    clock.advance(1);
+    Assert.assertTrue(watchdog.check());
+    verify(listener).onDeadlinePassed(true);
+    Assert.assertFalse(watchdog.isWatching());
+    Assert.assertFalse(watchdog.check());
+  }
+
+  @Test
+  public void test_first_fix_deadline_starts_on_connect() {
+    watchdog.start(false);
+    clock.advance(8000);
+    watchdog.connected();
+
+    clock.advance(29999);
+    Assert.assertFalse(watchdog.check());
+    clock.advance(1);
+    Assert.assertTrue(watchdog.check());
+    verify(listener).onDeadlinePassed(false);
+  }
+
+  @Test
+  public void test_fix_in_time_stops_watching() {
+    watchdog.start(true);
+    clock.advance(5000);
+    watchdog.fixed();
+
+    clock.advance(60000);
+    Assert.assertFalse(watchdog.check());
+    verify(listener, never()).onDeadlinePassed(anyBoolean());
+  }
+
+  @Test
+  public void test_cancel_and_disabled_deadlines() {
+    watchdog.start(false);
+    watchdog.cancel();
+    clock.advance(60000);
+    Assert.assertFalse(watchdog.check());
+
+    ConnectionWatchdog connectOnly = new ConnectionWatchdog(10000, 0, listener);
+    connectOnly.setClock(clock);
+    connectOnly.start(false);
+    connectOnly.connected();
+    Assert.assertFalse(connectOnly.isWatching());
+
+    ConnectionWatchdog fixOnly = new ConnectionWatchdog(0, 5000, listener);
+    fixOnly.setClock(clock);
+    fixOnly.start(false);
+    clock.advance(60000);
+    Assert.assertFalse(fixOnly.check());
+    fixOnly.connected();
+    clock.advance(5000);
+    Assert.assertTrue(fixOnly.check());
+    verify(listener).onDeadlinePassed(false);
+  }
+
+  @Test
+  public void test_hanging_connection_fails_over() {
+    HangingProvider hanging = new HangingProvider(clock);
+    LocationProvider backup = mock(LocationProvider.class);
+    MultiFallBackLocationProvider subject =
+        new MultiFallBackLocationProvider.Builder()
+            .withServiceProvider(hanging)
+            .withProvider(backup)
+            .build();
+    subject.init(mock(Context.class), mock(Logger.class));
+    subject.start(mock(LocationUpdatedListener.class), LocationParams.NAVIGATION, false);
+
+    clock.advance(10000);
+    hanging.watchdog.check();
+
+    verify(backup).start(any(LocationUpdatedListener.class), any(LocationParams.class),
+        anyBoolean());
+    Assert.assertEquals(backup, subject.getCurrentProvider());
+  }
+
+  /**
+   * A service provider whose connection never completes.
+   */
+  private static class HangingProvider implements ServiceLocationProvider {
+    private final ConnectionWatchdog watchdog;
+    private ServiceConnectionListener serviceListener;
+
+    HangingProvider(FakeClock clock) {
+      watchdog =
+          new ConnectionWatchdog(
+              10000,
+              0,
+              new ConnectionWatchdog.Listener() {
+                @Override
+                public void onDeadlinePassed(boolean connecting) {
+                  serviceListener.onConnectionFailed();
+                }
+              });
+      watchdog.setClock(clock);
+    }
+
+    @Override
+    public ServiceConnectionListener getServiceListener() {
+      return serviceListener;
+    }
+
+    @Override
+    public void setServiceListener(ServiceConnectionListener listener) {
+      serviceListener = listener;
+    }
+
+    @Override
+    public void init(Context context, Logger logger) {
+    }
+
+    @Override
+    public void start(
+        LocationUpdatedListener listener, LocationParams params, boolean singleUpdate) {
+      watchdog.start(false);
+    }
+
+    @Override
+    public void stop() {
+      watchdog.cancel();
+    }
+
+    @Override
+    public Location getLastLocation() {
+      return null;
+    }
+  }
+}
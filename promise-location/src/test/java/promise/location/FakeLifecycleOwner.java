@@ -0,0 +1,87 @@
+/*
+ * Copyright 2017, Peter Vincent
+ * Licensed under the Apache License, Version 2.0, Android Promise.
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package promise.location;
+
+import androidx.annotation.NonNull;
+import androidx.lifecycle.Lifecycle;
+import androidx.lifecycle.LifecycleEventObserver;
+import androidx.lifecycle.LifecycleObserver;
+import androidx.lifecycle.LifecycleOwner;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class FakeLifecycleOwner implements LifecycleOwner {
+
+  private final FakeLifecycle lifecycle = new FakeLifecycle();
+
+  @NonNull
+  @Override
+  public Lifecycle getLifecycle() {
+    return lifecycle;
+  }
+
+  public void handle(Lifecycle.Event event) {
+    lifecycle.handle(this, event);
+  }
+
+  public int getObserverCount() {
+    return lifecycle.observers.size();
+  }
+
+  private static class FakeLifecycle extends Lifecycle {
+    private final List<LifecycleObserver> observers = new ArrayList<>();
+    private State state = State.INITIALIZED;
+
+    @Override
+    public void addObserver(@NonNull LifecycleObserver observer) {
+      observers.add(observer);
+    }
+
+    @Override
+    public void removeObserver(@NonNull LifecycleObserver observer) {
+      observers.remove(observer);
+    }
+
+    @NonNull
+    @Override
+    public State getCurrentState() {
+      return state;
+    }
+
+    void handle(LifecycleOwner owner, Event event) {
+      switch (event) {
+        case ON_CREATE:
+        case ON_STOP:
+          state = State.CREATED;
+          break;
+        case ON_START:
+        case ON_PAUSE:
+          state = State.STARTED;
+          break;
+        case ON_RESUME:
+          state = State.RESUMED;
+          break;
+        case ON_DESTROY:
+          state = State.DESTROYED;
+          break;
+        default:
+          break;
+      }
+      for (LifecycleObserver observer : new ArrayList<>(observers))
+        ((LifecycleEventObserver) observer).onStateChanged(owner, event);
+    }
+  }
+}
@@ -0,0 +1,137 @@
+/*
+ * Copyright 2017, Peter Vincent
+ * Licensed under the Apache License, Version 2.0, Android Promise.
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package promise.location;
+
+import com.google.android.gms.common.ConnectionResult;
+import com.google.android.gms.common.api.GoogleApiClient;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.annotation.Config;
+
+import promise.dev4vin.promiselocation.PromiseLocationRobolectricTestRunner;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@RunWith(PromiseLocationRobolectricTestRunner.class)
+@Config(manifest = Config.NONE)
+public class GoogleApiConnectionTest {
+
+  private GoogleApiClient client;
+  private GoogleApiConnection connection;
+
+  @Before
+  public void setup() {
+    client = mock(GoogleApiClient.class);
+    connection = new GoogleApiConnection(client);
+    connection.setIdleGrace(0);
+  }
+
+  @Test
+  public void test_connects_lazily_once_for_all_providers() {
+    verify(client, never()).connect();
+
+    GoogleApiClient.ConnectionCallbacks location = mock(GoogleApiClient.ConnectionCallbacks.class);
+    GoogleApiClient.ConnectionCallbacks activity = mock(GoogleApiClient.ConnectionCallbacks.class);
+    connection.acquire(location, null);
+    when(client.isConnecting()).thenReturn(true);
+    connection.acquire(activity, null);
+
+    verify(client, times(1)).connect();
+    Assert.assertEquals(2, connection.getReferences());
+
+    connection.onConnected(null);
+    verify(location).onConnected(null);
+    verify(activity).onConnected(null);
+  }
+
+  @Test
+  public void test_operations_are_replayed_on_connect() {
+    CountingOperation operation = new CountingOperation();
+    connection.execute(operation);
+
+    Assert.assertEquals(0, operation.count);
+    Assert.assertEquals(1, connection.getReferences());
+    verify(client).connect();
+
+    when(client.isConnected()).thenReturn(true);
+    connection.onConnected(null);
+    Assert.assertEquals(1, operation.count);
+    Assert.assertEquals(0, connection.getReferences());
+
+    connection.execute(operation);
+    Assert.assertEquals(2, operation.count);
+  }
+
+  @Test
+  public void test_disconnects_when_last_reference_is_released() {
+    GoogleApiClient.ConnectionCallbacks location = mock(GoogleApiClient.ConnectionCallbacks.class);
+    GoogleApiClient.ConnectionCallbacks activity = mock(GoogleApiClient.ConnectionCallbacks.class);
+    connection.acquire(location, null);
+    when(client.isConnected()).thenReturn(true);
+    connection.acquire(activity, null);
+
+    connection.release(location, null);
+    verify(client, never()).disconnect();
+
+    connection.release(activity, null);
+    verify(client).disconnect();
+    Assert.assertEquals(0, connection.getReferences());
+  }
+
+  @Test
+  public void test_reacquired_connection_is_not_dropped_by_idle_check() {
+    GoogleApiClient.ConnectionCallbacks callbacks = mock(GoogleApiClient.ConnectionCallbacks.class);
+    connection.acquire(callbacks, null);
+    when(client.isConnected()).thenReturn(true);
+
+    // a disconnect posted before the provider came back must not drop the connection
+    connection.disconnectIfIdle();
+    verify(client, never()).disconnect();
+  }
+
+  @Test
+  public void test_failure_drops_queued_operations() {
+    GoogleApiClient.OnConnectionFailedListener failed =
+        mock(GoogleApiClient.OnConnectionFailedListener.class);
+    CountingOperation operation = new CountingOperation();
+    connection.acquire(null, failed);
+    connection.execute(operation);
+    Assert.assertEquals(2, connection.getReferences());
+
+    ConnectionResult result = mock(ConnectionResult.class);
+    connection.onConnectionFailed(result);
+    verify(failed).onConnectionFailed(result);
+    Assert.assertEquals(1, connection.getReferences());
+
+    connection.onConnected(null);
+    Assert.assertEquals(0, operation.count);
+  }
+
+  private static class CountingOperation implements GoogleApiConnection.Operation {
+    int count;
+
+    @Override
+    public void run(GoogleApiClient client) {
+      count++;
+    }
+  }
+}
@@ -0,0 +1,62 @@
+/*
+ * Copyright 2017, Peter Vincent
+ * Licensed under the Apache License, Version 2.0, Android Promise.
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package promise.location;
+
+import android.content.Context;
+import android.location.Location;
+
+import com.google.android.gms.common.api.GoogleApiClient;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import promise.commons.Promise;
+import promise.dev4vin.promiselocation.PromiseLocationRobolectricTestRunner;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@RunWith(PromiseLocationRobolectricTestRunner.class)
+@Config(manifest = Config.NONE)
+public class GooglePlayServicesLocationProviderTest {
+
+  @Test
+  public void test_single_update_releases_the_connection() {
+    Promise.init(RuntimeEnvironment.application);
+    Context context = mock(Context.class);
+    when(context.getApplicationContext()).thenReturn(RuntimeEnvironment.application);
+    GoogleApiConnection connection = new GoogleApiConnection(mock(GoogleApiClient.class));
+    connection.setIdleGrace(0);
+    GooglePlayServicesLocationProvider provider = new GooglePlayServicesLocationProvider();
+    provider.setConnection(connection);
+    provider.init(context, mock(Logger.class));
+    LocationDispatcher dispatcher = new LocationDispatcher(provider);
+
+    LocationUpdatedListener listener = mock(LocationUpdatedListener.class);
+    dispatcher.add(listener, LocationParams.NAVIGATION, true, null, null);
+    Assert.assertEquals(1, connection.getReferences());
+
+    Location fix = new Location("test");
+    fix.setTime(1000);
+    dispatcher.onLocationUpdated(fix);
+    verify(listener).onLocationUpdated(fix);
+    Assert.assertEquals(0, connection.getReferences());
+    Assert.assertFalse(dispatcher.isRunning());
+  }
+}
@@ -0,0 +1,58 @@
+/*
+ * Copyright 2017, Peter Vincent
+ * Licensed under the Apache License, Version 2.0, Android Promise.
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package promise.location;
+
+import android.content.Context;
+import android.location.LocationManager;
+import android.net.ConnectivityManager;
+import android.net.NetworkInfo;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import promise.dev4vin.promiselocation.PromiseLocationRobolectricTestRunner;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+@RunWith(PromiseLocationRobolectricTestRunner.class)
+@Config(manifest = Config.NONE)
+public class GooglePlayServicesWithFallbackLocationProviderTest {
+
+  @Test
+  public void test_falls_back_when_play_services_time_out() {
+    NetworkInfo network = mock(NetworkInfo.class);
+    when(network.getType()).thenReturn(ConnectivityManager.TYPE_WIFI);
+    ConnectivityManager connectivity = mock(ConnectivityManager.class);
+    when(connectivity.getActiveNetworkInfo()).thenReturn(network);
+    Context context = mock(Context.class);
+    when(context.getSystemService(Context.CONNECTIVITY_SERVICE)).thenReturn(connectivity);
+    when(context.getSystemService(Context.LOCATION_SERVICE))
+        .thenReturn(mock(LocationManager.class));
+    when(context.getApplicationContext()).thenReturn(RuntimeEnvironment.application);
+
+    GooglePlayServicesWithFallbackLocationProvider provider =
+        new GooglePlayServicesWithFallbackLocationProvider(context);
+    provider.init(context, mock(Logger.class));
+    Assert.assertTrue(provider.getProvider() instanceof GooglePlayServicesLocationProvider);
+
+    ((GooglePlayServicesLocationProvider) provider.getProvider()).onConnectionTimedOut(true);
+
+    Assert.assertTrue(provider.getProvider() instanceof LocationManagerProvider);
+  }
+}
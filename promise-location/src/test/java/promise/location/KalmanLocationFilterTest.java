@@ -0,0 +1,133 @@
+/*
+ * Copyright 2017, Peter Vincent
+ * Licensed under the Apache License, Version 2.0, Android Promise.
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package promise.location;
+
+import android.location.Location;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.annotation.Config;
+
+import java.util.Random;
+
+import promise.dev4vin.promiselocation.PromiseLocationRobolectricTestRunner;
+import promise.location.geo.GeoMath;
+
+@RunWith(PromiseLocationRobolectricTestRunner.class)
+@Config(manifest = Config.NONE)
+public class KalmanLocationFilterTest {
+
+  private static final double LATITUDE = -1.2833;
+  private static final double LONGITUDE = 36.8167;
+
+  private final Random random = new Random(7);
+
+  @Test
+  public void test_jitter_is_smoothed_while_standing_still() {
+    KalmanLocationFilter filter = new KalmanLocationFilter();
+    double raw = 0;
+    double smoothed = 0;
+    for (int second = 0; second < 60; second++) {
+      Location fix = fix(second * 1000L, 0, 15);
+      Location output = filter.filter(fix);
+      if (second < 20) continue;
+      raw += square(error(fix, 0));
+      smoothed += square(error(output, 0));
+    }
+    Assert.assertTrue(Math.sqrt(smoothed) < Math.sqrt(raw) / 2);
+  }
+
+  @Test
+  public void test_constant_velocity_is_followed() {
+    KalmanLocationFilter filter = new KalmanLocationFilter();
+    Location output = null;
+    for (int second = 0; second < 60; second++)
+      output = filter.filter(fix(second * 1000L, second * 10, 5));
+    Assert.assertEquals(0, error(output, 590), 5);
+  }
+
+  @Test
+  public void test_irregular_steps_keep_the_estimate_sane() {
+    KalmanLocationFilter filter = new KalmanLocationFilter();
+    long time = 0;
+    long[] steps = {200, 3000, 500, 0, 12000, 1000, 100};
+    Location output = filter.filter(fix(time, 0, 10));
+    for (long step : steps) {
+      time += step;
+      output = filter.filter(fix(time, time / 1000d, 10));
+      Assert.assertTrue(output.getAccuracy() > 0);
+      Assert.assertTrue(output.getAccuracy() <= 30);
+    }
+    Assert.assertEquals(0, error(output, time / 1000d), 10);
+  }
+
+  @Test
+  public void test_long_gap_starts_over() {
+    KalmanLocationFilter filter = new KalmanLocationFilter();
+    for (int second = 0; second < 10; second++) filter.filter(fix(second * 1000L, 0, 10));
+
+    Location far = exact(10000 + KalmanLocationFilter.DEFAULT_MAX_GAP * 2, 5000, 20);
+    Location output = filter.filter(far);
+    Assert.assertEquals(far.getLatitude(), output.getLatitude(), 1e-9);
+    Assert.assertEquals(far.getLongitude(), output.getLongitude(), 1e-9);
+    Assert.assertEquals(20, output.getAccuracy(), 1e-3);
+  }
+
+  @Test
+  public void test_shared_fix_is_filtered_once() {
+    KalmanLocationFilter filter = new KalmanLocationFilter();
+    filter.filter(fix(0, 0, 10));
+    Location fix = fix(1000, 0, 10);
+    Location output = filter.filter(fix);
+    Assert.assertSame(output, filter.filter(fix));
+    Assert.assertNotSame(fix, output);
+    Assert.assertEquals(fix.getTime(), output.getTime());
+  }
+
+  /**
+   * A fix the given number of meters north of the start, off by noise of the given accuracy.
+   */
+  private Location fix(long time, double north, float accuracy) {
+    double noisyNorth = north + random.nextGaussian() * accuracy;
+    double noisyEast = random.nextGaussian() * accuracy;
+    Location location = exact(time, noisyNorth, accuracy);
+    location.setLongitude(
+        LONGITUDE
+            + noisyEast / (GeoMath.METERS_PER_DEGREE * Math.cos(Math.toRadians(LATITUDE))));
+    return location;
+  }
+
+  private static Location exact(long time, double north, float accuracy) {
+    Location location = new Location("test");
+    location.setTime(time);
+    location.setLatitude(LATITUDE + north / GeoMath.METERS_PER_DEGREE);
+    location.setLongitude(LONGITUDE);
+    location.setAccuracy(accuracy);
+    return location;
+  }
+
+  private static double error(Location location, double north) {
+    return GeoMath.haversine(
+        LATITUDE + north / GeoMath.METERS_PER_DEGREE,
+        LONGITUDE,
+        location.getLatitude(),
+        location.getLongitude());
+  }
+
+  private static double square(double value) {
+    return value * value;
+  }
+}
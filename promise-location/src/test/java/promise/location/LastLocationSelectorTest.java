@@ -0,0 +1,217 @@
+/*
+ * Copyright 2017, Peter Vincent
+ * Licensed under the Apache License, Version 2.0, Android Promise.
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package promise.location;
+
+import android.content.Context;
+import android.location.Location;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+
+import promise.commons.pref.Preferences;
+import promise.dev4vin.promiselocation.PromiseLocationRobolectricTestRunner;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@RunWith(PromiseLocationRobolectricTestRunner.class)
+@Config(manifest = Config.NONE)
+public class LastLocationSelectorTest {
+
+  private static final long NOW = 1500000000000L;
+
+  private LocationProvider provider;
+  private MapStore store;
+  private PromiseLocation.LocationControl control;
+
+  @Before
+  public void setup() {
+    Context context = RuntimeEnvironment.application.getApplicationContext();
+    provider = mock(LocationProvider.class);
+    store = new MapStore();
+    control =
+        new PromiseLocation.Builder(context).preInitialize(false).build().location(provider);
+    control.setStore(store);
+  }
+
+  @Test
+  public void test_blank_fixes_never_qualify() {
+    LastLocationSelector selector = new LastLocationSelector(NOW, 0, 0);
+    selector.offer(fix(0, 5));
+    Location island = fix(NOW, 5);
+    island.setLatitude(0);
+    island.setLongitude(0);
+    selector.offer(island);
+    Assert.assertNull(selector.best());
+  }
+
+  @Test
+  public void test_ids_never_stored_are_not_offered_as_fixes() {
+    LocationStore locationStore = new LocationStore();
+    locationStore.setPreferences(new Preferences("test_prefs"));
+    control.setStore(locationStore);
+    Location known = fix(System.currentTimeMillis() - 600000, 30);
+    when(provider.getLastLocation()).thenReturn(known);
+
+    Assert.assertSame(known, control.getLastLocation(0, 50));
+
+    // nothing known at all, a fresh fix is asked for
+    when(provider.getLastLocation()).thenReturn(null);
+    LocationUpdatedListener listener = mock(LocationUpdatedListener.class);
+    control.getLastLocation(0, 0, listener);
+    verify(listener, never()).onLocationUpdated(any(Location.class));
+    verify(provider).start(any(LocationUpdatedListener.class), any(LocationParams.class), eq(true));
+  }
+
+  @Test
+  public void test_fixes_a_provider_did_not_save_yet_are_seen() {
+    Preferences preferences = new Preferences("test_prefs");
+    LocationStore providerStore = new LocationStore(LocationStore.DEFAULT_FLUSH_INTERVAL);
+    providerStore.setPreferences(preferences);
+    providerStore.setClock(new FakeClock(0));
+    Location pending = fix(System.currentTimeMillis() - 1000, 10);
+    providerStore.put(LocationManagerProvider.LOCATION_MANAGER_PROVIDER_ID, pending);
+
+    LocationStore locationStore = new LocationStore();
+    locationStore.setPreferences(preferences);
+    control.setStore(locationStore);
+
+    Location found = control.getLastLocation(60000, 50);
+    Assert.assertNotNull(found);
+    Assert.assertEquals(pending.getTime(), found.getTime());
+  }
+
+  @Test
+  public void test_stale_and_coarse_fixes_do_not_qualify() {
+    LastLocationSelector selector = new LastLocationSelector(NOW, 60000, 50);
+    selector.offer(fix(NOW - 120000, 5));
+    selector.offer(fix(NOW - 1000, 500));
+    selector.offer(fix(NOW - 1000, 0));
+    Assert.assertNull(selector.best());
+
+    Location good = fix(NOW - 30000, 20);
+    selector.offer(good);
+    Assert.assertSame(good, selector.best());
+  }
+
+  @Test
+  public void test_sharper_older_fix_beats_fresh_coarse_one() {
+    LastLocationSelector selector = new LastLocationSelector(NOW, 60000, 100);
+    Location coarse = fix(NOW - 1000, 90);
+    Location sharp = fix(NOW - 20000, 5);
+    selector.offer(coarse);
+    selector.offer(sharp);
+    Assert.assertSame(sharp, selector.best());
+  }
+
+  @Test
+  public void test_no_limit_accepts_anything() {
+    LastLocationSelector selector = new LastLocationSelector(NOW, 0, 0);
+    Location old = fix(NOW - 86400000L, 0);
+    selector.offer(old);
+    Assert.assertSame(old, selector.best());
+  }
+
+  @Test
+  public void test_control_picks_best_across_stores() {
+    long now = System.currentTimeMillis();
+    when(provider.getLastLocation()).thenReturn(fix(now - 10000, 400));
+    Location persisted = fix(now - 5000, 8);
+    store.put(LocationManagerProvider.LOCATION_MANAGER_PROVIDER_ID, persisted);
+    store.put(GooglePlayServicesLocationProvider.GMS_ID, fix(now - 600000, 3));
+
+    Assert.assertSame(persisted, control.getLastLocation(60000, 50));
+    Assert.assertNull(control.getLastLocation(1000, 50));
+  }
+
+  @Test
+  public void test_request_only_when_nothing_qualifies() {
+    long now = System.currentTimeMillis();
+    store.put(GooglePlayServicesLocationProvider.GMS_ID, fix(now - 5000, 10));
+    LocationUpdatedListener listener = mock(LocationUpdatedListener.class);
+
+    control.getLastLocation(60000, 50, listener);
+    verify(listener).onLocationUpdated(any(Location.class));
+    verify(provider, never())
+        .start(any(LocationUpdatedListener.class), any(LocationParams.class), eq(true));
+
+    control.getLastLocation(1000, 50, mock(LocationUpdatedListener.class));
+    verify(provider).start(any(LocationUpdatedListener.class), any(LocationParams.class), eq(true));
+  }
+
+  @Test
+  public void test_known_fix_goes_through_the_executor() {
+    store.put(GooglePlayServicesLocationProvider.GMS_ID, fix(System.currentTimeMillis(), 10));
+    final List<Runnable> queued = new ArrayList<>();
+    LocationUpdatedListener listener = mock(LocationUpdatedListener.class);
+
+    control
+        .executor(
+            new Executor() {
+              @Override
+              public void execute(Runnable command) {
+                queued.add(command);
+              }
+            })
+        .getLastLocation(60000, 50, listener);
+    verify(listener, never()).onLocationUpdated(any(Location.class));
+
+    Assert.assertEquals(1, queued.size());
+    queued.get(0).run();
+    verify(listener).onLocationUpdated(any(Location.class));
+  }
+
+  private static Location fix(long time, float accuracy) {
+    Location location = new Location("test");
+    location.setTime(time);
+    location.setLatitude(-1.28);
+    location.setLongitude(36.8);
+    if (accuracy > 0) location.setAccuracy(accuracy);
+    return location;
+  }
+
+  private static class MapStore implements Store<Location> {
+    private final Map<String, Location> locations = new HashMap<>();
+
+    @Override
+    public Location get(String key) {
+      return locations.get(key);
+    }
+
+    @Override
+    public void put(String key, Location value) {
+      locations.put(key, value);
+    }
+
+    @Override
+    public void remove(String key) {
+      locations.remove(key);
+    }
+  }
+}
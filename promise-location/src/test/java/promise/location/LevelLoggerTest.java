@@ -0,0 +1,118 @@
+/*
+ * Copyright 2017, Peter Vincent
+ * Licensed under the Apache License, Version 2.0, Android Promise.
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package promise.location;
+
+import android.util.Log;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import promise.dev4vin.promiselocation.PromiseLocationRobolectricTestRunner;
+
+@RunWith(PromiseLocationRobolectricTestRunner.class)
+@Config(manifest = Config.NONE)
+public class LevelLoggerTest {
+
+  @Test
+  public void test_messages_below_level_never_reach_the_sink() {
+    RecordingSink sink = new RecordingSink();
+    LevelLogger logger = new LevelLogger(Log.WARN, sink);
+
+    logger.v("verbose");
+    logger.d("debug %s", new ExplodingArgument());
+    logger.i("info");
+    logger.w("warn");
+    logger.e(new RuntimeException(), "error");
+
+    Assert.assertEquals(2, sink.lines.size());
+    Assert.assertEquals("warn", sink.lines.get(0));
+    Assert.assertFalse(logger.isLoggable(Log.DEBUG));
+  }
+
+  @Test
+  public void test_tags_are_cached_per_class() {
+    RecordingSink sink = new RecordingSink();
+    LevelLogger logger = new LevelLogger(Log.DEBUG, sink);
+
+    LevelLogger child = logger.forClass(LocationManagerProvider.class);
+    Assert.assertSame(child, logger.forClass(LocationManagerProvider.class));
+    Assert.assertSame(child, child.forClass(LocationManagerProvider.class));
+    Assert.assertEquals("LocationManagerProvider", child.getTag());
+    Assert.assertEquals(LevelLogger.DEFAULT_TAG, logger.getTag());
+
+    child.d("fix");
+    Assert.assertEquals("LocationManagerProvider", sink.tags.get(0));
+  }
+
+  @Test
+  public void test_arguments_are_formatted_or_appended() {
+    Assert.assertEquals("plain", LevelLogger.format("plain", new Object[0]));
+    Assert.assertEquals("count 3", LevelLogger.format("count %d", new Object[] {3}));
+    Assert.assertEquals("onLocationChanged a b", LevelLogger.format("onLocationChanged",
+        new Object[] {"a", "b"}));
+  }
+
+  @Test
+  public void test_ring_buffer_defers_formatting_and_drops_when_full() {
+    RecordingSink sink = new RecordingSink();
+    LogRingBuffer ring = new LogRingBuffer(2, sink, true);
+    LevelLogger logger = new LevelLogger(Log.DEBUG, ring);
+
+    logger.d("first %s", new ExplodingArgument());
+    logger.d("second");
+    logger.d("third");
+    Assert.assertTrue(sink.lines.isEmpty());
+    Assert.assertEquals(1, ring.getDropped());
+
+    sink.explode = false;
+    ring.drain();
+    Assert.assertEquals(3, sink.lines.size());
+    Assert.assertEquals("dropped 1 messages", sink.lines.get(0));
+    Assert.assertEquals("first ok", sink.lines.get(1));
+    Assert.assertEquals("second", sink.lines.get(2));
+    Assert.assertEquals(0, ring.getDropped());
+  }
+
+  private static class ExplodingArgument {
+    @Override
+    public String toString() {
+      if (RecordingSink.current != null && RecordingSink.current.explode)
+        throw new AssertionError("formatted before it was written");
+      return "ok";
+    }
+  }
+
+  private static class RecordingSink implements LevelLogger.Sink {
+    static RecordingSink current;
+    final List<String> tags = new ArrayList<>();
+    final List<String> lines = new ArrayList<>();
+    boolean explode = true;
+
+    RecordingSink() {
+      current = this;
+    }
+
+    @Override
+    public void write(int level, String tag, Throwable t, String message, Object[] args) {
+      tags.add(tag);
+      lines.add(LevelLogger.format(message, args));
+    }
+  }
+}
@@ -0,0 +1,167 @@
+/*
+ * Copyright 2017, Peter Vincent
+ * Licensed under the Apache License, Version 2.0, Android Promise.
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package promise.location;
+
+import android.content.Context;
+import android.content.ContextWrapper;
+
+import androidx.lifecycle.Lifecycle;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import promise.dev4vin.promiselocation.PromiseLocationRobolectricTestRunner;
+import promise.location.activity.ActivityParams;
+import promise.location.activity.ActivityProvider;
+import promise.location.activity.ActivityUpdatedListener;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+@RunWith(PromiseLocationRobolectricTestRunner.class)
+@Config(manifest = Config.NONE)
+public class LifecycleBindingTest {
+
+  private LocationProvider provider;
+  private PromiseLocation promiseLocation;
+  private FakeLifecycleOwner owner;
+
+  @Before
+  public void setup() {
+    Context context = RuntimeEnvironment.application.getApplicationContext();
+    provider = mock(LocationProvider.class);
+    promiseLocation = new PromiseLocation.Builder(context).preInitialize(false).build();
+    owner = new FakeLifecycleOwner();
+    owner.handle(Lifecycle.Event.ON_CREATE);
+  }
+
+  @Test
+  public void test_bound_listener_follows_foreground() {
+    promiseLocation
+        .location(provider)
+        .config(LocationParams.NAVIGATION)
+        .bind(owner)
+        .start(mock(LocationUpdatedListener.class));
+    verify(provider, never())
+        .start(any(LocationUpdatedListener.class), any(LocationParams.class), eq(false));
+
+    owner.handle(Lifecycle.Event.ON_START);
+    owner.handle(Lifecycle.Event.ON_RESUME);
+    verify(provider).start(any(LocationUpdatedListener.class), eq(LocationParams.NAVIGATION),
+        eq(false));
+  }
+
+  @Test
+  public void test_background_drops_to_lower_power_request() {
+    owner.handle(Lifecycle.Event.ON_START);
+    promiseLocation
+        .location(provider)
+        .config(LocationParams.NAVIGATION)
+        .backgroundParams(LocationParams.LAZY)
+        .bind(owner)
+        .start(mock(LocationUpdatedListener.class));
+
+    owner.handle(Lifecycle.Event.ON_STOP);
+    verify(provider).start(any(LocationUpdatedListener.class), eq(LocationParams.LAZY), eq(false));
+    owner.handle(Lifecycle.Event.ON_START);
+    verify(provider, times(2))
+        .start(any(LocationUpdatedListener.class), eq(LocationParams.NAVIGATION), eq(false));
+    verify(provider, never()).stop();
+  }
+
+  @Test
+  public void test_rotation_keeps_provider_running() {
+    owner.handle(Lifecycle.Event.ON_START);
+    promiseLocation.location(provider).bind(owner).start(mock(LocationUpdatedListener.class));
+
+    FakeLifecycleOwner recreated = new FakeLifecycleOwner();
+    owner.handle(Lifecycle.Event.ON_STOP);
+    owner.handle(Lifecycle.Event.ON_DESTROY);
+    recreated.handle(Lifecycle.Event.ON_CREATE);
+    recreated.handle(Lifecycle.Event.ON_START);
+    promiseLocation.location(provider).bind(recreated).start(mock(LocationUpdatedListener.class));
+
+    verify(provider, never()).stop();
+    verify(provider, times(1))
+        .start(any(LocationUpdatedListener.class), any(LocationParams.class), eq(false));
+    Assert.assertEquals(0, owner.getObserverCount());
+  }
+
+  @Test
+  public void test_rotation_between_activity_contexts_keeps_provider_running() {
+    Context application = RuntimeEnvironment.application.getApplicationContext();
+    owner.handle(Lifecycle.Event.ON_START);
+    new PromiseLocation.Builder(new ContextWrapper(application))
+        .preInitialize(false)
+        .build()
+        .location(provider)
+        .bind(owner)
+        .start(mock(LocationUpdatedListener.class));
+
+    FakeLifecycleOwner recreated = new FakeLifecycleOwner();
+    owner.handle(Lifecycle.Event.ON_STOP);
+    owner.handle(Lifecycle.Event.ON_DESTROY);
+    recreated.handle(Lifecycle.Event.ON_CREATE);
+    recreated.handle(Lifecycle.Event.ON_START);
+    // the recreated activity is a new context and brings a provider of its own
+    new PromiseLocation.Builder(new ContextWrapper(application))
+        .preInitialize(false)
+        .build()
+        .location(mock(LocationProvider.class))
+        .bind(recreated)
+        .start(mock(LocationUpdatedListener.class));
+
+    verify(provider, never()).stop();
+    verify(provider, times(1))
+        .start(any(LocationUpdatedListener.class), any(LocationParams.class), eq(false));
+  }
+
+  @Test
+  public void test_explicit_stop_unbinds() {
+    owner.handle(Lifecycle.Event.ON_START);
+    LocationUpdatedListener listener = mock(LocationUpdatedListener.class);
+    PromiseLocation.LocationControl control = promiseLocation.location(provider).bind(owner);
+    control.start(listener);
+
+    control.stop(listener);
+    verify(provider).stop();
+    Assert.assertEquals(0, owner.getObserverCount());
+  }
+
+  @Test
+  public void test_bound_activity_recognition_stops_in_background() {
+    ActivityProvider activityProvider = mock(ActivityProvider.class);
+    owner.handle(Lifecycle.Event.ON_START);
+    promiseLocation
+        .activity(activityProvider)
+        .bind(owner)
+        .start(mock(ActivityUpdatedListener.class));
+    verify(activityProvider).start(any(ActivityUpdatedListener.class), any(ActivityParams.class));
+
+    owner.handle(Lifecycle.Event.ON_STOP);
+    verify(activityProvider).stop();
+    owner.handle(Lifecycle.Event.ON_START);
+    verify(activityProvider, times(2))
+        .start(any(ActivityUpdatedListener.class), any(ActivityParams.class));
+  }
+}
@@ -0,0 +1,254 @@
+/*
+ * Copyright 2017, Peter Vincent
+ * Licensed under the Apache License, Version 2.0, Android Promise.
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package promise.location;
+
+import android.location.Location;
+import android.os.Looper;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import promise.dev4vin.promiselocation.PromiseLocationRobolectricTestRunner;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+@RunWith(PromiseLocationRobolectricTestRunner.class)
+@Config(manifest = Config.NONE)
+public class LocationDispatcherTest {
+
+  private LocationProvider provider;
+  private LocationDispatcher dispatcher;
+
+  @Before
+  public void setup() {
+    provider = mock(LocationProvider.class);
+    dispatcher = new LocationDispatcher(provider);
+  }
+
+  @Test
+  public void test_effective_request_is_merged() {
+    dispatcher.add(mock(LocationUpdatedListener.class), LocationParams.LAZY, false);
+    dispatcher.add(mock(LocationUpdatedListener.class), LocationParams.NAVIGATION, false);
+    dispatcher.add(mock(LocationUpdatedListener.class), LocationParams.BEST_EFFORT, false);
+
+    LocationParams effective = dispatcher.getEffectiveParams();
+    Assert.assertEquals(LocationParams.NAVIGATION.getInterval(), effective.getInterval());
+    Assert.assertEquals(LocationParams.NAVIGATION.getDistance(), effective.getDistance(), 0);
+    Assert.assertEquals(LocationAccuracy.HIGH, effective.getAccuracy());
+    verify(provider, times(2)).start(eq(dispatcher), any(LocationParams.class), eq(false));
+  }
+
+  @Test
+  public void test_effective_request_relaxes_when_subscriber_leaves() {
+    LocationUpdatedListener lazy = mock(LocationUpdatedListener.class);
+    LocationUpdatedListener navigation = mock(LocationUpdatedListener.class);
+    dispatcher.add(lazy, LocationParams.LAZY, false);
+    dispatcher.add(navigation, LocationParams.NAVIGATION, false);
+
+    dispatcher.remove(navigation);
+    Assert.assertEquals(LocationParams.LAZY, dispatcher.getEffectiveParams());
+    verify(provider, times(2)).start(dispatcher, LocationParams.LAZY, false);
+  }
+
+  @Test
+  public void test_fixes_are_down_sampled_per_subscriber() {
+    LocationParams everySecond =
+        new LocationParams.Builder()
+            .setAccuracy(LocationAccuracy.HIGH)
+            .setInterval(1000)
+            .setDistance(0)
+            .build();
+    LocationParams everyFiveSeconds =
+        new LocationParams.Builder()
+            .setAccuracy(LocationAccuracy.LOW)
+            .setInterval(5000)
+            .setDistance(0)
+            .build();
+    CountingListener fast = new CountingListener();
+    CountingListener slow = new CountingListener();
+    dispatcher.add(fast, everySecond, false);
+    dispatcher.add(slow, everyFiveSeconds, false);
+
+    for (int second = 0; second < 10; second++)
+      dispatcher.onLocationUpdated(fix(second * 1000L, 0.0001 * second));
+
+    Assert.assertEquals(10, fast.count);
+    Assert.assertEquals(2, slow.count);
+  }
+
+  @Test
+  public void test_single_update_subscriber_is_served_once() {
+    CountingListener continuous = new CountingListener();
+    CountingListener once = new CountingListener();
+    dispatcher.add(continuous, LocationParams.NAVIGATION, false);
+    dispatcher.add(once, LocationParams.NAVIGATION, true);
+
+    dispatcher.onLocationUpdated(fix(0, 0));
+    dispatcher.onLocationUpdated(fix(500, 0));
+
+    Assert.assertEquals(2, continuous.count);
+    Assert.assertEquals(1, once.count);
+    Assert.assertEquals(1, dispatcher.size());
+  }
+
+  @Test
+  public void test_served_single_update_relaxes_the_request() {
+    CountingListener lazy = new CountingListener();
+    CountingListener once = new CountingListener();
+    dispatcher.add(lazy, LocationParams.LAZY, false);
+    dispatcher.add(once, LocationParams.NAVIGATION, true);
+    Assert.assertEquals(
+        LocationParams.NAVIGATION.getInterval(), dispatcher.getEffectiveParams().getInterval());
+
+    dispatcher.onLocationUpdated(fix(0, 0));
+
+    Assert.assertEquals(1, once.count);
+    Assert.assertEquals(LocationParams.LAZY, dispatcher.getEffectiveParams());
+    Assert.assertTrue(dispatcher.isRunning());
+    verify(provider, times(2)).start(dispatcher, LocationParams.LAZY, false);
+  }
+
+  @Test
+  public void test_listener_is_called_through_its_executor() {
+    final List<Runnable> queued = new ArrayList<>();
+    Executor executor =
+        new Executor() {
+          @Override
+          public void execute(Runnable command) {
+            queued.add(command);
+          }
+        };
+    CountingListener direct = new CountingListener();
+    CountingListener deferred = new CountingListener();
+    dispatcher.add(direct, LocationParams.NAVIGATION, false);
+    dispatcher.add(deferred, LocationParams.NAVIGATION, false, executor);
+
+    dispatcher.onLocationUpdated(fix(0, 0));
+    Assert.assertEquals(1, direct.count);
+    Assert.assertEquals(0, deferred.count);
+
+    Assert.assertEquals(1, queued.size());
+    queued.get(0).run();
+    Assert.assertEquals(1, deferred.count);
+  }
+
+  @Test
+  public void test_filter_runs_before_delivery() {
+    final List<Location> delivered = new ArrayList<>();
+    LocationFilter dropOdd =
+        new LocationFilter() {
+          @Override
+          public Location filter(Location location) {
+            if (location.getTime() % 2000 != 0) return null;
+            Location copy = new Location(location);
+            copy.setProvider("filtered");
+            return copy;
+          }
+
+          @Override
+          public void reset() {
+          }
+        };
+    dispatcher.add(
+        new LocationUpdatedListener() {
+          @Override
+          public void onLocationUpdated(Location location) {
+            delivered.add(location);
+          }
+        },
+        LocationParams.NAVIGATION,
+        false,
+        null,
+        dropOdd);
+    CountingListener raw = new CountingListener();
+    dispatcher.add(raw, LocationParams.NAVIGATION, false);
+
+    for (int second = 0; second < 4; second++) dispatcher.onLocationUpdated(fix(second * 1000L, 0));
+
+    Assert.assertEquals(4, raw.count);
+    Assert.assertEquals(2, delivered.size());
+    Assert.assertEquals("filtered", delivered.get(0).getProvider());
+    Assert.assertEquals(2000, delivered.get(1).getTime());
+  }
+
+  @Test
+  public void test_rejected_fix_is_counted_once() {
+    LocationFilter rejectAll =
+        new LocationFilter() {
+          @Override
+          public Location filter(Location location) {
+            return null;
+          }
+
+          @Override
+          public void reset() {
+          }
+        };
+    CountingListener first = new CountingListener();
+    CountingListener second = new CountingListener();
+    dispatcher.add(first, LocationParams.NAVIGATION, false, null, rejectAll);
+    dispatcher.add(second, LocationParams.NAVIGATION, false, null, rejectAll);
+    ProviderMetrics metrics = LocationMetrics.get().of(provider.getClass());
+    long before = metrics.getRejectedCount();
+
+    dispatcher.onLocationUpdated(fix(0, 0));
+
+    Assert.assertEquals(0, first.count + second.count);
+    Assert.assertEquals(before + 1, metrics.getRejectedCount());
+  }
+
+  @Test
+  public void test_looper_change_moves_running_provider() {
+    LooperLocationProvider looperProvider = mock(LooperLocationProvider.class);
+    dispatcher = new LocationDispatcher(looperProvider);
+    LocationUpdatedListener listener = mock(LocationUpdatedListener.class);
+    dispatcher.add(listener, LocationParams.NAVIGATION, false);
+
+    Looper looper = LocationDispatcher.backgroundLooper();
+    dispatcher.setLooper(looper);
+    dispatcher.add(listener, LocationParams.NAVIGATION, false);
+    dispatcher.add(listener, LocationParams.NAVIGATION, false);
+
+    verify(looperProvider).setLooper(looper);
+    verify(looperProvider, times(2)).start(dispatcher, LocationParams.NAVIGATION, false);
+  }
+
+  private static Location fix(long time, double latitude) {
+    Location location = new Location("test");
+    location.setTime(time);
+    location.setLatitude(latitude);
+    location.setLongitude(36.8);
+    return location;
+  }
+
+  private static class CountingListener implements LocationUpdatedListener {
+    int count;
+
+    @Override
+    public void onLocationUpdated(Location location) {
+      count++;
+    }
+  }
+}
@@ -0,0 +1,123 @@
+/*
+ * Copyright 2017, Peter Vincent
+ * Licensed under the Apache License, Version 2.0, Android Promise.
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package promise.location;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.annotation.Config;
+
+import promise.dev4vin.promiselocation.PromiseLocationRobolectricTestRunner;
+
+@RunWith(PromiseLocationRobolectricTestRunner.class)
+@Config(manifest = Config.NONE)
+public class LocationHistoryTest {
+
+  private static final double DELTA = 1e-9;
+
+  @Test
+  public void test_location_history_keeps_most_recent_fixes() {
+    LocationHistory history = new LocationHistory(4);
+    for (int i = 0; i < 10; i++) history.add(i, -i, i * 1000L, i, i);
+
+    Assert.assertEquals(4, history.size());
+    LocationHistory.Cursor cursor = history.cursor();
+    for (int expected = 6; expected < 10; expected++) {
+      Assert.assertTrue(cursor.moveToNext());
+      Assert.assertEquals(expected, cursor.getLatitude(), DELTA);
+      Assert.assertEquals(-expected, cursor.getLongitude(), DELTA);
+      Assert.assertEquals(expected * 1000L, cursor.getTime());
+      Assert.assertEquals(expected, cursor.getAccuracy(), DELTA);
+      Assert.assertEquals(expected, cursor.getSpeed(), DELTA);
+    }
+    Assert.assertFalse(cursor.moveToNext());
+  }
+
+  @Test
+  public void test_location_history_cursor_is_reusable() {
+    LocationHistory history = new LocationHistory(8);
+    history.add(1, 1, 1000, 5, 0);
+    LocationHistory.Cursor cursor = history.cursor();
+    Assert.assertTrue(cursor.moveToNext());
+    Assert.assertFalse(cursor.moveToNext());
+
+    history.add(2, 2, 2000, 5, 0);
+    cursor.reset();
+    int count = 0;
+    while (cursor.moveToNext()) count++;
+    Assert.assertEquals(2, count);
+  }
+
+  @Test
+  public void test_location_history_cursor_skips_overwritten_fixes() {
+    LocationHistory history = new LocationHistory(4);
+    for (int i = 0; i < 4; i++) history.add(i, i, i, 0, 0);
+    LocationHistory.Cursor cursor = history.cursor();
+    Assert.assertTrue(cursor.moveToNext());
+    // overwrite the two oldest fixes while the cursor is walking
+    history.add(4, 4, 4, 0, 0);
+    history.add(5, 5, 5, 0, 0);
+    Assert.assertTrue(cursor.moveToNext());
+    Assert.assertEquals(2, cursor.getTime());
+  }
+
+  @Test
+  public void test_location_history_snapshot_by_time_range() {
+    LocationHistory history = new LocationHistory(16);
+    for (int i = 0; i < 16; i++) history.add(i, i, i * 1000L, 0, 0);
+
+    LocationHistory snapshot = history.snapshot(4000, 7000);
+    Assert.assertEquals(4, snapshot.size());
+    LocationHistory.Cursor cursor = snapshot.cursor();
+    Assert.assertTrue(cursor.moveToNext());
+    Assert.assertEquals(4000, cursor.getTime());
+  }
+
+  @Test
+  public void test_location_history_resize_keeps_newest() {
+    LocationHistory history = new LocationHistory(8);
+    for (int i = 0; i < 8; i++) history.add(i, i, i, 0, 0);
+
+    LocationHistory resized = history.resize(3);
+    Assert.assertEquals(3, resized.size());
+    LocationHistory.Cursor cursor = resized.cursor();
+    Assert.assertTrue(cursor.moveToNext());
+    Assert.assertEquals(5, cursor.getTime());
+  }
+
+  @Test
+  public void test_location_history_resize_keeps_cursors_valid() {
+    LocationHistory history = new LocationHistory(4);
+    for (int i = 0; i < 4; i++) history.add(i, i, i, 0, 0);
+    LocationHistory.Cursor cursor = history.cursor();
+    Assert.assertTrue(cursor.moveToNext());
+    Assert.assertEquals(0, cursor.getTime());
+
+    Assert.assertSame(history, history.resize(2));
+    // the fix the cursor stood on is gone, it carries on with the oldest one kept
+    Assert.assertTrue(cursor.moveToNext());
+    Assert.assertEquals(2, cursor.getTime());
+    Assert.assertTrue(cursor.moveToNext());
+    Assert.assertEquals(3, cursor.getTime());
+    Assert.assertFalse(cursor.moveToNext());
+
+    // growing again does not bring dropped fixes back
+    history.resize(6);
+    history.add(4, 4, 4, 0, 0);
+    Assert.assertEquals(3, history.size());
+    cursor.reset();
+    Assert.assertTrue(cursor.moveToNext());
+    Assert.assertEquals(2, cursor.getTime());
+  }
+}
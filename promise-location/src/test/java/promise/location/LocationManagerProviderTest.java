@@ -0,0 +1,142 @@
+/*
+ * Copyright 2017, Peter Vincent
+ * Licensed under the Apache License, Version 2.0, Android Promise.
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package promise.location;
+
+import android.content.ComponentCallbacks;
+import android.content.Context;
+import android.location.Criteria;
+import android.location.Location;
+import android.location.LocationListener;
+import android.location.LocationManager;
+import android.os.Looper;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Matchers;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import promise.commons.Promise;
+import promise.dev4vin.promiselocation.PromiseLocationRobolectricTestRunner;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyFloat;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@RunWith(PromiseLocationRobolectricTestRunner.class)
+@Config(manifest = Config.NONE)
+public class LocationManagerProviderTest {
+
+  private LocationManager locationManager;
+  private LocationManagerProvider provider;
+
+  @Before
+  public void setup() {
+    Promise.init(RuntimeEnvironment.application);
+    locationManager = mock(LocationManager.class);
+    Context context = mock(Context.class);
+    when(context.getSystemService(Context.LOCATION_SERVICE)).thenReturn(locationManager);
+    when(context.getApplicationContext()).thenReturn(RuntimeEnvironment.application);
+    provider = new LocationManagerProvider();
+    provider.init(context, mock(Logger.class));
+  }
+
+  @Test
+  public void test_init_again_keeps_one_store() {
+    Context application = mock(Context.class);
+    Context context = mock(Context.class);
+    when(context.getSystemService(Context.LOCATION_SERVICE)).thenReturn(locationManager);
+    when(context.getApplicationContext()).thenReturn(application);
+    LocationManagerProvider provider = new LocationManagerProvider();
+
+    for (int i = 0; i < 3; i++) provider.init(context, mock(Logger.class));
+
+    verify(application).registerComponentCallbacks(any(ComponentCallbacks.class));
+  }
+
+  @Test
+  public void test_lowest_accuracy_subscribes_passively() {
+    provider.start(mock(LocationUpdatedListener.class), LocationParams.PASSIVE, false);
+    verify(locationManager)
+        .requestLocationUpdates(
+            eq(LocationManager.PASSIVE_PROVIDER),
+            eq(0L),
+            eq(0f),
+            any(LocationListener.class),
+            Matchers.<Looper>any());
+    verify(locationManager, never())
+        .requestLocationUpdates(
+            anyLong(), anyFloat(), any(Criteria.class), any(LocationListener.class),
+            Matchers.<Looper>any());
+  }
+
+  @Test
+  public void test_passive_fixes_are_filtered() {
+    CountingListener listener = new CountingListener();
+    provider.start(listener, LocationParams.PASSIVE, false);
+
+    provider.onLocationChanged(fix(0, 0));
+    // the same moment reported by another provider
+    provider.onLocationChanged(fix(0, 0.001));
+    // too soon
+    provider.onLocationChanged(fix(10000, 0.01));
+    // too close
+    provider.onLocationChanged(fix(60000, 0.0001));
+    provider.onLocationChanged(fix(90000, 0.01));
+
+    Assert.assertEquals(2, listener.count);
+  }
+
+  @Test
+  public void test_active_request_is_not_filtered() {
+    CountingListener listener = new CountingListener();
+    provider.start(listener, LocationParams.NAVIGATION, false);
+    provider.onLocationChanged(fix(0, 0));
+    provider.onLocationChanged(fix(0, 0));
+    Assert.assertEquals(2, listener.count);
+  }
+
+  @Test
+  public void test_switching_mode_drops_previous_registration() {
+    provider.start(mock(LocationUpdatedListener.class), LocationParams.NAVIGATION, false);
+    provider.start(mock(LocationUpdatedListener.class), LocationParams.PASSIVE, false);
+    verify(locationManager, times(1)).removeUpdates(any(LocationListener.class));
+  }
+
+  private static Location fix(long time, double latitude) {
+    Location location = new Location("test");
+    location.setTime(time);
+    location.setLatitude(latitude);
+    location.setLongitude(36.8);
+    return location;
+  }
+
+  private static class CountingListener implements LocationUpdatedListener {
+    int count;
+
+    @Override
+    public void onLocationUpdated(Location location) {
+      count++;
+    }
+  }
+}
@@ -0,0 +1,155 @@
+/*
+ * Copyright 2017, Peter Vincent
+ * Licensed under the Apache License, Version 2.0, Android Promise.
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package promise.location;
+
+import android.content.Context;
+import android.location.Location;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.annotation.Config;
+
+import java.util.Map;
+
+import promise.dev4vin.promiselocation.PromiseLocationRobolectricTestRunner;
+
+import static org.mockito.Mockito.mock;
+
+@RunWith(PromiseLocationRobolectricTestRunner.class)
+@Config(manifest = Config.NONE)
+public class LocationMetricsTest {
+
+  private LocationMetrics metrics;
+
+  @Before
+  public void setup() {
+    metrics = new LocationMetrics();
+  }
+
+  @Test
+  public void test_histogram_buckets_and_percentiles() {
+    Histogram histogram = new Histogram(10, 100, 1000);
+    histogram.record(5);
+    histogram.record(10);
+    histogram.record(50);
+    histogram.record(5000);
+
+    Assert.assertEquals(4, histogram.getBucketCount());
+    Assert.assertEquals(2, histogram.getCount(0));
+    Assert.assertEquals(1, histogram.getCount(1));
+    Assert.assertEquals(0, histogram.getCount(2));
+    Assert.assertEquals(1, histogram.getCount(3));
+    Assert.assertEquals(Long.MAX_VALUE, histogram.getUpperBound(3));
+    Assert.assertEquals(10, histogram.getPercentile(0.5));
+    Assert.assertEquals(5000, histogram.getPercentile(0.99));
+    Assert.assertEquals(5, histogram.getMin());
+    Assert.assertEquals(1266.25, histogram.getMean(), 1e-9);
+  }
+
+  @Test
+  public void test_snapshot_is_detached_and_reset_clears() {
+    Histogram histogram = new Histogram(10, 100);
+    histogram.record(1);
+    Histogram snapshot = histogram.snapshot();
+    histogram.record(2);
+    Assert.assertEquals(1, snapshot.getTotalCount());
+
+    histogram.reset();
+    Assert.assertEquals(0, histogram.getTotalCount());
+    Assert.assertEquals(0, histogram.getMax());
+    Assert.assertEquals(1, snapshot.getTotalCount());
+  }
+
+  @Test
+  public void test_provider_startup_and_fix_rate() {
+    FakeClock clock = new FakeClock(1000);
+    ProviderMetrics provider = metrics.of(GooglePlayServicesLocationProvider.class);
+    provider.setClock(clock);
+
+    provider.started(true);
+    clock.advance(400);
+    provider.connected();
+    clock.advance(1100);
+    provider.fix(fix(12));
+    provider.listened(120);
+    clock.advance(1000);
+    provider.fix(fix(3));
+
+    Assert.assertEquals(400, provider.getConnectTime().getMax());
+    Assert.assertEquals(1500, provider.getFirstFixTime().getMax());
+    Assert.assertEquals(1, provider.getFixInterval().getTotalCount());
+    Assert.assertEquals(1000, provider.getFixInterval().getMax());
+    Assert.assertEquals(2, provider.getAccuracy().getTotalCount());
+    Assert.assertEquals(1, provider.getListenerTime().getTotalCount());
+    Assert.assertEquals(2, provider.getFixCount());
+
+    Map<String, ProviderMetrics> snapshot = metrics.snapshot();
+    metrics.reset();
+    Assert.assertEquals(0, provider.getFixCount());
+    Assert.assertEquals(
+        2, snapshot.get(GooglePlayServicesLocationProvider.class.getName()).getFixCount());
+  }
+
+  @Test
+  public void test_fallback_is_counted_against_the_failed_provider() {
+    ServiceLocationProvider fused = mock(ServiceLocationProvider.class);
+    MultiFallBackLocationProvider subject =
+        new MultiFallBackLocationProvider.Builder()
+            .withServiceProvider(fused)
+            .withProvider(mock(LocationProvider.class))
+            .build();
+    subject.init(mock(Context.class), mock(Logger.class));
+    subject.start(mock(LocationUpdatedListener.class), LocationParams.NAVIGATION, false);
+    long before = LocationMetrics.get().of(fused.getClass()).getFallbackCount();
+
+    subject.onProviderFailed(fused);
+    Assert.assertEquals(
+        before + 1, LocationMetrics.get().of(fused.getClass()).getFallbackCount());
+  }
+
+  @Test
+  public void test_each_listener_is_timed_on_its_own() {
+    LocationProvider provider = mock(LocationProvider.class);
+    LocationDispatcher dispatcher = new LocationDispatcher(provider);
+    Histogram before = LocationMetrics.get().of(provider.getClass()).getListenerTime().snapshot();
+    dispatcher.add(mock(LocationUpdatedListener.class), LocationParams.NAVIGATION, false);
+    dispatcher.add(
+        new LocationUpdatedListener() {
+          @Override
+          public void onLocationUpdated(Location location) {
+            try {
+              Thread.sleep(5);
+            } catch (InterruptedException e) {
+              Thread.currentThread().interrupt();
+            }
+          }
+        },
+        LocationParams.NAVIGATION,
+        false);
+
+    dispatcher.onLocationUpdated(fix(10));
+    Histogram after = LocationMetrics.get().of(provider.getClass()).getListenerTime();
+    Assert.assertEquals(before.getTotalCount() + 2, after.getTotalCount());
+    Assert.assertTrue(after.getMax() >= 5000);
+  }
+
+  private static Location fix(float accuracy) {
+    Location location = new Location("test");
+    location.setAccuracy(accuracy);
+    return location;
+  }
+}
@@ -26,6 +26,12 @@ import promise.commons.Promise;
 import promise.commons.pref.Preferences;
 import promise.dev4vin.promiselocation.PromiseLocationRobolectricTestRunner;
 
+import static org.mockito.Matchers.anyMapOf;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
 @RunWith(PromiseLocationRobolectricTestRunner.class)
 @Config(manifest = Config.NONE)
 public class LocationStoreTest {
@@ -76,6 +82,57 @@ public class LocationStoreTest {
     Assert.assertNull(store.get(TEST_LOCATION_ID));
   }
 
+  @Test
+  public void test_location_store_write_behind_coalesces_commits() {
+    // one minute of a 2 Hz stream
+    final int fixes = 120;
+    final long period = 500;
+
+    Preferences writeThroughPreferences = mock(Preferences.class);
+    LocationStore writeThrough = new LocationStore();
+    writeThrough.setPreferences(writeThroughPreferences);
+
+    Preferences writeBehindPreferences = mock(Preferences.class);
+    FakeClock clock = new FakeClock(LocationStore.DEFAULT_FLUSH_INTERVAL);
+    LocationStore writeBehind = new LocationStore(LocationStore.DEFAULT_FLUSH_INTERVAL);
+    writeBehind.setPreferences(writeBehindPreferences);
+    writeBehind.setClock(clock);
+
+    for (int i = 0; i < fixes; i++) {
+      testLocation.setTime(TIME + i * period);
+      writeThrough.put(TEST_LOCATION_ID, testLocation);
+      writeBehind.put(TEST_LOCATION_ID, testLocation);
+      clock.advance(period);
+    }
+    writeBehind.flush();
+
+    long expected = fixes * period / LocationStore.DEFAULT_FLUSH_INTERVAL + 1;
+    verify(writeThroughPreferences, times(fixes)).save(anyMapOf(String.class, Object.class));
+    verify(writeBehindPreferences, times((int) expected))
+        .save(anyMapOf(String.class, Object.class));
+  }
+
+  @Test
+  public void test_location_store_write_behind_serves_from_memory() {
+    Preferences preferences = mock(Preferences.class);
+    FakeClock clock = new FakeClock(LocationStore.DEFAULT_FLUSH_INTERVAL);
+    LocationStore store = new LocationStore(LocationStore.DEFAULT_FLUSH_INTERVAL);
+    store.setPreferences(preferences);
+    store.setClock(clock);
+
+    store.put(TEST_LOCATION_ID, testLocation);
+    // the pending fix is isolated from the caller changing its own object
+    testLocation.setTime(TIME + 1000);
+    Assert.assertEquals(TIME, store.get(TEST_LOCATION_ID).getTime());
+    store.put(TEST_LOCATION_ID, testLocation);
+
+    Location storedLocation = store.get(TEST_LOCATION_ID);
+    Assert.assertEquals(TIME + 1000, storedLocation.getTime());
+    Assert.assertEquals(LATITUDE, storedLocation.getLatitude(), DELTA);
+    verify(preferences, never()).getLong(TEST_LOCATION_ID);
+    verify(preferences, times(1)).save(anyMapOf(String.class, Object.class));
+  }
+
   private Preferences getPreferences() {
     return new Preferences("test_prefs");
   }
@@ -0,0 +1,126 @@
+/*
+ * Copyright 2017, Peter Vincent
+ * Licensed under the Apache License, Version 2.0, Android Promise.
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package promise.location;
+
+import android.location.Location;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.annotation.Config;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.List;
+
+import promise.dev4vin.promiselocation.PromiseLocationRobolectricTestRunner;
+
+@RunWith(PromiseLocationRobolectricTestRunner.class)
+@Config(manifest = Config.NONE)
+public class LocationTraceTest {
+
+  @Test
+  public void test_oldest_events_are_overwritten() {
+    LocationTrace trace = new LocationTrace(4);
+    for (int i = 0; i < 6; i++)
+      trace.write(LocationTrace.START, LocationTrace.GMS_LOCATION, i, 0, 0);
+
+    List<LocationTrace.Event> events = trace.events();
+    Assert.assertEquals(4, events.size());
+    for (int i = 0; i < 4; i++) Assert.assertEquals(i + 2, events.get(i).getArg());
+    Assert.assertTrue(events.get(0).getTime() <= events.get(3).getTime());
+  }
+
+  @Test
+  public void test_disabled_trace_records_nothing() {
+    LocationTrace trace = new LocationTrace(8);
+    trace.setEnabled(false);
+    trace.write(LocationTrace.FALLBACK, LocationTrace.MULTI_FALLBACK, 1, 0, 0);
+    Assert.assertTrue(trace.events().isEmpty());
+  }
+
+  @Test
+  public void test_dump_reads_back() throws IOException {
+    LocationTrace trace = new LocationTrace(8);
+    trace.write(LocationTrace.CONNECT_FAILED, LocationTrace.GEOFENCE, -7, Long.MIN_VALUE, 42);
+    trace.write(LocationTrace.BROADCAST, LocationTrace.ACTIVITY, 0, 0, 0);
+
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    trace.dump(out);
+    List<LocationTrace.Event> events =
+        LocationTrace.read(new ByteArrayInputStream(out.toByteArray()));
+
+    Assert.assertEquals(2, events.size());
+    LocationTrace.Event failed = events.get(0);
+    Assert.assertEquals(LocationTrace.CONNECT_FAILED, failed.getEvent());
+    Assert.assertEquals(LocationTrace.GEOFENCE, failed.getSource());
+    Assert.assertEquals(-7, failed.getArg());
+    Assert.assertEquals(Long.MIN_VALUE, failed.getFirst());
+    Assert.assertEquals(42, failed.getSecond());
+    Assert.assertEquals(trace.events().get(0).getTime(), failed.getTime());
+    Assert.assertEquals(LocationTrace.BROADCAST, events.get(1).getEvent());
+  }
+
+  @Test(expected = IOException.class)
+  public void test_read_rejects_other_data() throws IOException {
+    LocationTrace.read(new ByteArrayInputStream(new byte[32]));
+  }
+
+  @Test
+  public void test_fix_is_packed() {
+    Location location = new Location("test");
+    location.setLatitude(-1.2833);
+    location.setLongitude(36.8167);
+    location.setAccuracy(12.5f);
+    location.setTime(1000);
+    LocationTrace.fix(LocationTrace.LOCATION_MANAGER, location);
+
+    List<LocationTrace.Event> events = LocationTrace.get().events();
+    LocationTrace.Event fix = events.get(events.size() - 1);
+    Assert.assertEquals(LocationTrace.FIX, fix.getEvent());
+    Assert.assertEquals(1250, fix.getArg());
+    Assert.assertEquals(-12833000, (int) (fix.getFirst() >> 32), 1);
+    Assert.assertEquals(368167000, (int) fix.getFirst(), 1);
+    Assert.assertEquals(1000, fix.getSecond());
+  }
+
+  @Test
+  public void test_concurrent_writers_lose_nothing() throws InterruptedException {
+    final LocationTrace trace = new LocationTrace(4096);
+    Thread[] writers = new Thread[4];
+    for (int w = 0; w < writers.length; w++) {
+      final int source = w + 1;
+      writers[w] =
+          new Thread() {
+            @Override
+            public void run() {
+              for (int i = 0; i < 1000; i++) trace.write(LocationTrace.FIX, source, i, i, i);
+            }
+          };
+      writers[w].start();
+    }
+    for (Thread writer : writers) writer.join();
+
+    List<LocationTrace.Event> events = trace.events();
+    Assert.assertEquals(4000, events.size());
+    int[] next = new int[writers.length + 1];
+    for (LocationTrace.Event event : events) {
+      // each writer's events keep their order and values
+      Assert.assertEquals(next[event.getSource()]++, event.getArg());
+      Assert.assertEquals(event.getArg(), event.getFirst());
+    }
+  }
+}
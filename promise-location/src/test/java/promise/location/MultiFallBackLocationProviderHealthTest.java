@@ -0,0 +1,196 @@
+/*
+ * Copyright 2017, Peter Vincent
+ * Licensed under the Apache License, Version 2.0, Android Promise.
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package promise.location;
+
+import android.content.Context;
+import android.location.Location;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.robolectric.annotation.Config;
+
+import java.util.List;
+
+import promise.dev4vin.promiselocation.PromiseLocationRobolectricTestRunner;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyBoolean;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+@RunWith(PromiseLocationRobolectricTestRunner.class)
+@Config(manifest = Config.NONE)
+public class MultiFallBackLocationProviderHealthTest {
+
+  private ServiceLocationProvider fused;
+  private LocationProvider gps;
+  private LocationUpdatedListener listener;
+  private FakeClock clock;
+  private MultiFallBackLocationProvider subject;
+
+  @Before
+  public void setup() {
+    fused = mock(ServiceLocationProvider.class);
+    gps = mock(LocationProvider.class);
+    listener = mock(LocationUpdatedListener.class);
+    clock = new FakeClock(0);
+    subject =
+        new MultiFallBackLocationProvider.Builder()
+            .withServiceProvider(fused)
+            .withProvider(gps)
+            .build();
+    subject.setClock(clock);
+    subject.init(mock(Context.class), mock(Logger.class));
+    subject.start(listener, LocationParams.NAVIGATION, false);
+  }
+
+  @Test
+  public void test_failed_provider_is_kept_and_scored_down() {
+    float healthy = subject.getHealthScore(fused);
+    subject.onProviderFailed(fused);
+
+    Assert.assertEquals(gps, subject.getCurrentProvider());
+    Assert.assertEquals(2, subject.getProviders().size());
+    Assert.assertTrue(subject.getHealthScore(fused) < healthy);
+    Assert.assertEquals(-1, subject.getHealthScore(mock(LocationProvider.class)), 0);
+  }
+
+  @Test
+  public void test_recovered_provider_is_promoted_without_dropping_updates() {
+    subject.onProviderFailed(fused);
+    LocationUpdatedListener gpsListener = listenerOf(gps, 1);
+
+    // no probe before the backoff is over
+    clock.advance(ProviderHealth.PROBE_BACKOFF - 1000);
+    gpsListener.onLocationUpdated(fix(1));
+    verify(fused, times(1)).start(any(LocationUpdatedListener.class), any(LocationParams.class),
+        anyBoolean());
+
+    clock.advance(1000);
+    gpsListener.onLocationUpdated(fix(2));
+    LocationUpdatedListener probeListener = listenerOf(fused, 2);
+
+    // the fallback keeps delivering while the probe connects
+    clock.advance(1000);
+    gpsListener.onLocationUpdated(fix(3));
+    verify(gps, never()).stop();
+
+    clock.advance(500);
+    probeListener.onLocationUpdated(fix(4));
+    Assert.assertEquals(fused, subject.getCurrentProvider());
+    verify(gps).stop();
+
+    // late fixes of the fallback are no longer passed on
+    gpsListener.onLocationUpdated(fix(5));
+    ArgumentCaptor<Location> delivered = ArgumentCaptor.forClass(Location.class);
+    verify(listener, times(4)).onLocationUpdated(delivered.capture());
+    List<Location> fixes = delivered.getAllValues();
+    for (int i = 0; i < fixes.size(); i++) Assert.assertEquals(i + 1, fixes.get(i).getTime());
+  }
+
+  @Test
+  public void test_failed_probe_backs_off_further() {
+    subject.onProviderFailed(fused);
+    LocationUpdatedListener gpsListener = listenerOf(gps, 1);
+    clock.advance(ProviderHealth.PROBE_BACKOFF);
+    gpsListener.onLocationUpdated(fix(1));
+    listenerOf(fused, 2);
+
+    subject.onProviderFailed(fused);
+    verify(fused, times(2)).stop();
+    Assert.assertEquals(gps, subject.getCurrentProvider());
+
+    // the second failure doubles the backoff
+    clock.advance(ProviderHealth.PROBE_BACKOFF);
+    gpsListener.onLocationUpdated(fix(2));
+    verify(fused, times(2)).start(any(LocationUpdatedListener.class), any(LocationParams.class),
+        anyBoolean());
+    clock.advance(ProviderHealth.PROBE_BACKOFF);
+    gpsListener.onLocationUpdated(fix(3));
+    verify(fused, times(3)).start(any(LocationUpdatedListener.class), any(LocationParams.class),
+        anyBoolean());
+  }
+
+  @Test
+  public void test_silent_probe_times_out() {
+    subject.onProviderFailed(fused);
+    LocationUpdatedListener gpsListener = listenerOf(gps, 1);
+    clock.advance(ProviderHealth.PROBE_BACKOFF);
+    gpsListener.onLocationUpdated(fix(1));
+    listenerOf(fused, 2);
+
+    clock.advance(MultiFallBackLocationProvider.PROBE_TIMEOUT);
+    gpsListener.onLocationUpdated(fix(2));
+    verify(fused, times(2)).stop();
+    Assert.assertEquals(gps, subject.getCurrentProvider());
+  }
+
+  @Test
+  public void test_probe_does_not_wait_for_fixes_of_the_fallback() {
+    subject.onProviderFailed(fused);
+    listenerOf(gps, 1);
+
+    // the fallback delivers nothing, the probe timer alone starts the probe
+    clock.advance(ProviderHealth.PROBE_BACKOFF);
+    subject.onProbeCheck();
+    listenerOf(fused, 2);
+
+    // and gives up on it
+    clock.advance(MultiFallBackLocationProvider.PROBE_TIMEOUT);
+    subject.onProbeCheck();
+    verify(fused, times(2)).stop();
+    Assert.assertEquals(gps, subject.getCurrentProvider());
+  }
+
+  @Test
+  public void test_stopped_provider_does_not_probe_again() {
+    subject.onProviderFailed(fused);
+    LocationUpdatedListener gpsListener = listenerOf(gps, 1);
+    subject.stop();
+    verify(gps).stop();
+
+    // neither the probe timer nor a late fix of the fallback restart anything
+    clock.advance(ProviderHealth.PROBE_BACKOFF);
+    subject.onProbeCheck();
+    gpsListener.onLocationUpdated(fix(1));
+    verify(fused, times(1)).start(any(LocationUpdatedListener.class), any(LocationParams.class),
+        anyBoolean());
+    verify(gps, times(1)).start(any(LocationUpdatedListener.class), any(LocationParams.class),
+        anyBoolean());
+  }
+
+  /**
+   * @return the listener given to the provider on its nth start
+   */
+  private static LocationUpdatedListener listenerOf(LocationProvider provider, int starts) {
+    ArgumentCaptor<LocationUpdatedListener> captor =
+        ArgumentCaptor.forClass(LocationUpdatedListener.class);
+    verify(provider, times(starts)).start(captor.capture(), eq(LocationParams.NAVIGATION),
+        eq(false));
+    return captor.getValue();
+  }
+
+  private static Location fix(long time) {
+    Location location = new Location("test");
+    location.setTime(time);
+    location.setAccuracy(10);
+    return location;
+  }
+}
@@ -0,0 +1,161 @@
+/*
+ * Copyright 2017, Peter Vincent
+ * Licensed under the Apache License, Version 2.0, Android Promise.
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package promise.location;
+
+import android.content.Context;
+import android.location.Location;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.robolectric.annotation.Config;
+
+import promise.dev4vin.promiselocation.PromiseLocationRobolectricTestRunner;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyBoolean;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+@RunWith(PromiseLocationRobolectricTestRunner.class)
+@Config(manifest = Config.NONE)
+public class MultiFallBackLocationProviderRaceTest {
+
+  private LocationProvider fused;
+  private LocationProvider gps;
+  private MultiFallBackLocationProvider.RaceListener raceListener;
+  private LocationUpdatedListener listener;
+  private FakeClock clock;
+  private MultiFallBackLocationProvider subject;
+
+  @Before
+  public void setup() {
+    fused = mock(LocationProvider.class);
+    gps = mock(LocationProvider.class);
+    raceListener = mock(MultiFallBackLocationProvider.RaceListener.class);
+    listener = mock(LocationUpdatedListener.class);
+    clock = new FakeClock(0);
+    subject =
+        new MultiFallBackLocationProvider.Builder()
+            .withProvider(fused)
+            .withProvider(gps)
+            .race(50, 10000, raceListener)
+            .build();
+    subject.setClock(clock);
+    subject.init(mock(Context.class), mock(Logger.class));
+  }
+
+  @Test
+  public void test_single_update_races_every_provider() {
+    subject.start(listener, LocationParams.NAVIGATION, true);
+
+    verify(fused).start(any(LocationUpdatedListener.class), eq(LocationParams.NAVIGATION), eq(false));
+    verify(gps).start(any(LocationUpdatedListener.class), eq(LocationParams.NAVIGATION), eq(false));
+    verify(gps).init(any(Context.class), any(Logger.class));
+  }
+
+  @Test
+  public void test_first_accurate_fix_wins_and_losers_are_stopped() {
+    subject.start(listener, LocationParams.NAVIGATION, true);
+    LocationUpdatedListener fusedEntrant = entrant(fused);
+    LocationUpdatedListener gpsEntrant = entrant(gps);
+
+    clock.advance(800);
+    fusedEntrant.onLocationUpdated(fix(120));
+    verify(listener, never()).onLocationUpdated(any(Location.class));
+
+    clock.advance(400);
+    Location accurate = fix(8);
+    gpsEntrant.onLocationUpdated(accurate);
+    verify(listener).onLocationUpdated(accurate);
+    verify(raceListener).onRaceWon(gps, accurate, 1200);
+    verify(fused).stop();
+    verify(gps).stop();
+
+    // late fixes from the losers are ignored
+    fusedEntrant.onLocationUpdated(fix(5));
+    verify(listener).onLocationUpdated(any(Location.class));
+  }
+
+  @Test
+  public void test_best_fix_wins_after_max_wait() {
+    subject.start(listener, LocationParams.NAVIGATION, true);
+    LocationUpdatedListener fusedEntrant = entrant(fused);
+    LocationUpdatedListener gpsEntrant = entrant(gps);
+
+    Location best = fix(70);
+    fusedEntrant.onLocationUpdated(best);
+    clock.advance(11000);
+    gpsEntrant.onLocationUpdated(fix(200));
+
+    verify(listener).onLocationUpdated(best);
+    verify(raceListener).onRaceWon(fused, best, 11000);
+  }
+
+  @Test
+  public void test_max_wait_ends_race_without_another_fix() {
+    subject.start(listener, LocationParams.LAZY, true);
+    Location best = fix(120);
+    entrant(fused).onLocationUpdated(best);
+    verify(listener, never()).onLocationUpdated(any(Location.class));
+
+    clock.advance(10000);
+    subject.raceTimedOut();
+    verify(listener).onLocationUpdated(best);
+    verify(raceListener).onRaceWon(fused, best, 10000);
+    verify(fused).stop();
+    verify(gps).stop();
+
+    // the timeout of a finished race does nothing
+    subject.raceTimedOut();
+    verify(listener).onLocationUpdated(any(Location.class));
+  }
+
+  @Test
+  public void test_race_without_fixes_fails_at_max_wait() {
+    subject.start(listener, LocationParams.NAVIGATION, true);
+
+    clock.advance(10000);
+    subject.raceTimedOut();
+    verify(raceListener).onRaceFailed(10000);
+    verify(listener, never()).onLocationUpdated(any(Location.class));
+    verify(fused).stop();
+  }
+
+  @Test
+  public void test_continuous_requests_do_not_race() {
+    subject.start(listener, LocationParams.NAVIGATION, false);
+
+    verify(fused).start(any(LocationUpdatedListener.class), eq(LocationParams.NAVIGATION), eq(false));
+    verify(gps, never()).start(any(LocationUpdatedListener.class), any(LocationParams.class),
+        anyBoolean());
+  }
+
+  private static LocationUpdatedListener entrant(LocationProvider provider) {
+    ArgumentCaptor<LocationUpdatedListener> captor =
+        ArgumentCaptor.forClass(LocationUpdatedListener.class);
+    verify(provider).start(captor.capture(), any(LocationParams.class), eq(false));
+    return captor.getValue();
+  }
+
+  private static Location fix(float accuracy) {
+    Location location = new Location("test");
+    location.setAccuracy(accuracy);
+    return location;
+  }
+}
@@ -0,0 +1,133 @@
+/*
+ * Copyright 2017, Peter Vincent
+ * Licensed under the Apache License, Version 2.0, Android Promise.
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package promise.location;
+
+import android.location.Location;
+
+import com.google.android.gms.location.DetectedActivity;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.annotation.Config;
+
+import promise.dev4vin.promiselocation.PromiseLocationRobolectricTestRunner;
+import promise.location.geo.GeoMath;
+
+@RunWith(PromiseLocationRobolectricTestRunner.class)
+@Config(manifest = Config.NONE)
+public class OutlierLocationFilterTest {
+
+  private OutlierLocationFilter filter;
+
+  @Before
+  public void setup() {
+    filter = new OutlierLocationFilter();
+  }
+
+  @Test
+  public void test_teleport_is_rejected() {
+    filter.setActivity(DetectedActivity.WALKING);
+    Assert.assertNotNull(filter.filter(fix(0, 0, 10)));
+    Assert.assertNotNull(filter.filter(fix(1000, 1.4, 10)));
+    Assert.assertNull(filter.filter(fix(2000, 400, 30)));
+    Assert.assertNotNull(filter.filter(fix(3000, 4.2, 10)));
+    Assert.assertEquals(1, filter.getRejectedCount());
+  }
+
+  @Test
+  public void test_limits_follow_the_activity() {
+    Assert.assertNotNull(filter.filter(fix(0, 0, 5)));
+    Assert.assertNotNull(filter.filter(fix(5000, 100, 5)));
+
+    filter.setActivity(DetectedActivity.WALKING);
+    Assert.assertNull(filter.filter(fix(10000, 200, 5)));
+
+    filter.setActivity(DetectedActivity.IN_VEHICLE);
+    Assert.assertNotNull(filter.filter(fix(15000, 300, 5)));
+  }
+
+  @Test
+  public void test_sudden_speed_up_is_rejected() {
+    filter.setActivity(DetectedActivity.ON_FOOT);
+    Assert.assertNotNull(filter.filter(fix(0, 0, 3)));
+    Assert.assertNotNull(filter.filter(fix(1000, 1, 3)));
+    // 9 m/s is below the speed limit but not reachable within a second
+    Assert.assertNull(filter.filter(fix(2000, 13, 3)));
+  }
+
+  @Test
+  public void test_filter_starts_over_after_repeated_rejections_or_a_gap() {
+    filter.setMaxRejections(2).setActivity(DetectedActivity.STILL);
+    filter.filter(fix(0, 0, 5));
+    Assert.assertNull(filter.filter(fix(1000, 1000, 5)));
+    Assert.assertNull(filter.filter(fix(2000, 1000, 5)));
+    // the device did move, take it from here
+    Assert.assertNotNull(filter.filter(fix(3000, 1000, 5)));
+    Assert.assertNotNull(filter.filter(fix(4000, 1001, 5)));
+
+    long later = 4000 + OutlierLocationFilter.DEFAULT_MAX_GAP + 1;
+    Assert.assertNotNull(filter.filter(fix(later, 5000, 5)));
+  }
+
+  @Test
+  public void test_thresholds_are_tunable() {
+    filter.setThresholds(DetectedActivity.WALKING, 50, 50);
+    filter.setActivity(DetectedActivity.WALKING);
+    filter.filter(fix(0, 0, 5));
+    Assert.assertNotNull(filter.filter(fix(1000, 40, 5)));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void test_thresholds_must_be_positive() {
+    filter.setThresholds(DetectedActivity.WALKING, 0, 1);
+  }
+
+  @Test
+  public void test_shared_fix_is_judged_once() {
+    filter.setActivity(DetectedActivity.WALKING);
+    filter.filter(fix(0, 0, 5));
+    Location jump = fix(1000, 500, 5);
+    Assert.assertNull(filter.filter(jump));
+    Assert.assertNull(filter.filter(jump));
+    Assert.assertEquals(1, filter.getRejectedCount());
+  }
+
+  @Test
+  public void test_chain_stops_at_the_first_rejection() {
+    filter.setActivity(DetectedActivity.WALKING);
+    KalmanLocationFilter smoothing = new KalmanLocationFilter();
+    ChainedLocationFilter chain = new ChainedLocationFilter(filter, smoothing);
+
+    Location start = fix(0, 0, 5);
+    Location smoothed = chain.filter(start);
+    Assert.assertNotSame(start, smoothed);
+    Assert.assertEquals(start.getLatitude(), smoothed.getLatitude(), 1e-9);
+    Assert.assertNull(chain.filter(fix(1000, 500, 5)));
+  }
+
+  /**
+   * A fix the given number of meters north of the start.
+   */
+  private static Location fix(long time, double north, float accuracy) {
+    Location location = new Location("test");
+    location.setTime(time);
+    location.setLatitude(-1.2833 + north / GeoMath.METERS_PER_DEGREE);
+    location.setLongitude(36.8167);
+    location.setAccuracy(accuracy);
+    return location;
+  }
+}
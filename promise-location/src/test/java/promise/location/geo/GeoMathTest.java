@@ -0,0 +1,96 @@
+/*
+ * Copyright 2017, Peter Vincent
+ * Licensed under the Apache License, Version 2.0, Android Promise.
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package promise.location.geo;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.annotation.Config;
+
+import java.util.Random;
+
+import promise.dev4vin.promiselocation.PromiseLocationRobolectricTestRunner;
+
+@RunWith(PromiseLocationRobolectricTestRunner.class)
+@Config(manifest = Config.NONE)
+public class GeoMathTest {
+
+  @Test
+  public void test_vincenty_matches_reference_geodesic() {
+    // Flinders Peak to Buninyong, Vincenty (1975)
+    double distance =
+        GeoMath.vincenty(-37.95103342, 144.42486789, -37.65282114, 143.92649554);
+    Assert.assertEquals(54972.271, distance, 0.001);
+    Assert.assertEquals(0, GeoMath.vincenty(10, 20, 10, 20), 0);
+  }
+
+  @Test
+  public void test_haversine_is_within_point_six_percent_of_the_ellipsoid() {
+    Random random = new Random(11L);
+    for (int i = 0; i < 1000; i++) {
+      double latitude1 = random.nextDouble() * 160 - 80;
+      double longitude1 = random.nextDouble() * 360 - 180;
+      double latitude2 = random.nextDouble() * 160 - 80;
+      double longitude2 = random.nextDouble() * 360 - 180;
+      double precise = GeoMath.distance(latitude1, longitude1, latitude2, longitude2,
+          GeoMath.Accuracy.PRECISE);
+      double standard = GeoMath.distance(latitude1, longitude1, latitude2, longitude2,
+          GeoMath.Accuracy.STANDARD);
+      Assert.assertEquals(precise, standard, precise * 0.006);
+    }
+  }
+
+  @Test
+  public void test_equirectangular_error_bounds() {
+    Random random = new Random(13L);
+    double[] out = new double[2];
+    for (int i = 0; i < 1000; i++) {
+      double latitude = random.nextDouble() * 140 - 70;
+      double longitude = random.nextDouble() * 340 - 170;
+      double bearing = random.nextDouble() * 360;
+      GeoMath.destination(latitude, longitude, bearing, 10000, out);
+      Assert.assertEquals(10000,
+          GeoMath.distance(latitude, longitude, out[0], out[1], GeoMath.Accuracy.FAST), 10);
+      GeoMath.destination(latitude, longitude, bearing, 100000, out);
+      Assert.assertEquals(100000,
+          GeoMath.distance(latitude, longitude, out[0], out[1], GeoMath.Accuracy.FAST), 1000);
+    }
+  }
+
+  @Test
+  public void test_bearing_and_destination() {
+    Assert.assertEquals(0, GeoMath.initialBearing(0, 0, 1, 0), 1e-9);
+    Assert.assertEquals(90, GeoMath.initialBearing(0, 0, 0, 1), 1e-9);
+    Assert.assertEquals(180, GeoMath.initialBearing(1, 0, 0, 0), 1e-9);
+    Assert.assertEquals(270, GeoMath.initialBearing(0, 1, 0, 0), 1e-9);
+
+    double[] out = new double[2];
+    GeoMath.destination(-1.2833, 36.8167, 45, 5000, out);
+    Assert.assertEquals(5000, GeoMath.haversine(-1.2833, 36.8167, out[0], out[1]), 1e-6);
+    Assert.assertEquals(45, GeoMath.initialBearing(-1.2833, 36.8167, out[0], out[1]), 1e-6);
+
+    GeoMath.destination(0, 179.99, 90, 5000, out);
+    Assert.assertTrue(out[1] < -179);
+  }
+
+  @Test
+  public void test_cross_track_distance_is_signed() {
+    double kilometer = 1000 / GeoMath.METERS_PER_DEGREE;
+    Assert.assertEquals(-1000,
+        GeoMath.crossTrackDistance(0, 0, 0, 1, kilometer, 0.5), 1);
+    Assert.assertEquals(1000,
+        GeoMath.crossTrackDistance(0, 0, 0, 1, -kilometer, 0.5), 1);
+    Assert.assertEquals(0, GeoMath.crossTrackDistance(0, 0, 0, 1, 0, 0.5), 1e-6);
+  }
+}
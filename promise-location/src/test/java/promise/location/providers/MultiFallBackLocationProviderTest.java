@@ -18,6 +18,7 @@ import android.location.Location;
 
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
 import org.robolectric.annotation.Config;
 
 import java.util.Collection;
@@ -37,6 +38,7 @@ import static junit.framework.Assert.assertEquals;
 import static junit.framework.Assert.assertTrue;
 import static junit.framework.Assert.fail;
 import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
@@ -102,7 +104,13 @@ public class MultiFallBackLocationProviderTest {
     assertEquals(1, testServiceProvider.getStopCount());
     // Verify that the backup provider is initialized and started.
     verify(backupProvider).init(any(Context.class), any(Logger.class));
-    verify(backupProvider).start(listenerMock, paramsMock, false);
+    ArgumentCaptor<LocationUpdatedListener> backupListener =
+        ArgumentCaptor.forClass(LocationUpdatedListener.class);
+    verify(backupProvider).start(backupListener.capture(), eq(paramsMock), eq(false));
+    // fixes of the backup provider reach the caller's listener
+    Location fix = new Location("backup");
+    backupListener.getValue().onLocationUpdated(fix);
+    verify(listenerMock).onLocationUpdated(fix);
 
     // Test that we're now using the fallback provider to stop.
     subject.stop();
@@ -0,0 +1,155 @@
+/*
+ * Copyright 2017, Peter Vincent
+ * Licensed under the Apache License, Version 2.0, Android Promise.
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package promise.location.track;
+
+import android.location.Location;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.annotation.Config;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import promise.dev4vin.promiselocation.PromiseLocationRobolectricTestRunner;
+
+@RunWith(PromiseLocationRobolectricTestRunner.class)
+@Config(manifest = Config.NONE)
+public class TrackCodecTest {
+
+  private static final double E7_PRECISION = 0.5e-7;
+
+  @Test
+  public void test_stream_round_trip() throws Exception {
+    double[][] track = syntheticTrack(2000, 1L);
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    TrackEncoder encoder = new TrackEncoder(out);
+    for (double[] fix : track) encoder.encode((long) fix[0], fix[1], fix[2], (float) fix[3]);
+    encoder.flush();
+
+    TrackDecoder decoder = new TrackDecoder(new ByteArrayInputStream(out.toByteArray()));
+    for (double[] fix : track) {
+      Assert.assertTrue(decoder.next());
+      Assert.assertEquals((long) fix[0], decoder.getTime());
+      Assert.assertEquals(fix[1], decoder.getLatitude(), E7_PRECISION + 1e-12);
+      Assert.assertEquals(fix[2], decoder.getLongitude(), E7_PRECISION + 1e-12);
+      Assert.assertEquals(fix[3], decoder.getAccuracy(), 0.05 + 1e-6);
+    }
+    Assert.assertFalse(decoder.next());
+  }
+
+  @Test
+  public void test_byte_buffer_round_trip_of_locations() throws Exception {
+    ByteBuffer buffer = ByteBuffer.allocate(256);
+    TrackEncoder encoder = new TrackEncoder(buffer);
+    Location first = location(1000, -1.2833333, 36.8166667, 4.2f);
+    Location second = location(2000, -1.2833100, 36.8166900, 3.9f);
+    encoder.encode(first);
+    encoder.encode(second);
+    buffer.flip();
+
+    TrackDecoder decoder = new TrackDecoder(buffer);
+    Assert.assertTrue(decoder.next());
+    Location decoded = decoder.toLocation("gps");
+    Assert.assertEquals(1000, decoded.getTime());
+    Assert.assertEquals(first.getLatitude(), decoded.getLatitude(), E7_PRECISION);
+    Assert.assertTrue(decoder.next());
+    Assert.assertEquals(second.getLongitude(), decoder.getLongitude(), E7_PRECISION);
+    Assert.assertEquals(3.9f, decoder.getAccuracy(), 0.05f);
+    Assert.assertFalse(decoder.next());
+  }
+
+  @Test(expected = EOFException.class)
+  public void test_truncated_track_is_reported() throws Exception {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    new TrackEncoder(out).encode(1000, 10, 20, 5);
+    byte[] bytes = out.toByteArray();
+    byte[] truncated = new byte[bytes.length - 2];
+    System.arraycopy(bytes, 0, truncated, 0, truncated.length);
+    new TrackDecoder(new ByteArrayInputStream(truncated)).next();
+  }
+
+  @Test
+  public void test_fix_that_did_not_fit_is_retried_with_the_version() throws Exception {
+    ByteBuffer buffer = ByteBuffer.allocate(64);
+    TrackEncoder encoder = new TrackEncoder(buffer);
+    buffer.position(62);
+    try {
+      encoder.encode(1000, 10, 20, 5);
+      Assert.fail("expected the fix not to fit");
+    } catch (BufferOverflowException expected) {
+    }
+    // room was made, the same encoder tries again
+    buffer.position(0);
+    encoder.encode(1000, 10, 20, 5);
+    buffer.flip();
+    TrackDecoder decoder = new TrackDecoder(buffer);
+    Assert.assertTrue(decoder.next());
+    Assert.assertEquals(1000, decoder.getTime());
+  }
+
+  @Test
+  public void test_size_on_synthetic_tracks() throws Exception {
+    // a day of 1 Hz tracking
+    double[][] track = syntheticTrack(86400, 7L);
+    ByteBuffer buffer = ByteBuffer.allocate(track.length * 12);
+    TrackEncoder encoder = new TrackEncoder(buffer);
+    for (double[] fix : track) encoder.encode((long) fix[0], fix[1], fix[2], (float) fix[3]);
+    int size = buffer.position();
+    buffer.flip();
+
+    TrackDecoder decoder = new TrackDecoder(buffer);
+    int count = 0;
+    while (decoder.next()) count++;
+
+    double bytesPerFix = size / (double) track.length;
+    Assert.assertEquals(track.length, count);
+    Assert.assertTrue("expected under 8 bytes per fix, was " + bytesPerFix, bytesPerFix < 8);
+  }
+
+  /**
+   * A 1 Hz random walk at up to ~15 m/s, with the odd gap in fixes.
+   */
+  private static double[][] syntheticTrack(int size, long seed) {
+    Random random = new Random(seed);
+    double[][] track = new double[size][];
+    long time = 1500000000000L;
+    double latitude = -1.2833;
+    double longitude = 36.8167;
+    double heading = 0;
+    for (int i = 0; i < size; i++) {
+      time += random.nextInt(50) == 0 ? 1000 + random.nextInt(30000) : 1000;
+      heading += random.nextGaussian() * 0.2;
+      double step = random.nextDouble() * 15 / 111320d;
+      latitude += Math.cos(heading) * step;
+      longitude += Math.sin(heading) * step;
+      track[i] = new double[] {time, latitude, longitude, 3 + random.nextInt(300) / 10d};
+    }
+    return track;
+  }
+
+  private static Location location(long time, double latitude, double longitude, float accuracy) {
+    Location location = new Location("gps");
+    location.setTime(time);
+    location.setLatitude(latitude);
+    location.setLongitude(longitude);
+    location.setAccuracy(accuracy);
+    return location;
+  }
+}
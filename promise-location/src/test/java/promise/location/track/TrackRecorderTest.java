@@ -0,0 +1,118 @@
+/*
+ * Copyright 2017, Peter Vincent
+ * Licensed under the Apache License, Version 2.0, Android Promise.
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package promise.location.track;
+
+import android.location.Location;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.annotation.Config;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+
+import promise.dev4vin.promiselocation.PromiseLocationRobolectricTestRunner;
+
+@RunWith(PromiseLocationRobolectricTestRunner.class)
+@Config(manifest = Config.NONE)
+public class TrackRecorderTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void test_track_rolls_over_segments_and_reads_back() throws Exception {
+    File directory = folder.newFolder("track");
+    TrackRecorder recorder = new TrackRecorder(directory, 4);
+    for (int i = 0; i < 10; i++) append(recorder, i);
+    recorder.close();
+
+    Assert.assertEquals(3, TrackSegment.sequences(directory).length);
+    Assert.assertEquals(10, readAll(directory));
+  }
+
+  @Test
+  public void test_recorder_resumes_after_the_last_record() throws Exception {
+    File directory = folder.newFolder("track");
+    TrackRecorder recorder = new TrackRecorder(directory, 4);
+    for (int i = 0; i < 6; i++) append(recorder, i);
+    // no close, as if the process had died
+
+    TrackRecorder resumed = new TrackRecorder(directory, 4);
+    for (int i = 6; i < 9; i++) append(resumed, i);
+    resumed.close();
+
+    Assert.assertEquals(9, readAll(directory));
+  }
+
+  @Test
+  public void test_torn_record_ends_the_track() throws Exception {
+    File directory = folder.newFolder("track");
+    TrackRecorder recorder = new TrackRecorder(directory, 8);
+    for (int i = 0; i < 5; i++) append(recorder, i);
+    recorder.close();
+
+    // tear the last record as a crash in the middle of a write would
+    RandomAccessFile file = new RandomAccessFile(TrackSegment.file(directory, 0), "rw");
+    file.seek(TrackSegment.offset(4) + 8);
+    file.writeDouble(12.5);
+    file.close();
+
+    Assert.assertEquals(4, readAll(directory));
+    TrackRecorder resumed = new TrackRecorder(directory, 8);
+    append(resumed, 4);
+    resumed.close();
+    Assert.assertEquals(5, readAll(directory));
+  }
+
+  @Test
+  public void test_recorder_is_fed_locations() throws Exception {
+    File directory = folder.newFolder("track");
+    TrackRecorder recorder = new TrackRecorder(directory, 16);
+    Location location = new Location("gps");
+    location.setTime(1000);
+    location.setLatitude(-1.28);
+    location.setLongitude(36.82);
+    location.setAccuracy(5);
+    recorder.onLocationUpdated(location);
+    recorder.close();
+
+    TrackReader reader = new TrackReader(directory);
+    Assert.assertTrue(reader.next());
+    Location read = reader.toLocation("gps");
+    Assert.assertEquals(1000, read.getTime());
+    Assert.assertEquals(-1.28, read.getLatitude(), 0);
+    Assert.assertEquals(36.82, read.getLongitude(), 0);
+    Assert.assertEquals(5, read.getAccuracy(), 0);
+    Assert.assertFalse(reader.next());
+  }
+
+  private static void append(TrackRecorder recorder, int i) {
+    Assert.assertTrue(recorder.append(i * 1000L, i, -i, 0, 5, 1, 90));
+  }
+
+  private static int readAll(File directory) throws Exception {
+    TrackReader reader = new TrackReader(directory);
+    int count = 0;
+    while (reader.next()) {
+      Assert.assertEquals(count * 1000L, reader.getTime());
+      Assert.assertEquals(count, reader.getLatitude(), 0);
+      count++;
+    }
+    return count;
+  }
+}
@@ -0,0 +1,159 @@
+/*
+ * Copyright 2017, Peter Vincent
+ * Licensed under the Apache License, Version 2.0, Android Promise.
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package promise.location.track;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import promise.dev4vin.promiselocation.PromiseLocationRobolectricTestRunner;
+
+@RunWith(PromiseLocationRobolectricTestRunner.class)
+@Config(manifest = Config.NONE)
+public class TrackSimplifierTest {
+
+  private static final double METER = 1 / 111195d;
+
+  @Test
+  public void test_douglas_peucker_keeps_corners_only() {
+    double[][] track = lShapedTrack(0.5, 1L);
+    int[] kept = TrackSimplifier.douglasPeucker(track[0], track[1], track[0].length, 5);
+    Assert.assertArrayEquals(new int[] {0, 100, 200}, kept);
+  }
+
+  @Test
+  public void test_douglas_peucker_stays_within_tolerance() {
+    double[][] track = randomWalk(5000, 3L);
+    int count = track[0].length;
+    int[] kept = TrackSimplifier.douglasPeucker(track[0], track[1], count, 10);
+    Assert.assertTrue(kept.length < count / 4);
+    Assert.assertTrue(maxDeviation(track, kept) <= 10.001);
+  }
+
+  @Test
+  public void test_visvalingam_drops_small_wiggles() {
+    double[][] track = lShapedTrack(0.5, 2L);
+    int[] kept = TrackSimplifier.visvalingam(track[0], track[1], track[0].length, 5);
+    Assert.assertEquals(3, kept.length);
+    Assert.assertEquals(0, kept[0]);
+    Assert.assertEquals(100, kept[1]);
+    Assert.assertEquals(200, kept[2]);
+  }
+
+  @Test
+  public void test_short_tracks_are_kept_whole() {
+    double[] latitudes = {1, 2};
+    double[] longitudes = {1, 2};
+    Assert.assertArrayEquals(
+        new int[] {0, 1}, TrackSimplifier.douglasPeucker(latitudes, longitudes, 2, 5));
+    Assert.assertArrayEquals(
+        new int[] {0, 1}, TrackSimplifier.visvalingam(latitudes, longitudes, 2, 5));
+  }
+
+  @Test
+  public void test_streaming_stays_within_tolerance_with_a_bounded_window() {
+    double[][] track = lShapedTrack(0.5, 4L);
+    final List<double[]> points = new ArrayList<>();
+    StreamingSimplifier simplifier =
+        new StreamingSimplifier(
+            5,
+            new StreamingSimplifier.Sink() {
+              @Override
+              public void onPoint(double latitude, double longitude, long time) {
+                points.add(new double[] {latitude, longitude, time});
+              }
+            });
+    for (int i = 0; i < track[0].length; i++) simplifier.add(track[0][i], track[1][i], i);
+    simplifier.flush();
+
+    // the opening window only sees the corner once the path has turned by about the tolerance
+    Assert.assertTrue(points.size() <= 4);
+    Assert.assertEquals(0, points.get(0)[2], 0);
+    Assert.assertEquals(100, points.get(1)[2], 6);
+    Assert.assertEquals(200, points.get(points.size() - 1)[2], 0);
+    int[] kept = new int[points.size()];
+    for (int i = 0; i < kept.length; i++) kept[i] = (int) points.get(i)[2];
+    Assert.assertTrue(maxDeviation(track, kept) <= 5.001);
+  }
+
+  @Test
+  public void test_streaming_window_is_bounded() {
+    double[][] track = lShapedTrack(0, 5L);
+    final int[] emitted = new int[1];
+    StreamingSimplifier simplifier =
+        new StreamingSimplifier(
+            5,
+            10,
+            new StreamingSimplifier.Sink() {
+              @Override
+              public void onPoint(double latitude, double longitude, long time) {
+                emitted[0]++;
+              }
+            });
+    for (int i = 0; i <= 100; i++) simplifier.add(track[0][i], track[1][i], i);
+    // a straight line still emits a point every time the window of 10 fills up
+    Assert.assertEquals(12, emitted[0]);
+  }
+
+  /**
+   * 100 one meter steps north then 100 steps east with up to noise meters of jitter, corners exact.
+   */
+  private static double[][] lShapedTrack(double noise, long seed) {
+    Random random = new Random(seed);
+    double[] latitudes = new double[201];
+    double[] longitudes = new double[201];
+    for (int i = 0; i <= 200; i++) {
+      double jitter = i % 100 == 0 ? 0 : (random.nextDouble() * 2 - 1) * noise * METER;
+      latitudes[i] = 10 + Math.min(i, 100) * METER + (i > 100 ? jitter : 0);
+      longitudes[i] = 20 + Math.max(0, i - 100) * METER + (i < 100 ? jitter : 0);
+    }
+    return new double[][] {latitudes, longitudes};
+  }
+
+  private static double[][] randomWalk(int size, long seed) {
+    Random random = new Random(seed);
+    double[] latitudes = new double[size];
+    double[] longitudes = new double[size];
+    double heading = 0;
+    for (int i = 1; i < size; i++) {
+      heading += random.nextGaussian() * 0.3;
+      latitudes[i] = latitudes[i - 1] + Math.cos(heading) * 3 * METER;
+      longitudes[i] = longitudes[i - 1] + Math.sin(heading) * 3 * METER;
+    }
+    return new double[][] {latitudes, longitudes};
+  }
+
+  private static double maxDeviation(double[][] track, int[] kept) {
+    int count = track[0].length;
+    double[] x = new double[count];
+    double[] y = new double[count];
+    TrackSimplifier.project(track[0], track[1], count, x, y);
+    double max = 0;
+    for (int k = 0; k + 1 < kept.length; k++) {
+      int a = kept[k];
+      int b = kept[k + 1];
+      for (int i = a + 1; i < b; i++)
+        max =
+            Math.max(
+                max,
+                Math.sqrt(TrackSimplifier.segmentDistanceSquared(x[i], y[i], x[a], y[a], x[b], y[b])));
+    }
+    return max;
+  }
+}